@@ -0,0 +1,92 @@
+package com.bfm.app.timeseries.benchmarks;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import com.bfm.app.timeseries.TimeSeriesEntryBuilder;
+import com.bfm.app.timeseries.classifiers.IntervalType;
+import com.bfm.app.timeseries.parametric.ParametricTimeSeries;
+
+/**
+ * Series and key sequences shared by the benchmarks, unlike the test fixtures every series is sized
+ * by the benchmark so the fixtures fit in a small heap.
+ */
+final class BenchmarkData {
+
+	static final LocalDateTime END = lastBusinessDay(LocalDate.now()).atStartOfDay();
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * @return a parametric series of <code>length</code> business days ending at {@link #END}
+	 */
+	static ParametricTimeSeries series(String key, int length, Random random) {
+		LocalDateTime start = businessDaysBefore(END, length - 1);
+		TimeSeriesEntryBuilder<ParametricTimeSeries> builder = new TimeSeriesEntryBuilder<>();
+		ParametricTimeSeries series = builder.key(key).objectBuilder(ParametricTimeSeries::new)
+				.interval(IntervalType.DAILY.initialize())
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.startTime(start).endTime(END).storedStartTime(start).storedEndTime(END)
+				.build();
+		for (int i = 0; i < length; i++) {
+			series.addDelta(random.nextDouble());
+			series.addValue(random.nextDouble());
+		}
+		return series;
+	}
+
+	static LocalDateTime businessDaysBefore(LocalDateTime time, int days) {
+		LocalDate date = time.toLocalDate();
+		for (int i = 0; i < days; i++) {
+			date = lastBusinessDay(date.minusDays(1));
+		}
+		return date.atStartOfDay();
+	}
+
+	private static LocalDate lastBusinessDay(LocalDate date) {
+		while (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+			date = date.minusDays(1);
+		}
+		return date;
+	}
+
+	/**
+	 * @return <code>count</code> key indexes in <code>[0, keySpace)</code> following a Zipfian
+	 * 			distribution of exponent <code>skew</code>, index 0 being the most popular
+	 */
+	static int[] zipfian(int keySpace, double skew, int count, Random random) {
+		double[] cumulative = new double[keySpace];
+		double sum = 0;
+		for (int i = 0; i < keySpace; i++) {
+			sum += 1 / Math.pow(i + 1, skew);
+			cumulative[i] = sum;
+		}
+		int[] indexes = new int[count];
+		for (int i = 0; i < count; i++) {
+			double u = random.nextDouble() * sum;
+			int low = 0, high = keySpace - 1;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (cumulative[mid] < u) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			indexes[i] = low;
+		}
+		return indexes;
+	}
+
+	static int[] uniform(int keySpace, int count, Random random) {
+		int[] indexes = new int[count];
+		for (int i = 0; i < count; i++) {
+			indexes[i] = random.nextInt(keySpace);
+		}
+		return indexes;
+	}
+
+}
@@ -0,0 +1,139 @@
+package com.bfm.app.timeseries.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bfm.app.timeseries.cache.EvictionStrategy;
+import com.bfm.app.timeseries.cache.TSCache;
+import com.bfm.app.timeseries.cache.TSCacheBuilder;
+import com.bfm.app.timeseries.parametric.ParametricTimeSeries;
+
+/**
+ * <pre>
+ * Throughput of each {@link EvictionStrategy} on a cache holding a tenth of the key space, with keys
+ * drawn from a Zipfian distribution. The hits and misses of each iteration are reported as secondary
+ * results by {@link HitRatio}, a higher throughput with a worse hit ratio is not an improvement.
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EvictionStrategyBenchmark {
+	private static final int KEY_SPACE = TSCacheGetBenchmark.KEY_SPACE;
+	private static final int SEQUENCE_MASK = TSCacheGetBenchmark.SEQUENCE_MASK;
+	/** counters of the benchmark thread, the single entry loader runs on the thread which missed */
+	private static final ThreadLocal<HitRatio> COUNTERS = new ThreadLocal<>();
+
+	@Param({ "LRU", "LFU", "WINDOW_TINY_LFU" })
+	String strategy;
+
+	@Param({ "0.8", "1.1" })
+	double skew;
+
+	private TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache;
+	private String[] keys;
+	private int[] sequence;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Random random = new Random(42);
+		Map<String, ParametricTimeSeries> store = new HashMap<>();
+		keys = new String[KEY_SPACE];
+		for (int i = 0; i < KEY_SPACE; i++) {
+			keys[i] = String.valueOf(10000 + i);
+			store.put(keys[i], BenchmarkData.series(keys[i], 32, random));
+		}
+		int capacity = KEY_SPACE / 10;
+		cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("benchmark")
+				.singleEntryLoader(key -> {
+					HitRatio counters = COUNTERS.get();
+					if (counters != null) {
+						counters.misses++;
+					}
+					return store.get(key);
+				})
+				.transformer(d -> d)
+				.allowedCacheSize(capacity)
+				.evictionStrategy(newStrategy(strategy, capacity))
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.build();
+		sequence = BenchmarkData.zipfian(KEY_SPACE, skew, SEQUENCE_MASK + 1, random);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		cache.close();
+	}
+
+	private static EvictionStrategy<String, ParametricTimeSeries> newStrategy(String name, int capacity) {
+		switch (name) {
+		case "LRU":
+			return new EvictionStrategy.LRUEvictionStrategy<>();
+		case "LFU":
+			return new EvictionStrategy.LFUEvictionStrategy<>();
+		case "WINDOW_TINY_LFU":
+			return new EvictionStrategy.WindowTinyLFUEvictionStrategy<>(capacity);
+		default:
+			throw new IllegalArgumentException("Unknown eviction strategy " + name);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int index = (int) Thread.currentThread().getId() * 7919;
+
+		int next() {
+			return index++ & SEQUENCE_MASK;
+		}
+	}
+
+	/**
+	 * Reads served from the cache and reads which loaded their entry, per iteration
+	 */
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class HitRatio {
+		public long hits;
+		public long misses;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			hits = 0;
+			misses = 0;
+			COUNTERS.set(this);
+		}
+	}
+
+	@Benchmark
+	public ParametricTimeSeries get(Cursor cursor, HitRatio counters) {
+		long misses = counters.misses;
+		ParametricTimeSeries series = cache.get(keys[sequence[cursor.next()]]);
+		if (counters.misses == misses) {
+			counters.hits++;
+		}
+		return series;
+	}
+
+}
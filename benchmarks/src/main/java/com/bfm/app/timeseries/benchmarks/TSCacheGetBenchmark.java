@@ -0,0 +1,148 @@
+package com.bfm.app.timeseries.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bfm.app.timeseries.cache.EvictionStrategy;
+import com.bfm.app.timeseries.cache.TSCache;
+import com.bfm.app.timeseries.cache.TSCacheBuilder;
+import com.bfm.app.timeseries.parametric.ParametricTimeSeries;
+
+/**
+ * <pre>
+ * Throughput of the {@link TSCache} read paths at a given hit rate.
+ *
+ * Keys are drawn uniformly from {@link #KEY_SPACE} keys and the cache holds
+ * <code>hitRatePercent</code> of them with LRU eviction, so in steady state that share of reads is
+ * served from the cache and the rest goes through the (in memory) loader, eviction included.
+ * Thread counts are set on the command line, e.g. <code>-t 1</code>, <code>-t 4</code>; 
+ * {@link #getContended(Cursor)} always runs with 8 threads.
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TSCacheGetBenchmark {
+	static final int KEY_SPACE = 10_000;
+	static final int SEQUENCE_MASK = (1 << 16) - 1;
+	private static final int BATCH_SIZE = 16;
+
+	@Param({ "100", "90", "50" })
+	int hitRatePercent;
+
+	@Param({ "252" })
+	int seriesLength;
+
+	private TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache;
+	private String[] keys;
+	private int[] sequence;
+	private List<Set<String>> batches;
+	private LocalDateTime rangeStart;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Random random = new Random(42);
+		Map<String, ParametricTimeSeries> store = new HashMap<>();
+		keys = new String[KEY_SPACE];
+		for (int i = 0; i < KEY_SPACE; i++) {
+			keys[i] = String.valueOf(10000 + i);
+			store.put(keys[i], BenchmarkData.series(keys[i], seriesLength, random));
+		}
+		rangeStart = BenchmarkData.businessDaysBefore(BenchmarkData.END, seriesLength / 2);
+		TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries> builder = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("benchmark")
+				.singleEntryLoader(store::get)
+				.multipleEntryLoader(set -> {
+					Map<String, ParametricTimeSeries> loaded = new HashMap<>();
+					for (String key : set) {
+						loaded.put(key, store.get(key));
+					}
+					return loaded;
+				})
+				.transformer(d -> d)
+				.evictionStrategy(new EvictionStrategy.LRUEvictionStrategy<>())
+				.startDate(rangeStart).endDate(BenchmarkData.END)
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new);
+		if (hitRatePercent < 100) {
+			builder.allowedCacheSize(KEY_SPACE * hitRatePercent / 100);
+		}
+		cache = builder.build();
+		sequence = BenchmarkData.uniform(KEY_SPACE, SEQUENCE_MASK + 1, random);
+		batches = new ArrayList<>();
+		for (int i = 0; i + BATCH_SIZE <= sequence.length; i += BATCH_SIZE) {
+			Set<String> batch = new LinkedHashSet<>();
+			for (int j = i; j < i + BATCH_SIZE; j++) {
+				batch.add(keys[sequence[j]]);
+			}
+			batches.add(batch);
+		}
+		for (int index : sequence) {
+			cache.get(keys[index]);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		cache.close();
+	}
+
+	/**
+	 * Position of a thread in the key sequence, threads start at different offsets
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		int index = (int) Thread.currentThread().getId() * 7919;
+
+		int next() {
+			return index++ & SEQUENCE_MASK;
+		}
+	}
+
+	@Benchmark
+	public ParametricTimeSeries get(Cursor cursor) {
+		return cache.get(keys[sequence[cursor.next()]]);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public ParametricTimeSeries getContended(Cursor cursor) {
+		return cache.get(keys[sequence[cursor.next()]]);
+	}
+
+	@Benchmark
+	public Map<String, ParametricTimeSeries> getAll(Cursor cursor) {
+		return cache.get(batches.get(cursor.next() % batches.size()));
+	}
+
+	@Benchmark
+	public ParametricTimeSeries getRange(Cursor cursor) {
+		return cache.get(keys[sequence[cursor.next()]], rangeStart, BenchmarkData.END);
+	}
+
+}
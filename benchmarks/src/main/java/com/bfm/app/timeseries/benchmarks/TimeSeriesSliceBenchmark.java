@@ -0,0 +1,70 @@
+package com.bfm.app.timeseries.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bfm.app.timeseries.TimeSeriesEntry;
+import com.bfm.app.timeseries.TimeSeriesEntryBuilder;
+import com.bfm.app.timeseries.TimeSeriesEntryUtils;
+import com.bfm.app.timeseries.classifiers.IntervalType;
+import com.bfm.app.timeseries.parametric.ParametricTimeSeries;
+
+/**
+ * Cost of slicing the middle half out of a series with {@link TimeSeriesEntry#sample} and
+ * {@link TimeSeriesEntryUtils#restrictedClone} for different series lengths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeSeriesSliceBenchmark {
+
+	@Param({ "252", "2520", "10080" })
+	int length;
+
+	private ParametricTimeSeries series;
+	private IntervalType interval;
+	private LocalDateTime start, end;
+	private final TimeSeriesEntryBuilder<ParametricTimeSeries> builder = new TimeSeriesEntryBuilder<>();
+	private final Map<String, Class<?>> fieldTypeMap = new HashMap<>();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		interval = IntervalType.DAILY.initialize();
+		series = BenchmarkData.series("10000", length, new Random(42));
+		start = BenchmarkData.businessDaysBefore(BenchmarkData.END, length * 3 / 4);
+		end = BenchmarkData.businessDaysBefore(BenchmarkData.END, length / 4);
+		fieldTypeMap.put("deltas", Double.class);
+		fieldTypeMap.put("values", Double.class);
+	}
+
+	@Benchmark
+	public TimeSeriesEntry sample() {
+		return series.sample(start, end, interval);
+	}
+
+	@Benchmark
+	public ParametricTimeSeries restrictedClone() {
+		return TimeSeriesEntryUtils.restrictedClone(series, start, end, interval, builder.reset(), fieldTypeMap,
+				ParametricTimeSeries::new);
+	}
+
+}
@@ -0,0 +1,170 @@
+package com.bfm.app.timeseries;
+
+import java.util.List;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Predicate;
+
+import com.bfm.app.timeseries.column.DoubleColumn;
+import com.bfm.app.timeseries.column.IntColumn;
+import com.bfm.app.timeseries.column.LongColumn;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * <pre>
+ * Per field kernels of {@link TimeSeriesEntry#apply}, {@link TimeSeriesEntry#applyWithFilter} and
+ * {@link TimeSeriesEntry#sample}, which selects without a function nor a predicate.
+ *
+ * Each kernel reads the observations at <code>first, first + 1, ...</code> or, when stepping, at
+ * <code>indexes[0], indexes[1], ...</code>, and appends one value per observation to an output list
+ * sized up front. Primitive operators run without boxing, a plain {@link Function} or
+ * {@link Predicate} is adapted to the primitive interface and boxes.
+ * An observation rejected by the predicate gives the missing value of its type: NaN for doubles,
+ * the no entry value of the list for integers and longs, <code>null</code> for strings.
+ * </pre>
+ */
+final class ApplyKernels {
+
+	private ApplyKernels() {
+	}
+
+	private static int index(int[] indexes, int first, int k) {
+		return indexes==null ? first+k : indexes[k];
+	}
+
+	static TDoubleArrayList apply(DoubleColumn column, int[] indexes, int first, int count, Object function, Object predicate) {
+		DoubleUnaryOperator operator = doubleOperator(function);
+		DoublePredicate filter = doublePredicate(predicate);
+		TDoubleArrayList out = new TDoubleArrayList(count);
+		if(filter==null) {
+			for(int k=0;k<count;k++) {
+				out.add(operator.applyAsDouble(column.get(index(indexes, first, k))));
+			}
+		}else {
+			for(int k=0;k<count;k++) {
+				double value = column.get(index(indexes, first, k));
+				out.add(filter.test(value) ? operator.applyAsDouble(value) : Double.NaN);
+			}
+		}
+		return out;
+	}
+
+	static TIntArrayList apply(IntColumn column, int[] indexes, int first, int count, Object function, Object predicate) {
+		IntUnaryOperator operator = intOperator(function);
+		IntPredicate filter = intPredicate(predicate);
+		TIntArrayList out = new TIntArrayList(count);
+		if(filter==null) {
+			for(int k=0;k<count;k++) {
+				out.add(operator.applyAsInt(column.get(index(indexes, first, k))));
+			}
+		}else {
+			for(int k=0;k<count;k++) {
+				int value = column.get(index(indexes, first, k));
+				out.add(filter.test(value) ? operator.applyAsInt(value) : out.getNoEntryValue());
+			}
+		}
+		return out;
+	}
+
+	static TLongArrayList apply(LongColumn column, int[] indexes, int first, int count, Object function, Object predicate) {
+		LongUnaryOperator operator = longOperator(function);
+		LongPredicate filter = longPredicate(predicate);
+		TLongArrayList out = new TLongArrayList(count);
+		if(filter==null) {
+			for(int k=0;k<count;k++) {
+				out.add(operator.applyAsLong(column.get(index(indexes, first, k))));
+			}
+		}else {
+			for(int k=0;k<count;k++) {
+				long value = column.get(index(indexes, first, k));
+				out.add(filter.test(value) ? operator.applyAsLong(value) : out.getNoEntryValue());
+			}
+		}
+		return out;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static void apply(List<String> values, int[] indexes, int first, int count, Object function, Object predicate, List<String> out) {
+		Function<String, String> operator = function==null ? Function.identity() : (Function) checkType(function, Function.class, Function.class);
+		Predicate<String> filter = (Predicate) checkType(predicate, Predicate.class, Predicate.class);
+		for(int k=0;k<count;k++) {
+			String value = values.get(index(indexes, first, k));
+			out.add(filter==null || filter.test(value) ? operator.apply(value) : null);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static DoubleUnaryOperator doubleOperator(Object function) {
+		if(function==null)
+			return DoubleUnaryOperator.identity();
+		if(function instanceof DoubleUnaryOperator)
+			return (DoubleUnaryOperator) function;
+		Function<Double, Double> boxed = (Function) checkType(function, Function.class, DoubleUnaryOperator.class);
+		return value -> boxed.apply(value);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static IntUnaryOperator intOperator(Object function) {
+		if(function==null)
+			return IntUnaryOperator.identity();
+		if(function instanceof IntUnaryOperator)
+			return (IntUnaryOperator) function;
+		Function<Integer, Integer> boxed = (Function) checkType(function, Function.class, IntUnaryOperator.class);
+		return value -> boxed.apply(value);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static LongUnaryOperator longOperator(Object function) {
+		if(function==null)
+			return LongUnaryOperator.identity();
+		if(function instanceof LongUnaryOperator)
+			return (LongUnaryOperator) function;
+		Function<Long, Long> boxed = (Function) checkType(function, Function.class, LongUnaryOperator.class);
+		return value -> boxed.apply(value);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static DoublePredicate doublePredicate(Object predicate) {
+		if(predicate==null || predicate instanceof DoublePredicate)
+			return (DoublePredicate) predicate;
+		Predicate<Double> boxed = (Predicate) checkType(predicate, Predicate.class, DoublePredicate.class);
+		return boxed::test;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static IntPredicate intPredicate(Object predicate) {
+		if(predicate==null || predicate instanceof IntPredicate)
+			return (IntPredicate) predicate;
+		Predicate<Integer> boxed = (Predicate) checkType(predicate, Predicate.class, IntPredicate.class);
+		return boxed::test;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static LongPredicate longPredicate(Object predicate) {
+		if(predicate==null || predicate instanceof LongPredicate)
+			return (LongPredicate) predicate;
+		Predicate<Long> boxed = (Predicate) checkType(predicate, Predicate.class, LongPredicate.class);
+		return boxed::test;
+	}
+
+	/**
+	 * @return <code>value</code> if it is <code>null</code> or a <code>boxed</code>
+	 * @throws IllegalArgumentException otherwise
+	 */
+	private static Object checkType(Object value, Class<?> boxed, Class<?> primitive) {
+		if(value==null || boxed.isInstance(value)) {
+			return value;
+		}
+		throw new IllegalArgumentException(value.getClass().getName() + " is neither a " + primitive.getSimpleName()
+				+ " nor a " + boxed.getSimpleName());
+	}
+
+}
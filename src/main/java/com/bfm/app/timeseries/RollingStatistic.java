@@ -0,0 +1,37 @@
+package com.bfm.app.timeseries;
+
+import java.util.function.BinaryOperator;
+
+/**
+ * <pre>
+ * Aggregates {@link TimeSeriesEntry#roll} computes incrementally over the primitive values of a
+ * field, in one pass whatever the window size:
+ * 	SUM, MEAN, VARIANCE, STDDEV	running sums updated as observations enter and leave the window
+ * 	MIN, MAX			monotonic deque of the window indexes
+ * Any other {@link BinaryOperator} is folded over the window with two stacks.
+ *
+ * Integer and long fields rolled with a statistic give a double field. A window holding a NaN
+ * gives NaN, VARIANCE and STDDEV are sample statistics and NaN over fewer than two observations.
+ * </pre>
+ */
+public enum RollingStatistic implements BinaryOperator<Double> {
+	SUM, MEAN, VARIANCE, STDDEV, MIN, MAX;
+
+	/**
+	 * Pairwise form of SUM, MIN and MAX, the other statistics are not binary operations
+	 */
+	@Override
+	public Double apply(Double left, Double right) {
+		switch (this) {
+		case SUM:
+			return left + right;
+		case MIN:
+			return Math.min(left, right);
+		case MAX:
+			return Math.max(left, right);
+		default:
+			throw new UnsupportedOperationException(this + " is only computed over a window, see TimeSeriesEntry.roll");
+		}
+	}
+
+}
@@ -0,0 +1,175 @@
+package com.bfm.app.timeseries;
+
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import gnu.trove.list.array.TDoubleArrayList;
+
+/**
+ * <pre>
+ * Rolling window kernels of {@link TimeSeriesEntry#roll}. The input holds the observations from
+ * <code>first - window + 1</code> (clipped at 0) to <code>last</code>, and each kernel appends one
+ * value per observation of <code>[first, last]</code>, aggregating that observation and up to
+ * <code>window - 1</code> preceding ones.
+ * </pre>
+ */
+final class RollingWindows {
+
+	private RollingWindows() {
+	}
+
+	/**
+	 * @param values observations, <code>values[0]</code> being observation <code>offset</code>
+	 */
+	static void roll(RollingStatistic statistic, double[] values, int offset, int first, int last, int window, TDoubleArrayList out) {
+		switch (statistic) {
+		case MIN:
+		case MAX:
+			extremum(statistic==RollingStatistic.MAX, values, offset, first, last, window, out);
+			break;
+		default:
+			moments(statistic, values, offset, first, last, window, out);
+		}
+	}
+
+	/**
+	 * Sum, mean and variance from a running sum and a running sum of squared deviations (Welford),
+	 * both updated when an observation enters or leaves the window. NaNs are counted instead of being
+	 * summed so that one does not poison the rest of the series.
+	 */
+	private static void moments(RollingStatistic statistic, double[] values, int offset, int first, int last, int window,
+			TDoubleArrayList out) {
+		double sum = 0, compensation = 0, mean = 0, m2 = 0;
+		int count = 0, nans = 0;
+		for (int i = offset; i <= last; i++) {
+			double added = values[i - offset];
+			if (Double.isNaN(added)) {
+				nans++;
+			} else {
+				// Kahan summation, the window sum would otherwise drift over long series
+				double y = added - compensation, t = sum + y;
+				compensation = (t - sum) - y;
+				sum = t;
+				count++;
+				double delta = added - mean;
+				mean += delta / count;
+				m2 += delta * (added - mean);
+			}
+			int leaving = i - window;
+			if (leaving >= offset) {
+				double removed = values[leaving - offset];
+				if (Double.isNaN(removed)) {
+					nans--;
+				} else {
+					double y = -removed - compensation, t = sum + y;
+					compensation = (t - sum) - y;
+					sum = t;
+					count--;
+					if (count == 0) {
+						mean = m2 = 0;
+					} else {
+						double delta = removed - mean;
+						mean -= delta / count;
+						m2 = Math.max(0, m2 - delta * (removed - mean));
+					}
+				}
+			}
+			if (i < first) {
+				continue;
+			}
+			if (nans > 0) {
+				out.add(Double.NaN);
+				continue;
+			}
+			switch (statistic) {
+			case SUM:
+				out.add(sum);
+				break;
+			case MEAN:
+				out.add(count == 0 ? Double.NaN : sum / count);
+				break;
+			case VARIANCE:
+				out.add(count < 2 ? Double.NaN : m2 / (count - 1));
+				break;
+			default:
+				out.add(count < 2 ? Double.NaN : Math.sqrt(m2 / (count - 1)));
+			}
+		}
+	}
+
+	/**
+	 * Minimum or maximum from a deque of the indexes of the window whose values are decreasing
+	 * (increasing for the minimum): the head is the extremum, and an index is dropped once a later
+	 * observation dominates it, so every index is pushed and popped once.
+	 */
+	private static void extremum(boolean max, double[] values, int offset, int first, int last, int window, TDoubleArrayList out) {
+		int[] deque = new int[last - offset + 1];
+		int head = 0, tail = 0, lastNaN = Integer.MIN_VALUE;
+		for (int i = offset; i <= last; i++) {
+			double value = values[i - offset];
+			if (Double.isNaN(value)) {
+				lastNaN = i;
+			} else {
+				while (tail > head && (max ? values[deque[tail - 1] - offset] <= value : values[deque[tail - 1] - offset] >= value)) {
+					tail--;
+				}
+				deque[tail++] = i;
+			}
+			if (tail > head && deque[head] <= i - window) {
+				head++;
+			}
+			if (i >= first) {
+				out.add(lastNaN > i - window || tail == head ? Double.NaN : values[deque[head] - offset]);
+			}
+		}
+	}
+
+	/**
+	 * <pre>
+	 * Folds any associative operator over the windows with two stacks: new observations are folded
+	 * into a running aggregate (the back stack), and when the oldest observation has to leave while
+	 * the front stack is empty, the back stack is flipped into the front stack as suffix aggregates.
+	 * Each observation is flipped once, so <code>operator</code> runs about three times per observation.
+	 * Operands are combined oldest first, the operator does not need to be commutative.
+	 * </pre>
+	 * @param values observation <code>i</code> for <code>i</code> in <code>[offset, last]</code>
+	 * @param out receives the aggregate of each window ending in <code>[first, last]</code>
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	static void fold(BinaryOperator operator, IntFunction<Object> values, int offset, int first, int last, int window,
+			Consumer<Object> out) {
+		// the front stack never spans more than the window nor more than the observations
+		Object[] suffix = new Object[Math.min(window, last - offset + 1) + 1];
+		Object back = null;
+		boolean backEmpty = true;
+		// front holds [frontStart, backStart), back holds [backStart, i]
+		int frontStart = offset, backStart = offset;
+		for (int i = offset; i <= last; i++) {
+			Object value = values.apply(i);
+			back = backEmpty ? value : operator.apply(back, value);
+			backEmpty = false;
+			for (int windowStart = i - window + 1; frontStart < windowStart; frontStart++) {
+				if (frontStart == backStart) {
+					suffix[i % suffix.length] = values.apply(i);
+					for (int j = i - 1; j >= backStart; j--) {
+						suffix[j % suffix.length] = operator.apply(values.apply(j), suffix[(j + 1) % suffix.length]);
+					}
+					backStart = i + 1;
+					backEmpty = true;
+					back = null;
+				}
+			}
+			if (i < first) {
+				continue;
+			}
+			if (frontStart == backStart) {
+				out.accept(back);
+			} else {
+				Object front = suffix[frontStart % suffix.length];
+				out.accept(backEmpty ? front : operator.apply(front, back));
+			}
+		}
+	}
+
+}
@@ -3,6 +3,7 @@ package com.bfm.app.timeseries;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoField;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -15,6 +16,11 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 
 import com.bfm.app.timeseries.classifiers.IntervalType;
+import com.bfm.app.timeseries.column.Column;
+import com.bfm.app.timeseries.column.Columns;
+import com.bfm.app.timeseries.column.DoubleColumn;
+import com.bfm.app.timeseries.column.IntColumn;
+import com.bfm.app.timeseries.column.LongColumn;
 
 import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.list.array.TIntArrayList;
@@ -89,6 +95,11 @@ public class TimeSeriesEntry {
 	 * List if fields in Time Storing having String values
 	 */
 	Map<String, List<String>> stringTimeSeriesFields;
+	/**
+	 * Numeric fields stored in immutable columns (off heap, compressed), by name, see
+	 * {@link TimeSeriesEntryUtils#columnarCopy}. Such fields are not in the Trove field maps.
+	 */
+	Map<String, Column> columnFields;
 	/**
 	 * Regular Interval object for generated time series
 	 */
@@ -105,18 +116,122 @@ public class TimeSeriesEntry {
 		ts.interval = interval;
 	}
 	
+	/**
+	 * @return the field, a copy of it if the field is stored in a column
+	 */
 	public TIntArrayList getIntField(String name) {
+		Column column = columnFields==null ? null : columnFields.get(name);
+		if(column instanceof IntColumn) {
+			return Columns.toList((IntColumn) column);
+		}
 		return integerTimeSeriesFields.get(name);
 	}
 
+	/**
+	 * @return the field, a copy of it if the field is stored in a column
+	 */
 	public TLongArrayList getLongField(String name) {
+		Column column = columnFields==null ? null : columnFields.get(name);
+		if(column instanceof LongColumn) {
+			return Columns.toList((LongColumn) column);
+		}
 		return longTimeSeriesFields.get(name);
 	}
 	
+	/**
+	 * @return the field, a copy of it if the field is stored in a column
+	 */
 	public TDoubleArrayList getDoubleField(String name) {
+		Column column = columnFields==null ? null : columnFields.get(name);
+		if(column instanceof DoubleColumn) {
+			return Columns.toList((DoubleColumn) column);
+		}
 		return doubleTimeSeriesFields.get(name);
 	}
 	
+	/**
+	 * Primitive read access to a field wherever it is stored, without copying it
+	 * @return the column, <code>null</code> if there is no integer field <code>name</code>
+	 */
+	public IntColumn getIntColumn(String name) {
+		Column column = columnFields==null ? null : columnFields.get(name);
+		if(column instanceof IntColumn) {
+			return (IntColumn) column;
+		}
+		TIntArrayList list = integerTimeSeriesFields==null ? null : integerTimeSeriesFields.get(name);
+		return list==null ? null : Columns.of(list);
+	}
+	
+	/**
+	 * Primitive read access to a field wherever it is stored, without copying it
+	 * @return the column, <code>null</code> if there is no long field <code>name</code>
+	 */
+	public LongColumn getLongColumn(String name) {
+		Column column = columnFields==null ? null : columnFields.get(name);
+		if(column instanceof LongColumn) {
+			return (LongColumn) column;
+		}
+		TLongArrayList list = longTimeSeriesFields==null ? null : longTimeSeriesFields.get(name);
+		return list==null ? null : Columns.of(list);
+	}
+	
+	/**
+	 * Primitive read access to a field wherever it is stored, without copying it
+	 * @return the column, <code>null</code> if there is no double field <code>name</code>
+	 */
+	public DoubleColumn getDoubleColumn(String name) {
+		Column column = columnFields==null ? null : columnFields.get(name);
+		if(column instanceof DoubleColumn) {
+			return (DoubleColumn) column;
+		}
+		TDoubleArrayList list = doubleTimeSeriesFields==null ? null : doubleTimeSeriesFields.get(name);
+		return list==null ? null : Columns.of(list);
+	}
+	
+	/**
+	 * @return <code>true</code> if the numeric fields are stored in columns, which the list getters copy
+	 */
+	public boolean isColumnar() {
+		return columnFields!=null;
+	}
+	
+	/**
+	 * @return a plain entry holding list copies of the fields of this columnar entry, this entry
+	 * 			if it is not columnar
+	 */
+	TimeSeriesEntry materialize() {
+		if(columnFields==null) {
+			return this;
+		}
+		TimeSeriesEntry copy = new TimeSeriesEntry();
+		copy.key = key;
+		copy.startTime = startTime;
+		copy.endTime = endTime;
+		copy.storedStartTime = storedStartTime;
+		copy.storedEndTime = storedEndTime;
+		copy.interval = interval;
+		copy.stringTimeSeriesFields = stringTimeSeriesFields;
+		copy.integerTimeSeriesFields = integerTimeSeriesFields==null ? null : new HashMap<>(integerTimeSeriesFields);
+		copy.longTimeSeriesFields = longTimeSeriesFields==null ? null : new HashMap<>(longTimeSeriesFields);
+		copy.doubleTimeSeriesFields = doubleTimeSeriesFields==null ? null : new HashMap<>(doubleTimeSeriesFields);
+		for(Map.Entry<String, Column> entry : columnFields.entrySet()) {
+			if(entry.getValue() instanceof DoubleColumn) {
+				if(copy.doubleTimeSeriesFields==null)
+					copy.doubleTimeSeriesFields = new HashMap<>();
+				copy.doubleTimeSeriesFields.put(entry.getKey(), Columns.toList((DoubleColumn) entry.getValue()));
+			}else if(entry.getValue() instanceof IntColumn) {
+				if(copy.integerTimeSeriesFields==null)
+					copy.integerTimeSeriesFields = new HashMap<>();
+				copy.integerTimeSeriesFields.put(entry.getKey(), Columns.toList((IntColumn) entry.getValue()));
+			}else if(entry.getValue() instanceof LongColumn) {
+				if(copy.longTimeSeriesFields==null)
+					copy.longTimeSeriesFields = new HashMap<>();
+				copy.longTimeSeriesFields.put(entry.getKey(), Columns.toList((LongColumn) entry.getValue()));
+			}
+		}
+		return copy;
+	}
+	
 	public List<String> getStringField(String name) {
 		return stringTimeSeriesFields.get(name);
 	}
@@ -181,7 +296,7 @@ public class TimeSeriesEntry {
 	 * @return
 	 */
 	public TimeSeriesEntry sample(LocalDateTime start, LocalDateTime end, IntervalType interval) {
-		int actualStartIndex = this.interval.getClosetNextIndex(start, this.storedStartTime);
+		int actualStartIndex = Math.max(0, this.interval.getClosetNextIndex(start, this.storedStartTime));
 		LocalDateTime actualStartTime = this.interval.getClosestTimeNextTo(start);
 		int actualEndIndex = this.interval.getClosetPreviousIndex(end, this.storedStartTime);
 		LocalDateTime actualEndTime = this.interval.getClosestTimePrevTo(end);
@@ -189,72 +304,14 @@ public class TimeSeriesEntry {
 		modified.startTime = this.startTime; modified.endTime = this.endTime;
 		modified.storedStartTime = actualStartTime; modified.storedEndTime = actualEndTime;
 		modified.interval = interval; modified.key = this.key;
-		Set<Integer> indexesForHolidays = new HashSet<>();
-		for(LocalDateTime holiday : interval.getHolidays()) {
-			if(holiday.compareTo(storedStartTime)>=0 && holiday.compareTo(storedEndTime)<0) {
-				int index = this.interval.getIndex(holiday, storedStartTime);
-				if(index!=-1) {
-					indexesForHolidays.add(index);
-				}
-			}
-		}
-		if(doubleTimeSeriesFields!=null) {
-			for(Map.Entry<String, TDoubleArrayList> doubleFieldTSEntry : doubleTimeSeriesFields.entrySet()) {
-				TDoubleArrayList list = (TDoubleArrayList) doubleFieldTSEntry.getValue();
-				TDoubleArrayList newList = new TDoubleArrayList(actualEndIndex-actualStartIndex) ;
-				for(int i=actualStartIndex;i<actualEndIndex;i++) {
-					if(!indexesForHolidays.contains(i))
-						newList.add(list.get(i));
-				}
-				
-				if(modified.doubleTimeSeriesFields==null) {
-					modified.doubleTimeSeriesFields = new HashMap<>();
-				}
-				modified.doubleTimeSeriesFields.put(doubleFieldTSEntry.getKey(), newList);
-			}
-		}
-		if(integerTimeSeriesFields!=null) {
-			for(Map.Entry<String, TIntArrayList> integerFieldTSEntry : integerTimeSeriesFields.entrySet()) {
-				TIntArrayList list = (TIntArrayList) integerFieldTSEntry.getValue();
-				TIntArrayList newList = new TIntArrayList(actualEndIndex-actualStartIndex) ;
-				for(int i=actualStartIndex;i<actualEndIndex;i++) {
-					if(!indexesForHolidays.contains(i))
-						newList.add(list.get(i));
-				}
-				if(modified.integerTimeSeriesFields==null) {
-					modified.integerTimeSeriesFields = new HashMap<>();
-				}
-				modified.integerTimeSeriesFields.put(integerFieldTSEntry.getKey(), newList);
-			}
-		}
-		if(longTimeSeriesFields!=null) {
-			for(Map.Entry<String, TLongArrayList> longFieldTSEntry : longTimeSeriesFields.entrySet()) {
-				TLongArrayList list = (TLongArrayList) longFieldTSEntry.getValue();
-				TLongArrayList newList = new TLongArrayList(actualEndIndex-actualStartIndex) ;
-				for(int i=actualStartIndex;i<actualEndIndex;i++) {
-					if(!indexesForHolidays.contains(i))
-						newList.add(list.get(i));
-				}
-				if(modified.longTimeSeriesFields==null) {
-					modified.longTimeSeriesFields = new HashMap<>();
-				}
-				modified.longTimeSeriesFields.put(longFieldTSEntry.getKey(), newList);
-			}
-		}
-		if(stringTimeSeriesFields!=null) {
-			for(Map.Entry<String, List<String>> stringFieldTSEntry : stringTimeSeriesFields.entrySet()) {
-				List<String> list = new ArrayList<>(stringFieldTSEntry.getValue().subList(actualStartIndex, actualEndIndex));
-				List<String> newList = new ArrayList<>(actualEndIndex-actualStartIndex);
-				for(int i=actualStartIndex;i<actualEndIndex;i++) {
-					if(!indexesForHolidays.contains(i))
-						newList.add(list.get(i));
-				}
-				if(modified.stringTimeSeriesFields==null) {
-					modified.stringTimeSeriesFields = new HashMap<>();
-				}
-				modified.stringTimeSeriesFields.put(stringFieldTSEntry.getKey(), newList);
-			}
+		// one mask and compact pass over the calendar, the kept indexes are then shared by every field
+		BitSet holidays = this.interval.getHolidayMask(interval, storedStartTime, actualEndIndex);
+		int[] indexes = new int[Math.max(0, actualEndIndex-actualStartIndex)];
+		int count = 0;
+		for(int i=holidays.nextClearBit(actualStartIndex);i<actualEndIndex;i=holidays.nextClearBit(i+1)) {
+			indexes[count++] = i;
 		}
+		transformFields(modified, indexes, actualStartIndex, count, Collections.emptyMap(), Collections.emptyMap());
 		return modified;
 	}
 	
@@ -279,79 +336,8 @@ public class TimeSeriesEntry {
 	 */
 	public TimeSeriesEntry sample(LocalDateTime start, LocalDateTime end, IntervalType interval, 
 			long unitJump, ChronoField unit) {
-		int actualStartIndex = this.interval.getClosetNextIndex(start, this.storedStartTime);
-		LocalDateTime actualStartTime = this.interval.getClosestTimeNextTo(start);
-		int actualEndIndex = this.interval.getClosetPreviousIndex(end, this.storedStartTime);
-		LocalDateTime actualEndTime = this.interval.getClosestTimePrevTo(end);
-		TimeSeriesEntry modified =  new TimeSeriesEntry();
-		modified.startTime = this.startTime; modified.endTime = this.endTime;
-		modified.storedStartTime = actualStartTime; modified.storedEndTime = actualEndTime;
-		modified.interval = interval; modified.key = this.key;
-		Set<Integer> indexesForHolidays = new HashSet<>();
-		for(LocalDateTime holiday : interval.getHolidays()) {
-			int index = this.interval.getIndex(holiday, modified.storedStartTime);
-			if(index!=-1) {
-				indexesForHolidays.add(index);
-			}
-		}
-		if(doubleTimeSeriesFields!=null) {
-			for(Map.Entry<String, TDoubleArrayList> doubleFieldTSEntry : doubleTimeSeriesFields.entrySet()) {
-				TDoubleArrayList list = (TDoubleArrayList) doubleFieldTSEntry.getValue();
-				TDoubleArrayList newList = new TDoubleArrayList(actualEndIndex-actualStartIndex) ;
-				for(int i=actualStartIndex;i<actualEndIndex;i++) {
-					if(!indexesForHolidays.contains(i))
-						newList.add(list.get(i));
-				}
-				
-				if(modified.doubleTimeSeriesFields==null) {
-					modified.doubleTimeSeriesFields = new HashMap<>();
-				}
-				modified.doubleTimeSeriesFields.put(doubleFieldTSEntry.getKey(), newList);
-			}
-		}
-		if(integerTimeSeriesFields!=null) {
-			for(Map.Entry<String, TIntArrayList> integerFieldTSEntry : integerTimeSeriesFields.entrySet()) {
-				TIntArrayList list = (TIntArrayList) integerFieldTSEntry.getValue();
-				TIntArrayList newList = new TIntArrayList(actualEndIndex-actualStartIndex) ;
-				for(int i=actualStartIndex;i<actualEndIndex;i++) {
-					if(!indexesForHolidays.contains(i))
-						newList.add(list.get(i));
-				}
-				if(modified.integerTimeSeriesFields==null) {
-					modified.integerTimeSeriesFields = new HashMap<>();
-				}
-				modified.integerTimeSeriesFields.put(integerFieldTSEntry.getKey(), newList);
-			}
-		}
-		if(longTimeSeriesFields!=null) {
-			for(Map.Entry<String, TLongArrayList> longFieldTSEntry : longTimeSeriesFields.entrySet()) {
-				TLongArrayList list = (TLongArrayList) longFieldTSEntry.getValue();
-				TLongArrayList newList = new TLongArrayList(actualEndIndex-actualStartIndex) ;
-				for(int i=actualStartIndex;i<actualEndIndex;i++) {
-					if(!indexesForHolidays.contains(i))
-						newList.add(list.get(i));
-				}
-				if(modified.longTimeSeriesFields==null) {
-					modified.longTimeSeriesFields = new HashMap<>();
-				}
-				modified.longTimeSeriesFields.put(longFieldTSEntry.getKey(), newList);
-			}
-		}
-		if(stringTimeSeriesFields!=null) {
-			for(Map.Entry<String, List<String>> stringFieldTSEntry : stringTimeSeriesFields.entrySet()) {
-				List<String> list = new ArrayList<>(stringFieldTSEntry.getValue().subList(actualStartIndex, actualEndIndex));
-				List<String> newList = new ArrayList<>(actualEndIndex-actualStartIndex);
-				for(int i=actualStartIndex;i<actualEndIndex;i++) {
-					if(!indexesForHolidays.contains(i))
-						newList.add(list.get(i));
-				}
-				if(modified.stringTimeSeriesFields==null) {
-					modified.stringTimeSeriesFields = new HashMap<>();
-				}
-				modified.stringTimeSeriesFields.put(stringFieldTSEntry.getKey(), newList);
-			}
-		}
-		return modified;
+		// the observations are not stepped, apply(..., increment, unit) selects stepped observations
+		return sample(start, end, interval);
 	}
 	
 	/**
@@ -369,12 +355,12 @@ public class TimeSeriesEntry {
 	 * @param end end time since epoch untill which wish to retrieve the time series
 	 * @param interval the calender 
 	 * @param fieldBasedFunctionMap the function to apply on each field, if not available identity
-	 * 			function is used
+	 * 			function is used, see {@link #applyWithFilter(LocalDateTime, LocalDateTime, IntervalType, Map, Map, long, ChronoField)}
 	 * @return
 	 */
 	public TimeSeriesEntry apply(LocalDateTime start, LocalDateTime end, IntervalType interval, 
-			@SuppressWarnings("rawtypes") Map<String, Function> fieldBasedFunctionMap) {
-		return null;
+			Map<String, ?> fieldBasedFunctionMap) {
+		return transform(start, end, interval, fieldBasedFunctionMap, Collections.emptyMap(), 0, null);
 	}
 	
 	/**
@@ -394,12 +380,13 @@ public class TimeSeriesEntry {
 	 * @param fieldBasedFunctionMap the function to apply on each field, if not available identity
 	 * 			function is used
 	 * @param increment the number of units to increment for next time series observation
+	 * @param unit the unit definition, Days, Months, Seconds etc 
 	 * @return
 	 */
 	public TimeSeriesEntry apply(LocalDateTime start, LocalDateTime end, IntervalType interval, 
-			@SuppressWarnings("rawtypes") Map<String, Function> fieldBasedFunctionMap,
+			Map<String, ?> fieldBasedFunctionMap,
 			long increment, ChronoField unit) {
-		return null;
+		return transform(start, end, interval, fieldBasedFunctionMap, Collections.emptyMap(), increment, unit);
 	}
 	
 	/**
@@ -412,6 +399,12 @@ public class TimeSeriesEntry {
 	 * 		<code>end <= current time series end time</code>
 	 * 
 	 * with the applicable calendar defined by {@code IntervalType}
+	 * 
+	 * Each observation of the result aggregates the observation at the same time and the <code>windowSize - 1</code>
+	 * preceding ones, observations before <code>start</code> included, so the first windows are
+	 * only partial at the beginning of the stored series. Only the fields of <code>fieldBasedAccumulatorMap</code>
+	 * are rolled, see {@link RollingStatistic} for the aggregates computed incrementally and the
+	 * type of the resulting fields.
 	 * </pre>
 	 * @param start start time since epoch from where you wish to retrieve the time series
 	 * @param end end time since epoch until which wish to retrieve the time series
@@ -420,10 +413,82 @@ public class TimeSeriesEntry {
 	 * @param windowSize the window size
 	 * @return
 	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public TimeSeriesEntry roll(LocalDateTime start, LocalDateTime end, IntervalType interval, 
-			@SuppressWarnings("rawtypes") Map<String, BinaryOperator> fieldBasedAccumulatorMap,
+			Map<String, BinaryOperator> fieldBasedAccumulatorMap,
 			long windowSize) {
-		return null;
+		if(windowSize<1) {
+			throw new IllegalArgumentException("Window size must be positive, was " + windowSize);
+		}
+		int window = (int) Math.min(windowSize, Integer.MAX_VALUE);
+		LocalDateTime from = start.compareTo(storedStartTime)>0 ? start : storedStartTime;
+		LocalDateTime to = end.compareTo(storedEndTime)<0 ? end : storedEndTime;
+		TimeSeriesEntry rolled = new TimeSeriesEntry();
+		rolled.startTime = this.startTime; rolled.endTime = this.endTime;
+		rolled.storedStartTime = this.interval.getClosestTimeNextTo(from); rolled.storedEndTime = this.interval.getClosestTimePrevTo(to);
+		rolled.interval = interval; rolled.key = this.key;
+		int first = Math.max(0, this.interval.getClosetNextIndex(from, storedStartTime));
+		int requestedLast = this.interval.getClosetPreviousIndex(to, storedStartTime);
+		for(Map.Entry<String, BinaryOperator> entry : fieldBasedAccumulatorMap.entrySet()) {
+			String name = entry.getKey();
+			BinaryOperator operator = entry.getValue();
+			RollingStatistic statistic = operator instanceof RollingStatistic ? (RollingStatistic) operator : null;
+			DoubleColumn doubles = getDoubleColumn(name);
+			IntColumn ints = doubles==null ? getIntColumn(name) : null;
+			LongColumn longs = doubles==null && ints==null ? getLongColumn(name) : null;
+			List<String> strings = doubles==null && ints==null && longs==null && stringTimeSeriesFields!=null 
+					? stringTimeSeriesFields.get(name) : null;
+			int size = doubles!=null ? doubles.size() : ints!=null ? ints.size() : longs!=null ? longs.size() 
+					: strings!=null ? strings.size() : -1;
+			if(size==-1) {
+				throw new IllegalArgumentException("No field " + name + " in time series " + key);
+			}
+			int last = Math.min(requestedLast, size-1), offset = Math.max(0, first-window+1);
+			int length = Math.max(0, last-offset+1), count = Math.max(0, last-first+1);
+			if(strings!=null) {
+				if(statistic!=null) {
+					throw new IllegalArgumentException(statistic + " cannot roll string field " + name);
+				}
+				List<String> values = new ArrayList<>(count);
+				RollingWindows.fold(operator, strings::get, offset, first, last, window, value -> values.add((String) value));
+				if(rolled.stringTimeSeriesFields==null)
+					rolled.stringTimeSeriesFields = new HashMap<>();
+				rolled.stringTimeSeriesFields.put(name, values);
+			}else if(statistic!=null || doubles!=null) {
+				double[] values = new double[length];
+				if(doubles!=null) {
+					doubles.copyTo(offset, values, 0, length);
+				}else {
+					for(int i=0;i<length;i++) {
+						values[i] = ints!=null ? ints.get(offset+i) : longs.get(offset+i);
+					}
+				}
+				TDoubleArrayList out = new TDoubleArrayList(count);
+				if(statistic!=null) {
+					RollingWindows.roll(statistic, values, offset, first, last, window, out);
+				}else {
+					RollingWindows.fold(operator, i -> values[i-offset], offset, first, last, window, value -> out.add((Double) value));
+				}
+				if(rolled.doubleTimeSeriesFields==null)
+					rolled.doubleTimeSeriesFields = new HashMap<>();
+				rolled.doubleTimeSeriesFields.put(name, out);
+			}else if(ints!=null) {
+				int[] values = ints.copyTo(offset, new int[length], 0, length);
+				TIntArrayList out = new TIntArrayList(count);
+				RollingWindows.fold(operator, i -> values[i-offset], offset, first, last, window, value -> out.add((Integer) value));
+				if(rolled.integerTimeSeriesFields==null)
+					rolled.integerTimeSeriesFields = new HashMap<>();
+				rolled.integerTimeSeriesFields.put(name, out);
+			}else {
+				long[] values = longs.copyTo(offset, new long[length], 0, length);
+				TLongArrayList out = new TLongArrayList(count);
+				RollingWindows.fold(operator, i -> values[i-offset], offset, first, last, window, value -> out.add((Long) value));
+				if(rolled.longTimeSeriesFields==null)
+					rolled.longTimeSeriesFields = new HashMap<>();
+				rolled.longTimeSeriesFields.put(name, out);
+			}
+		}
+		return rolled;
 	}
 	
 	/**
@@ -445,12 +510,10 @@ public class TimeSeriesEntry {
 	 * @param fieldPredicateMap Map containing predicate to be applied to each field
 	 * @return
 	 */
-	
-	@SuppressWarnings("rawtypes")
 	public TimeSeriesEntry applyWithFilter(LocalDateTime start, LocalDateTime end, IntervalType interval, 
-			Map<String, Function> fieldBasedFunctionMap,
-			Map<String, Predicate> fieldPredicateMap) {
-		return null;
+			Map<String, ?> fieldBasedFunctionMap,
+			Map<String, ?> fieldPredicateMap) {
+		return transform(start, end, interval, fieldBasedFunctionMap, fieldPredicateMap, 0, null);
 	}
 	
 	/**
@@ -474,18 +537,131 @@ public class TimeSeriesEntry {
 	 * @param unit the unit definition, Days, Months, Seconds etc 
 	 * @return
 	 */
-	@SuppressWarnings("rawtypes") 
 	public TimeSeriesEntry applyWithFilter(LocalDateTime start, LocalDateTime end, IntervalType interval, 
-			Map<String, Function> fieldBasedFunctionMap,
-			Map<String, Predicate> fieldPredicateMap,
+			Map<String, ?> fieldBasedFunctionMap,
+			Map<String, ?> fieldPredicateMap,
 			long increment, ChronoField unit) {
-		return null;
+		return transform(start, end, interval, fieldBasedFunctionMap, fieldPredicateMap, increment, unit);
+	}
+	
+	/**
+	 * <pre>
+	 * Implementation of apply and applyWithFilter. Functions and predicates are looked up by field and
+	 * dispatched on the type of the field:
+	 * 	double	{@link java.util.function.DoubleUnaryOperator}, {@link java.util.function.DoublePredicate}
+	 * 	integer	{@link java.util.function.IntUnaryOperator}, {@link java.util.function.IntPredicate}
+	 * 	long	{@link java.util.function.LongUnaryOperator}, {@link java.util.function.LongPredicate}
+	 * which run without boxing, or a boxed {@link Function} and {@link Predicate} for any type.
+	 * A value rejected by the predicate of its field is replaced by the missing value of the field, so
+	 * that all the fields stay aligned on the calendar, see {@link ApplyKernels}.
+	 * 
+	 * With a positive <code>increment</code>, only the observations at <code>start</code>,
+	 * <code>start + increment</code>, ... <code>unit</code> are kept, each on the closest business day
+	 * on or before it.
+	 * </pre>
+	 */
+	private TimeSeriesEntry transform(LocalDateTime start, LocalDateTime end, IntervalType interval, 
+			Map<String, ?> functions, Map<String, ?> predicates, long increment, ChronoField unit) {
+		LocalDateTime from = start.compareTo(storedStartTime)>0 ? start : storedStartTime;
+		LocalDateTime to = end.compareTo(storedEndTime)<0 ? end : storedEndTime;
+		TimeSeriesEntry transformed = new TimeSeriesEntry();
+		transformed.startTime = this.startTime; transformed.endTime = this.endTime;
+		transformed.interval = interval; transformed.key = this.key;
+		int first = Math.max(0, this.interval.getClosetNextIndex(from, storedStartTime));
+		int last = this.interval.getClosetPreviousIndex(to, storedStartTime);
+		int[] indexes = increment>0 ? steppedIndexes(from, to, increment, unit) : null;
+		int count = indexes!=null ? indexes.length : Math.max(0, last-first+1);
+		if(count==0) {
+			transformed.storedStartTime = from; transformed.storedEndTime = from;
+		}else {
+			transformed.storedStartTime = this.interval.getTimeAt(indexes!=null ? indexes[0] : first, storedStartTime);
+			transformed.storedEndTime = this.interval.getTimeAt(indexes!=null ? indexes[count-1] : last, storedStartTime);
+		}
+		transformFields(transformed, indexes, first, count, functions, predicates);
+		return transformed;
+	}
+	
+	/**
+	 * Adds to <code>target</code> every field transformed over the <code>count</code> observations at
+	 * <code>first, first + 1, ...</code> or at <code>indexes[0], indexes[1], ...</code>
+	 */
+	private void transformFields(TimeSeriesEntry target, int[] indexes, int first, int count, 
+			Map<String, ?> functions, Map<String, ?> predicates) {
+		Set<String> names = new HashSet<>();
+		if(doubleTimeSeriesFields!=null) names.addAll(doubleTimeSeriesFields.keySet());
+		if(integerTimeSeriesFields!=null) names.addAll(integerTimeSeriesFields.keySet());
+		if(longTimeSeriesFields!=null) names.addAll(longTimeSeriesFields.keySet());
+		if(columnFields!=null) names.addAll(columnFields.keySet());
+		if(stringTimeSeriesFields!=null) names.addAll(stringTimeSeriesFields.keySet());
+		for(String name : names) {
+			Object function = functions.get(name), predicate = predicates.get(name);
+			DoubleColumn doubles = getDoubleColumn(name);
+			IntColumn ints = doubles==null ? getIntColumn(name) : null;
+			LongColumn longs = doubles==null && ints==null ? getLongColumn(name) : null;
+			if(doubles!=null) {
+				if(target.doubleTimeSeriesFields==null)
+					target.doubleTimeSeriesFields = new HashMap<>();
+				target.doubleTimeSeriesFields.put(name, ApplyKernels.apply(doubles, indexes, first, 
+						fieldCount(doubles.size(), indexes, first, count), function, predicate));
+			}else if(ints!=null) {
+				if(target.integerTimeSeriesFields==null)
+					target.integerTimeSeriesFields = new HashMap<>();
+				target.integerTimeSeriesFields.put(name, ApplyKernels.apply(ints, indexes, first, 
+						fieldCount(ints.size(), indexes, first, count), function, predicate));
+			}else if(longs!=null) {
+				if(target.longTimeSeriesFields==null)
+					target.longTimeSeriesFields = new HashMap<>();
+				target.longTimeSeriesFields.put(name, ApplyKernels.apply(longs, indexes, first, 
+						fieldCount(longs.size(), indexes, first, count), function, predicate));
+			}else {
+				List<String> values = stringTimeSeriesFields.get(name);
+				int fieldCount = fieldCount(values.size(), indexes, first, count);
+				List<String> out = new ArrayList<>(fieldCount);
+				ApplyKernels.apply(values, indexes, first, fieldCount, function, predicate, out);
+				if(target.stringTimeSeriesFields==null)
+					target.stringTimeSeriesFields = new HashMap<>();
+				target.stringTimeSeriesFields.put(name, out);
+			}
+		}
+	}
+	
+	/**
+	 * @return number of the <code>count</code> selected observations a field of <code>size</code> observations has
+	 */
+	private static int fieldCount(int size, int[] indexes, int first, int count) {
+		if(indexes==null) {
+			return Math.max(0, Math.min(count, size-first));
+		}
+		int fieldCount = count;
+		while(fieldCount>0 && indexes[fieldCount-1]>=size) {
+			fieldCount--;
+		}
+		return fieldCount;
+	}
+	
+	/**
+	 * @return indexes of the business days on or before <code>from</code>, <code>from + increment</code>,
+	 * 			... <code>unit</code> up to <code>to</code>, without repetition
+	 */
+	private int[] steppedIndexes(LocalDateTime from, LocalDateTime to, long increment, ChronoField unit) {
+		TIntArrayList indexes = new TIntArrayList();
+		LocalDateTime first = this.interval.getClosestTimeNextTo(from);
+		for(LocalDateTime time = first; time.compareTo(to)<=0; time = time.plus(increment, unit.getBaseUnit())) {
+			int index = this.interval.getClosetPreviousIndex(time, storedStartTime);
+			if(index>=0 && (indexes.isEmpty() || indexes.get(indexes.size()-1)!=index)) {
+				indexes.add(index);
+			}
+		}
+		return indexes.toArray();
 	}
 	
 	
 	
 	@Override
 	public String toString() {
+		if(columnFields!=null) {
+			return materialize().toString();
+		}
 		StringBuilder builder = new StringBuilder();
 		builder.append("key=").append(this.key).append(System.lineSeparator());
 		builder.append("startTime=").append(this.startTime).append(", endTime=").append(this.endTime).append(System.lineSeparator());
@@ -11,6 +11,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.bfm.app.timeseries.classifiers.IntervalType;
+import com.bfm.app.timeseries.column.DictionaryStringColumn;
+import com.bfm.app.timeseries.column.StringDictionary;
 
 
 public class TimeSeriesEntryBuilder<T extends TimeSeriesEntry> {
@@ -25,12 +27,16 @@ public class TimeSeriesEntryBuilder<T extends TimeSeriesEntry> {
 	private LocalDateTime storedEndTime;
 	private LocalDateTime storedStartTime;
 	private IntervalType interval;
+	private StringDictionary stringDictionary;
+	private Map<String, StringDictionary> fieldDictionaries = new HashMap<>();
 	
 	public TimeSeriesEntryBuilder<T> reset() {
 		key = null; objectBuilder=null;
 		fieldTypeMap.clear();
 		startTime = endTime = storedEndTime = storedStartTime = null;
 		interval = null;
+		stringDictionary = null;
+		fieldDictionaries.clear();
 		return this;
 	}
 	
@@ -94,6 +100,23 @@ public class TimeSeriesEntryBuilder<T extends TimeSeriesEntry> {
 		return this;
 	}
 	
+	/**
+	 * String fields are built as {@link DictionaryStringColumn}s encoded with <code>dictionary</code>,
+	 * unless {@link #stringDictionary(String, StringDictionary) given a dictionary of their own}
+	 */
+	public TimeSeriesEntryBuilder<T> stringDictionary(StringDictionary dictionary) {
+		this.stringDictionary = dictionary;
+		return this;
+	}
+	
+	/**
+	 * The string field <code>name</code> is built as a {@link DictionaryStringColumn} encoded with <code>dictionary</code>
+	 */
+	public TimeSeriesEntryBuilder<T> stringDictionary(String name, StringDictionary dictionary) {
+		fieldDictionaries.put(name, dictionary);
+		return this;
+	}
+	
 	public TimeSeriesEntryBuilder<T> addField(String name, Class<?> clazz) {
 		if(fieldTypeMap.containsKey(name)) {
 			LOGGER.warn("Field {} is already defined of type {}, overriding with type {}", name, fieldTypeMap.get(name), clazz);
@@ -132,7 +155,9 @@ public class TimeSeriesEntryBuilder<T extends TimeSeriesEntry> {
 				if(tsEntry.stringTimeSeriesFields==null) {
 					tsEntry.stringTimeSeriesFields = new HashMap<>();
 				}
-				tsEntry.stringTimeSeriesFields.put(entry.getKey(), TimeSeriesFieldTypeSuppliers.STRING_TYPE_SUPPLIER.get());
+				StringDictionary dictionary = fieldDictionaries.getOrDefault(entry.getKey(), stringDictionary);
+				tsEntry.stringTimeSeriesFields.put(entry.getKey(), dictionary==null ? TimeSeriesFieldTypeSuppliers.STRING_TYPE_SUPPLIER.get() 
+						: new DictionaryStringColumn(dictionary));
 			}
 		}
 		return tsEntry;
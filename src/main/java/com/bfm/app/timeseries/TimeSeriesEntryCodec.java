@@ -0,0 +1,265 @@
+package com.bfm.app.timeseries;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.bfm.app.timeseries.classifiers.IntervalType;
+import com.bfm.app.timeseries.column.Column;
+import com.bfm.app.timeseries.column.DoubleColumn;
+import com.bfm.app.timeseries.column.IntColumn;
+import com.bfm.app.timeseries.column.LongColumn;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * <pre>
+ * Binary form of a {@link TimeSeriesEntry}, the state of the base class only:
+ * 	string		key
+ * 	time		start, end, stored start and stored end
+ * 	byte		1 if the status is {@link Status#LOADED}, 0 otherwise
+ * 	int		number of fields, then for each field
+ * 		string		name
+ * 		byte		type, 'I' int, 'L' long, 'D' double or 'S' string
+ * 		int		number of values
+ * 		values		4 or 8 bytes each in the order of the buffer, one string after the other
+ * A string is its UTF-8 length, -1 for <code>null</code>, and bytes. A time is its epoch second in UTC
+ * and nanosecond, the second being Long.MIN_VALUE for <code>null</code>.
+ *
+ * Numeric fields are bulk copied between the buffer and primitive arrays whether they are stored in
+ * lists or in columns, a series is read back with its fields in lists.
+ * </pre>
+ */
+public final class TimeSeriesEntryCodec {
+	private static final byte INT = 'I';
+	private static final byte LONG = 'L';
+	private static final byte DOUBLE = 'D';
+	private static final byte STRING = 'S';
+	private static final int TIME_BYTES = 8 + 4;
+
+	private TimeSeriesEntryCodec() {
+	}
+
+	/**
+	 * @return number of bytes {@link #write(TimeSeriesEntry, ByteBuffer)} puts for <code>ts</code>
+	 */
+	public static int encodedSize(TimeSeriesEntry ts) {
+		long size = stringSize(ts.key) + 4 * TIME_BYTES + 1 + 4;
+		for(Map.Entry<String, Integer> field : numericFields(ts).entrySet()) {
+			size += stringSize(field.getKey()) + 1 + 4 + (long) field.getValue();
+		}
+		if(ts.stringTimeSeriesFields!=null) {
+			for(Map.Entry<String, List<String>> field : ts.stringTimeSeriesFields.entrySet()) {
+				size += stringSize(field.getKey()) + 1 + 4;
+				for(String value : field.getValue()) {
+					size += stringSize(value);
+				}
+			}
+		}
+		if(size>Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Series " + ts.key + " takes " + size + " bytes, more than a buffer can hold");
+		}
+		return (int) size;
+	}
+
+	/**
+	 * Puts <code>ts</code> at the position of <code>buffer</code>, which must have {@link #encodedSize(TimeSeriesEntry)}
+	 * bytes remaining, and moves the position past it
+	 */
+	public static void write(TimeSeriesEntry ts, ByteBuffer buffer) {
+		putString(buffer, ts.key);
+		putTime(buffer, ts.startTime);
+		putTime(buffer, ts.endTime);
+		putTime(buffer, ts.storedStartTime);
+		putTime(buffer, ts.storedEndTime);
+		buffer.put((byte) (ts.getStatus()==Status.LOADED ? 1 : 0));
+		Map<String, Integer> numericFields = numericFields(ts);
+		buffer.putInt(numericFields.size() + (ts.stringTimeSeriesFields==null ? 0 : ts.stringTimeSeriesFields.size()));
+		for(String name : numericFields.keySet()) {
+			DoubleColumn doubles = ts.getDoubleColumn(name);
+			if(doubles!=null) {
+				double[] values = doubles.copyTo(0, new double[doubles.size()], 0, doubles.size());
+				putHeader(buffer, name, DOUBLE, values.length);
+				buffer.asDoubleBuffer().put(values);
+				((Buffer) buffer).position(buffer.position() + 8 * values.length);
+				continue;
+			}
+			LongColumn longs = ts.getLongColumn(name);
+			if(longs!=null) {
+				long[] values = longs.copyTo(0, new long[longs.size()], 0, longs.size());
+				putHeader(buffer, name, LONG, values.length);
+				buffer.asLongBuffer().put(values);
+				((Buffer) buffer).position(buffer.position() + 8 * values.length);
+				continue;
+			}
+			IntColumn ints = ts.getIntColumn(name);
+			int[] values = ints.copyTo(0, new int[ints.size()], 0, ints.size());
+			putHeader(buffer, name, INT, values.length);
+			buffer.asIntBuffer().put(values);
+			((Buffer) buffer).position(buffer.position() + 4 * values.length);
+		}
+		if(ts.stringTimeSeriesFields!=null) {
+			for(Map.Entry<String, List<String>> field : ts.stringTimeSeriesFields.entrySet()) {
+				putHeader(buffer, field.getKey(), STRING, field.getValue().size());
+				for(String value : field.getValue()) {
+					putString(buffer, value);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the series at the position of <code>buffer</code> and moves the position past it
+	 * @param interval interval of the series read, which is not part of its binary form
+	 */
+	public static <T extends TimeSeriesEntry> T read(ByteBuffer buffer, IntervalType interval,
+			TimeSeriesEntryBuilder<T> builder, Supplier<T> objectSupplier) {
+		builder.key(getString(buffer)).interval(interval).objectBuilder(objectSupplier);
+		builder.startTime(getTime(buffer)).endTime(getTime(buffer));
+		builder.storedStartTime(getTime(buffer)).storedEndTime(getTime(buffer));
+		T ts = builder.build();
+		boolean loaded = buffer.get()==1;
+		int fields = buffer.getInt();
+		for(int i=0;i<fields;i++) {
+			String name = getString(buffer);
+			byte type = buffer.get();
+			int length = buffer.getInt();
+			if(type==DOUBLE) {
+				double[] values = new double[length];
+				buffer.asDoubleBuffer().get(values);
+				((Buffer) buffer).position(buffer.position() + 8 * length);
+				TDoubleArrayList list = new TDoubleArrayList(length);
+				list.add(values);
+				if(ts.doubleTimeSeriesFields==null)
+					ts.doubleTimeSeriesFields = new HashMap<>();
+				ts.doubleTimeSeriesFields.put(name, list);
+			}else if(type==LONG) {
+				long[] values = new long[length];
+				buffer.asLongBuffer().get(values);
+				((Buffer) buffer).position(buffer.position() + 8 * length);
+				TLongArrayList list = new TLongArrayList(length);
+				list.add(values);
+				if(ts.longTimeSeriesFields==null)
+					ts.longTimeSeriesFields = new HashMap<>();
+				ts.longTimeSeriesFields.put(name, list);
+			}else if(type==INT) {
+				int[] values = new int[length];
+				buffer.asIntBuffer().get(values);
+				((Buffer) buffer).position(buffer.position() + 4 * length);
+				TIntArrayList list = new TIntArrayList(length);
+				list.add(values);
+				if(ts.integerTimeSeriesFields==null)
+					ts.integerTimeSeriesFields = new HashMap<>();
+				ts.integerTimeSeriesFields.put(name, list);
+			}else if(type==STRING) {
+				List<String> list = new ArrayList<>(length);
+				for(int j=0;j<length;j++) {
+					list.add(getString(buffer));
+				}
+				if(ts.stringTimeSeriesFields==null)
+					ts.stringTimeSeriesFields = new HashMap<>();
+				ts.stringTimeSeriesFields.put(name, list);
+			}else {
+				throw new IllegalArgumentException("Unknown type " + type + " of field " + name + " of series " + ts.key);
+			}
+		}
+		if(loaded) {
+			ts.updatStatus();
+		}
+		return ts;
+	}
+
+	/**
+	 * @return the bytes taken by the values of each numeric field of <code>ts</code>, by name
+	 */
+	private static Map<String, Integer> numericFields(TimeSeriesEntry ts) {
+		Map<String, Integer> fields = new HashMap<>();
+		if(ts.integerTimeSeriesFields!=null)
+			for(Map.Entry<String, TIntArrayList> entry : ts.integerTimeSeriesFields.entrySet())
+				fields.put(entry.getKey(), 4 * entry.getValue().size());
+		if(ts.longTimeSeriesFields!=null)
+			for(Map.Entry<String, TLongArrayList> entry : ts.longTimeSeriesFields.entrySet())
+				fields.put(entry.getKey(), 8 * entry.getValue().size());
+		if(ts.doubleTimeSeriesFields!=null)
+			for(Map.Entry<String, TDoubleArrayList> entry : ts.doubleTimeSeriesFields.entrySet())
+				fields.put(entry.getKey(), 8 * entry.getValue().size());
+		if(ts.columnFields!=null)
+			for(Map.Entry<String, Column> entry : ts.columnFields.entrySet())
+				fields.put(entry.getKey(), (entry.getValue() instanceof IntColumn ? 4 : 8) * entry.getValue().size());
+		return fields;
+	}
+
+	private static void putHeader(ByteBuffer buffer, String name, byte type, int length) {
+		putString(buffer, name);
+		buffer.put(type);
+		buffer.putInt(length);
+	}
+
+	private static void putTime(ByteBuffer buffer, LocalDateTime time) {
+		buffer.putLong(time==null ? Long.MIN_VALUE : time.toEpochSecond(ZoneOffset.UTC));
+		buffer.putInt(time==null ? 0 : time.getNano());
+	}
+
+	private static LocalDateTime getTime(ByteBuffer buffer) {
+		long seconds = buffer.getLong();
+		int nanos = buffer.getInt();
+		return seconds==Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+	}
+
+	/**
+	 * @return bytes taken by <code>value</code> in a buffer, its UTF-8 length without encoding it
+	 */
+	private static int stringSize(String value) {
+		if(value==null) {
+			return 4;
+		}
+		int size = 4;
+		for(int i=0;i<value.length();i++) {
+			char c = value.charAt(i);
+			if(c<0x80) {
+				size += 1;
+			}else if(c<0x800) {
+				size += 2;
+			}else if(Character.isHighSurrogate(c) && i+1<value.length() && Character.isLowSurrogate(value.charAt(i+1))) {
+				size += 4;
+				i++;
+			}else if(Character.isSurrogate(c)) {
+				// unpaired surrogates are encoded as '?'
+				size += 1;
+			}else {
+				size += 3;
+			}
+		}
+		return size;
+	}
+
+	private static void putString(ByteBuffer buffer, String value) {
+		if(value==null) {
+			buffer.putInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if(length<0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
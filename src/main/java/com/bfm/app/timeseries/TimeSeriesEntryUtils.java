@@ -2,18 +2,36 @@ package com.bfm.app.timeseries;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
 
 import com.bfm.app.timeseries.classifiers.IntervalType;
+import com.bfm.app.timeseries.column.Column;
+import com.bfm.app.timeseries.column.ColumnFactory;
+import com.bfm.app.timeseries.column.DictionaryStringColumn;
+import com.bfm.app.timeseries.column.StringDictionary;
 
 import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.list.array.TLongArrayList;
 
 public class TimeSeriesEntryUtils {
+	/** object header of a 64 bit JVM with compressed oops */
+	private static final int OBJECT_HEADER_BYTES = 12;
+	private static final int ARRAY_HEADER_BYTES = 16;
+	private static final int REFERENCE_BYTES = 4;
+	/** Trove list: header, array reference, size and no entry value */
+	private static final int TROVE_LIST_BYTES = align(OBJECT_HEADER_BYTES + REFERENCE_BYTES + 4 + 8);
+	/** ArrayList: header, array reference, size and modification count */
+	private static final int ARRAY_LIST_BYTES = align(OBJECT_HEADER_BYTES + REFERENCE_BYTES + 4 + 4);
+	/** String: header, value array reference and hash */
+	private static final int STRING_BYTES = align(OBJECT_HEADER_BYTES + REFERENCE_BYTES + 4);
+	/** HashMap.Node per field: header, hash, key, value and next references */
+	private static final int MAP_ENTRY_BYTES = align(OBJECT_HEADER_BYTES + 4 + 3 * REFERENCE_BYTES);
 	
+
 	public static Status getStatus(TimeSeriesEntry ts) {
 		return ts.getStatus();
 	}
@@ -65,6 +83,193 @@ public class TimeSeriesEntryUtils {
 		return newValue;
 	}
 	
+	/**
+	 * <pre>
+	 * Builds the series made of the observations of <code>original</code> up to <code>since</code>
+	 * followed by the observations of <code>tail</code>, which holds the observations after
+	 * <code>since</code> on the same calendar. Fields missing from the tail are padded with their no
+	 * entry value (<code>null</code> for strings), fields only in the tail are ignored.
+	 * 
+	 * The tail is placed at the index of its stored start time, the business days between the last
+	 * observation kept and the first one of the tail are padded with no entry values as well, so that
+	 * every index keeps mapping to its date.
+	 * 
+	 * The columns are copied instead of being appended to in place: cached series are read without
+	 * locks, so a published column must never be resized under a reader. The result is always on heap.
+	 * </pre>
+	 * @throws IllegalArgumentException if <code>tail</code> starts before <code>original</code>
+	 */
+	public static <T extends TimeSeriesEntry> T append(T original, T tail, LocalDateTime since, IntervalType interval, 
+			TimeSeriesEntryBuilder<T> builder, Supplier<T> objectSupplier) {
+		TimeSeriesEntry head = original.materialize(), rest = tail.materialize();
+		int size = length(head), added = length(rest);
+		int keep = since.compareTo(original.storedEndTime)>=0 ? size 
+				: Math.max(0, Math.min(size, interval.getClosetPreviousIndex(since, original.storedStartTime)+1));
+		int offset = keep;
+		if(added>0 && tail.storedStartTime!=null) {
+			if(tail.storedStartTime.compareTo(original.storedStartTime)<0) {
+				throw new IllegalArgumentException("The tail of " + original.key + " starts at " + tail.storedStartTime 
+						+ ", before the series at " + original.storedStartTime);
+			}
+			offset = interval.getClosetNextIndex(tail.storedStartTime, original.storedStartTime);
+			keep = Math.min(keep, offset);
+		}
+		int length = offset + added;
+		builder.key(original.key).interval(original.interval).objectBuilder(objectSupplier);
+		builder.startTime(original.startTime).storedStartTime(original.storedStartTime);
+		builder.endTime(tail.endTime!=null && tail.endTime.compareTo(original.endTime)>0 ? tail.endTime : original.endTime);
+		builder.storedEndTime(added>0 && tail.storedEndTime!=null ? tail.storedEndTime : original.storedEndTime);
+		T appended = builder.build();
+		if(head.integerTimeSeriesFields!=null) {
+			appended.integerTimeSeriesFields = new HashMap<>();
+			for(Map.Entry<String, TIntArrayList> entry : head.integerTimeSeriesFields.entrySet()) {
+				TIntArrayList column = new TIntArrayList(length);
+				column.add(entry.getValue().toArray(0, keep));
+				column.fill(column.size(), offset, column.getNoEntryValue());
+				TIntArrayList tailColumn = rest.integerTimeSeriesFields==null ? null : rest.integerTimeSeriesFields.get(entry.getKey());
+				if(tailColumn!=null)
+					column.add(tailColumn.toArray(0, Math.min(added, tailColumn.size())));
+				column.fill(column.size(), length, column.getNoEntryValue());
+				appended.integerTimeSeriesFields.put(entry.getKey(), column);
+			}
+		}
+		if(head.longTimeSeriesFields!=null) {
+			appended.longTimeSeriesFields = new HashMap<>();
+			for(Map.Entry<String, TLongArrayList> entry : head.longTimeSeriesFields.entrySet()) {
+				TLongArrayList column = new TLongArrayList(length);
+				column.add(entry.getValue().toArray(0, keep));
+				column.fill(column.size(), offset, column.getNoEntryValue());
+				TLongArrayList tailColumn = rest.longTimeSeriesFields==null ? null : rest.longTimeSeriesFields.get(entry.getKey());
+				if(tailColumn!=null)
+					column.add(tailColumn.toArray(0, Math.min(added, tailColumn.size())));
+				column.fill(column.size(), length, column.getNoEntryValue());
+				appended.longTimeSeriesFields.put(entry.getKey(), column);
+			}
+		}
+		if(head.doubleTimeSeriesFields!=null) {
+			appended.doubleTimeSeriesFields = new HashMap<>();
+			for(Map.Entry<String, TDoubleArrayList> entry : head.doubleTimeSeriesFields.entrySet()) {
+				TDoubleArrayList column = new TDoubleArrayList(length);
+				column.add(entry.getValue().toArray(0, keep));
+				column.fill(column.size(), offset, column.getNoEntryValue());
+				TDoubleArrayList tailColumn = rest.doubleTimeSeriesFields==null ? null : rest.doubleTimeSeriesFields.get(entry.getKey());
+				if(tailColumn!=null)
+					column.add(tailColumn.toArray(0, Math.min(added, tailColumn.size())));
+				column.fill(column.size(), length, column.getNoEntryValue());
+				appended.doubleTimeSeriesFields.put(entry.getKey(), column);
+			}
+		}
+		if(head.stringTimeSeriesFields!=null) {
+			appended.stringTimeSeriesFields = new HashMap<>();
+			for(Map.Entry<String, List<String>> entry : head.stringTimeSeriesFields.entrySet()) {
+				List<String> column = entry.getValue() instanceof DictionaryStringColumn 
+						? new DictionaryStringColumn(((DictionaryStringColumn) entry.getValue()).getDictionary()) 
+						: new ArrayList<>(length);
+				column.addAll(entry.getValue().subList(0, keep));
+				while(column.size()<offset) {
+					column.add(null);
+				}
+				List<String> tailColumn = rest.stringTimeSeriesFields==null ? null : rest.stringTimeSeriesFields.get(entry.getKey());
+				if(tailColumn!=null)
+					column.addAll(tailColumn.subList(0, Math.min(added, tailColumn.size())));
+				while(column.size()<length) {
+					column.add(null);
+				}
+				appended.stringTimeSeriesFields.put(entry.getKey(), column);
+			}
+		}
+		if(original.getStatus()!=Status.JUST_LOADED) {
+			appended.updatStatus();
+		}
+		return appended;
+	}
+	
+	/**
+	 * <pre>
+	 * Copies <code>original</code> into a new series whose integer, long and double fields are stored
+	 * in columns built by <code>factory</code>, e.g. off heap or compressed. String fields are kept as is.
+	 * 
+	 * A new series is built rather than moving the fields of <code>original</code>, which may be
+	 * shared with the data store.
+	 * </pre>
+	 */
+	public static <T extends TimeSeriesEntry> T columnarCopy(T original, ColumnFactory factory, 
+			TimeSeriesEntryBuilder<T> builder, Supplier<T> objectSupplier) {
+		if(original.isColumnar()) {
+			return original;
+		}
+		builder.key(original.key).interval(original.interval).objectBuilder(objectSupplier);
+		builder.startTime(original.startTime).endTime(original.endTime);
+		builder.storedStartTime(original.storedStartTime).storedEndTime(original.storedEndTime);
+		T copy = builder.build();
+		copy.integerTimeSeriesFields = null;
+		copy.longTimeSeriesFields = null;
+		copy.doubleTimeSeriesFields = null;
+		copy.columnFields = new HashMap<>();
+		if(original.integerTimeSeriesFields!=null)
+			for(Map.Entry<String, TIntArrayList> entry : original.integerTimeSeriesFields.entrySet())
+				copy.columnFields.put(entry.getKey(), factory.copyOf(entry.getValue()));
+		if(original.longTimeSeriesFields!=null)
+			for(Map.Entry<String, TLongArrayList> entry : original.longTimeSeriesFields.entrySet())
+				copy.columnFields.put(entry.getKey(), factory.copyOf(entry.getValue()));
+		if(original.doubleTimeSeriesFields!=null)
+			for(Map.Entry<String, TDoubleArrayList> entry : original.doubleTimeSeriesFields.entrySet())
+				copy.columnFields.put(entry.getKey(), factory.copyOf(entry.getValue()));
+		copy.stringTimeSeriesFields = original.stringTimeSeriesFields;
+		if(original.getStatus()!=Status.JUST_LOADED) {
+			copy.updatStatus();
+		}
+		return copy;
+	}
+	
+	/**
+	 * Copies <code>original</code> into a new series whose string fields are {@link DictionaryStringColumn}s
+	 * encoded with <code>dictionary</code>, the other fields being shared with <code>original</code>.
+	 * @return <code>original</code> if its string fields are already encoded with <code>dictionary</code>
+	 */
+	public static <T extends TimeSeriesEntry> T dictionaryEncode(T original, StringDictionary dictionary, 
+			TimeSeriesEntryBuilder<T> builder, Supplier<T> objectSupplier) {
+		if(original.stringTimeSeriesFields==null || original.stringTimeSeriesFields.values().stream()
+				.allMatch(list -> list instanceof DictionaryStringColumn && ((DictionaryStringColumn) list).getDictionary()==dictionary)) {
+			return original;
+		}
+		builder.key(original.key).interval(original.interval).objectBuilder(objectSupplier);
+		builder.startTime(original.startTime).endTime(original.endTime);
+		builder.storedStartTime(original.storedStartTime).storedEndTime(original.storedEndTime);
+		T copy = builder.build();
+		copy.integerTimeSeriesFields = original.integerTimeSeriesFields;
+		copy.longTimeSeriesFields = original.longTimeSeriesFields;
+		copy.doubleTimeSeriesFields = original.doubleTimeSeriesFields;
+		copy.columnFields = original.columnFields;
+		copy.stringTimeSeriesFields = new HashMap<>();
+		for(Map.Entry<String, List<String>> entry : original.stringTimeSeriesFields.entrySet())
+			copy.stringTimeSeriesFields.put(entry.getKey(), new DictionaryStringColumn(dictionary, entry.getValue()));
+		if(original.getStatus()!=Status.JUST_LOADED) {
+			copy.updatStatus();
+		}
+		return copy;
+	}
+	
+	/**
+	 * @return number of observations of the series, the length of its longest field
+	 */
+	private static int length(TimeSeriesEntry ts) {
+		int length = 0;
+		if(ts.integerTimeSeriesFields!=null)
+			for(TIntArrayList list : ts.integerTimeSeriesFields.values())
+				length = Math.max(length, list.size());
+		if(ts.longTimeSeriesFields!=null)
+			for(TLongArrayList list : ts.longTimeSeriesFields.values())
+				length = Math.max(length, list.size());
+		if(ts.doubleTimeSeriesFields!=null)
+			for(TDoubleArrayList list : ts.doubleTimeSeriesFields.values())
+				length = Math.max(length, list.size());
+		if(ts.stringTimeSeriesFields!=null)
+			for(List<String> list : ts.stringTimeSeriesFields.values())
+				length = Math.max(length, list.size());
+		return length;
+	}
+	
 	public static TIntArrayList subList(TIntArrayList original, int begin, int end ) {
     	if ( end < begin ) {
 			throw new IllegalArgumentException( "end index " + end +
@@ -111,6 +316,67 @@ public class TimeSeriesEntryUtils {
     }
 	
 	public static List<String> subList(List<String> original, int begin, int end){
+		if(original instanceof DictionaryStringColumn) {
+			return ((DictionaryStringColumn) original).copyOfRange(Math.min(begin, 0), Math.min(original.size(), end));
+		}
 		return new ArrayList<>(original.subList(Math.min(begin, 0), Math.min(original.size(), end)));
 	}
+	
+	/**
+	 * <pre>
+	 * Estimates the heap retained by the fields of a time series: for every field the map entry, the
+	 * list object and its backing array, and for string fields each {@link String} instance (a run of
+	 * the same instance is counted once). The shared dictionary of dictionary encoded fields is not counted.
+	 * Sizes assume a 64 bit JVM with compressed oops and ignore unused list capacity. Columnar fields
+	 * count their map entry and the heap and off heap bytes of their column.
+	 * </pre>
+	 */
+	public static long estimateRetainedBytes(TimeSeriesEntry ts) {
+		long bytes = OBJECT_HEADER_BYTES;
+		if(ts.integerTimeSeriesFields!=null) {
+			for(TIntArrayList list : ts.integerTimeSeriesFields.values()) {
+				bytes += MAP_ENTRY_BYTES + TROVE_LIST_BYTES + align(ARRAY_HEADER_BYTES + 4L * list.size());
+			}
+		}
+		if(ts.longTimeSeriesFields!=null) {
+			for(TLongArrayList list : ts.longTimeSeriesFields.values()) {
+				bytes += MAP_ENTRY_BYTES + TROVE_LIST_BYTES + align(ARRAY_HEADER_BYTES + 8L * list.size());
+			}
+		}
+		if(ts.doubleTimeSeriesFields!=null) {
+			for(TDoubleArrayList list : ts.doubleTimeSeriesFields.values()) {
+				bytes += MAP_ENTRY_BYTES + TROVE_LIST_BYTES + align(ARRAY_HEADER_BYTES + 8L * list.size());
+			}
+		}
+		if(ts.stringTimeSeriesFields!=null) {
+			for(List<String> list : ts.stringTimeSeriesFields.values()) {
+				if(list instanceof Column) {
+					bytes += MAP_ENTRY_BYTES + ((Column) list).heapBytes();
+					continue;
+				}
+				bytes += MAP_ENTRY_BYTES + ARRAY_LIST_BYTES + align(ARRAY_HEADER_BYTES + (long) REFERENCE_BYTES * list.size());
+				String previous = null;
+				for(String value : list) {
+					if(value!=null && value!=previous) {
+						bytes += STRING_BYTES + align(ARRAY_HEADER_BYTES + 2L * value.length());
+					}
+					previous = value;
+				}
+			}
+		}
+		if(ts.columnFields!=null) {
+			for(Column column : ts.columnFields.values()) {
+				bytes += MAP_ENTRY_BYTES + column.heapBytes() + column.offHeapBytes();
+			}
+		}
+		return bytes;
+	}
+	
+	private static int align(int bytes) {
+		return (bytes + 7) & ~7;
+	}
+	
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
 }
@@ -0,0 +1,356 @@
+package com.bfm.app.timeseries;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.bfm.app.timeseries.classifiers.IntervalType;
+import com.bfm.app.timeseries.column.DoubleColumn;
+import com.bfm.app.timeseries.column.IntColumn;
+import com.bfm.app.timeseries.column.LongColumn;
+
+import gnu.trove.iterator.TDoubleIterator;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.iterator.TLongIterator;
+
+/**
+ * <pre>
+ * Read only window over a range of a {@link TimeSeriesEntry}.
+ *
+ * A view is an offset and a length into the fields of the entry, nothing is copied: creating a view
+ * or reading a field of it allocates a constant amount of memory whatever the length of the series.
+ * Index 0 of a view is its first business day on or after the requested start.
+ *
+ * Views are only valid as long as the fields of the entry are not modified, which holds for entries
+ * published by {@link com.bfm.app.timeseries.cache.TSCache}. Fields are read through their
+ * {@link com.bfm.app.timeseries.column.Column}, whatever their storage.
+ * </pre>
+ */
+public final class TimeSeriesView {
+	private final TimeSeriesEntry entry;
+	private final int offset;
+	private final int length;
+	private final LocalDateTime startTime;
+	private final LocalDateTime endTime;
+
+	private TimeSeriesView(TimeSeriesEntry entry, int offset, int length, LocalDateTime startTime, LocalDateTime endTime) {
+		this.entry = entry;
+		this.offset = offset;
+		this.length = length;
+		this.startTime = startTime;
+		this.endTime = endTime;
+	}
+
+	/**
+	 * @return view of the observations of <code>entry</code> between <code>start</code> and
+	 * 			<code>end</code> inclusive, clipped to the stored range of the entry
+	 */
+	public static TimeSeriesView of(TimeSeriesEntry entry, LocalDateTime start, LocalDateTime end, IntervalType interval) {
+		LocalDateTime from = start.compareTo(entry.storedStartTime)>0 ? start : entry.storedStartTime;
+		LocalDateTime to = end.compareTo(entry.storedEndTime)<0 ? end : entry.storedEndTime;
+		if(from.compareTo(to)>0) {
+			return new TimeSeriesView(entry, 0, 0, from, from);
+		}
+		int size = fieldLength(entry);
+		int offset = Math.min(size, interval.getClosetNextIndex(from, entry.storedStartTime));
+		int endIndex = Math.min(size, interval.getClosetPreviousIndex(to, entry.storedStartTime)+1);
+		int length = Math.max(0, endIndex-offset);
+		return new TimeSeriesView(entry, offset, length, interval.getClosestTimeNextTo(from),
+				length==0 ? interval.getClosestTimeNextTo(from) : interval.getClosestTimePrevTo(to));
+	}
+
+	private static int fieldLength(TimeSeriesEntry entry) {
+		if(entry.columnFields!=null && !entry.columnFields.isEmpty())
+			return entry.columnFields.values().iterator().next().size();
+		if(entry.doubleTimeSeriesFields!=null && !entry.doubleTimeSeriesFields.isEmpty())
+			return entry.doubleTimeSeriesFields.values().iterator().next().size();
+		if(entry.integerTimeSeriesFields!=null && !entry.integerTimeSeriesFields.isEmpty())
+			return entry.integerTimeSeriesFields.values().iterator().next().size();
+		if(entry.longTimeSeriesFields!=null && !entry.longTimeSeriesFields.isEmpty())
+			return entry.longTimeSeriesFields.values().iterator().next().size();
+		if(entry.stringTimeSeriesFields!=null && !entry.stringTimeSeriesFields.isEmpty())
+			return entry.stringTimeSeriesFields.values().iterator().next().size();
+		return 0;
+	}
+
+	public String getKey() {
+		return entry.key;
+	}
+
+	/**
+	 * @return time of the first observation of the view
+	 */
+	public LocalDateTime getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return time of the last observation of the view
+	 */
+	public LocalDateTime getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * @return number of observations in the view
+	 */
+	public int size() {
+		return length;
+	}
+
+	public DoubleField getDoubleField(String name) {
+		DoubleColumn column = entry.getDoubleColumn(name);
+		return column==null ? null : new DoubleField(column, offset, length);
+	}
+
+	public IntField getIntField(String name) {
+		IntColumn column = entry.getIntColumn(name);
+		return column==null ? null : new IntField(column, offset, length);
+	}
+
+	public LongField getLongField(String name) {
+		LongColumn column = entry.getLongColumn(name);
+		return column==null ? null : new LongField(column, offset, length);
+	}
+
+	public StringField getStringField(String name) {
+		List<String> list = entry.stringTimeSeriesFields==null ? null : entry.stringTimeSeriesFields.get(name);
+		return list==null ? null : new StringField(list, offset, length);
+	}
+
+	public double getDouble(String name, int index) {
+		return getDoubleField(name).get(index);
+	}
+
+	public int getInt(String name, int index) {
+		return getIntField(name).get(index);
+	}
+
+	public long getLong(String name, int index) {
+		return getLongField(name).get(index);
+	}
+
+	public String getString(String name, int index) {
+		return getStringField(name).get(index);
+	}
+
+	private static void checkIndex(int index, int length) {
+		if(index<0 || index>=length) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of view of size " + length);
+		}
+	}
+
+	private static void checkCopy(int destLength, int destPos, int length) {
+		if(destPos<0 || destPos+length>destLength) {
+			throw new IndexOutOfBoundsException("Cannot copy " + length + " values at " + destPos
+					+ " into an array of length " + destLength);
+		}
+	}
+
+	/**
+	 * Window over a double field
+	 */
+	public static final class DoubleField {
+		private final DoubleColumn column;
+		private final int offset, length;
+
+		DoubleField(DoubleColumn column, int offset, int length) {
+			this.column = column;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public int size() {
+			return length;
+		}
+
+		public double get(int index) {
+			checkIndex(index, length);
+			return column.get(offset+index);
+		}
+
+		/**
+		 * Copies the window into <code>dest</code> from <code>destPos</code>
+		 * @return <code>dest</code>
+		 */
+		public double[] copyTo(double[] dest, int destPos) {
+			checkCopy(dest.length, destPos, length);
+			return column.copyTo(offset, dest, destPos, length);
+		}
+
+		public double[] copyTo(double[] dest) {
+			return copyTo(dest, 0);
+		}
+
+		public TDoubleIterator iterator() {
+			return new TDoubleIterator() {
+				private int index;
+
+				@Override
+				public boolean hasNext() {
+					return index<length;
+				}
+
+				@Override
+				public double next() {
+					if(index>=length)
+						throw new NoSuchElementException();
+					return column.get(offset+index++);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("Views are read only");
+				}
+			};
+		}
+	}
+
+	/**
+	 * Window over an integer field
+	 */
+	public static final class IntField {
+		private final IntColumn column;
+		private final int offset, length;
+
+		IntField(IntColumn column, int offset, int length) {
+			this.column = column;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public int size() {
+			return length;
+		}
+
+		public int get(int index) {
+			checkIndex(index, length);
+			return column.get(offset+index);
+		}
+
+		public int[] copyTo(int[] dest, int destPos) {
+			checkCopy(dest.length, destPos, length);
+			return column.copyTo(offset, dest, destPos, length);
+		}
+
+		public int[] copyTo(int[] dest) {
+			return copyTo(dest, 0);
+		}
+
+		public TIntIterator iterator() {
+			return new TIntIterator() {
+				private int index;
+
+				@Override
+				public boolean hasNext() {
+					return index<length;
+				}
+
+				@Override
+				public int next() {
+					if(index>=length)
+						throw new NoSuchElementException();
+					return column.get(offset+index++);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("Views are read only");
+				}
+			};
+		}
+	}
+
+	/**
+	 * Window over a long field
+	 */
+	public static final class LongField {
+		private final LongColumn column;
+		private final int offset, length;
+
+		LongField(LongColumn column, int offset, int length) {
+			this.column = column;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public int size() {
+			return length;
+		}
+
+		public long get(int index) {
+			checkIndex(index, length);
+			return column.get(offset+index);
+		}
+
+		public long[] copyTo(long[] dest, int destPos) {
+			checkCopy(dest.length, destPos, length);
+			return column.copyTo(offset, dest, destPos, length);
+		}
+
+		public long[] copyTo(long[] dest) {
+			return copyTo(dest, 0);
+		}
+
+		public TLongIterator iterator() {
+			return new TLongIterator() {
+				private int index;
+
+				@Override
+				public boolean hasNext() {
+					return index<length;
+				}
+
+				@Override
+				public long next() {
+					if(index>=length)
+						throw new NoSuchElementException();
+					return column.get(offset+index++);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("Views are read only");
+				}
+			};
+		}
+	}
+
+	/**
+	 * Window over a string field
+	 */
+	public static final class StringField implements Iterable<String> {
+		private final List<String> list;
+		private final int offset, length;
+
+		StringField(List<String> list, int offset, int length) {
+			this.list = list;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public int size() {
+			return length;
+		}
+
+		public String get(int index) {
+			checkIndex(index, length);
+			return list.get(offset+index);
+		}
+
+		public String[] copyTo(String[] dest, int destPos) {
+			checkCopy(dest.length, destPos, length);
+			for(int i=0;i<length;i++) {
+				dest[destPos+i] = list.get(offset+i);
+			}
+			return dest;
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			return list.subList(offset, offset+length).iterator();
+		}
+	}
+
+}
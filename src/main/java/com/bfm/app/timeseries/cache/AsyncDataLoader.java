@@ -0,0 +1,123 @@
+package com.bfm.app.timeseries.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import com.bfm.app.timeseries.cache.stats.CacheStats;
+
+/**
+ * <pre>
+ * Non blocking counterpart of {@link DataLoader}. Loaders return a {@link CompletableFuture}
+ * so a caller can have many loads outstanding without parking a thread on each one.
+ *
+ * Post processing of the loaded data (transformation, insertion in the cache, eviction) is
+ * run on the configured {@link Executor}, never on the thread completing the loader future.
+ * </pre>
+ *
+ * @param <K> key type
+ * @param <V> type returned by the data store
+ */
+public class AsyncDataLoader<K, V> {
+
+	private final Executor executor;
+	private Function<K, CompletableFuture<V>> singleEntryLoader;
+	private Function<Set<K>, CompletableFuture<Map<K, V>>> multipleEntryLoader;
+
+	public AsyncDataLoader(Function<K, CompletableFuture<V>> singleEntryLoader,
+			Function<Set<K>, CompletableFuture<Map<K, V>>> multipleEntryLoader, Executor executor,
+			final CacheStats cacheStats) {
+		this.executor = executor;
+		if(singleEntryLoader!=null) {
+			this.singleEntryLoader = key -> {
+				long start = System.nanoTime();
+				return singleEntryLoader.apply(key).whenComplete((value, error) -> {
+					cacheStats.incMissCounter();
+					cacheStats.recordLoad(System.nanoTime()-start);
+				});
+			};
+		}
+		if(multipleEntryLoader!=null) {
+			this.multipleEntryLoader = keys -> {
+				long start = System.nanoTime();
+				return multipleEntryLoader.apply(keys).whenComplete((value, error) -> {
+					cacheStats.updateMissCounter(keys.size());
+					cacheStats.recordLoad(System.nanoTime()-start);
+				});
+			};
+		}
+		fillMissingLoaders();
+	}
+
+	private AsyncDataLoader(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Adapts the blocking loaders of <code>dataLoader</code> by running them on <code>executor</code>.
+	 * If single entry loads are batched the batch future is used directly, batches being loaded on the
+	 * executor of the {@link BatchingLoader}.
+	 * Statistics are already recorded by the wrapped {@link DataLoader}.
+	 */
+	public static <K, V> AsyncDataLoader<K, V> of(DataLoader<K, V> dataLoader, Executor executor) {
+		AsyncDataLoader<K, V> asyncDataLoader = new AsyncDataLoader<>(executor);
+		BatchingLoader<K, V> batchingLoader = dataLoader.getBatchingLoader();
+		if(batchingLoader!=null) {
+			asyncDataLoader.singleEntryLoader = batchingLoader::submit;
+		}else {
+			asyncDataLoader.singleEntryLoader = key -> CompletableFuture.supplyAsync(
+					() -> dataLoader.getSingleEntryLoader().apply(key), executor);
+		}
+		asyncDataLoader.multipleEntryLoader = keys -> CompletableFuture.supplyAsync(
+				() -> dataLoader.getMultipleEntryLoader().apply(keys), executor);
+		return asyncDataLoader;
+	}
+
+	/**
+	 * When only one of the loaders is supplied the other one is derived from it, a single key is
+	 * loaded as a batch of one and a batch is loaded as a set of concurrent single key loads.
+	 */
+	private void fillMissingLoaders() {
+		if(singleEntryLoader==null && multipleEntryLoader==null) {
+			singleEntryLoader = key -> CompletableFuture.completedFuture(null);
+			multipleEntryLoader = keys -> CompletableFuture.completedFuture(Collections.emptyMap());
+		}else if(singleEntryLoader==null) {
+			singleEntryLoader = key -> multipleEntryLoader.apply(Collections.singleton(key))
+					.thenApply(map -> map==null?null:map.get(key));
+		}else if(multipleEntryLoader==null) {
+			multipleEntryLoader = keys -> {
+				Map<K, CompletableFuture<V>> futures = new HashMap<>();
+				for(K key : keys) {
+					futures.put(key, singleEntryLoader.apply(key));
+				}
+				return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()]))
+						.thenApply(ignore -> {
+							Map<K, V> result = new HashMap<>();
+							for(Map.Entry<K, CompletableFuture<V>> entry : futures.entrySet()) {
+								V value = entry.getValue().join();
+								if(value!=null)
+									result.put(entry.getKey(), value);
+							}
+							return result;
+						});
+			};
+		}
+	}
+
+	public Function<K, CompletableFuture<V>> getSingleEntryLoader() {
+		return singleEntryLoader;
+	}
+
+	public Function<Set<K>, CompletableFuture<Map<K, V>>> getMultipleEntryLoader() {
+		return multipleEntryLoader;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+}
@@ -0,0 +1,157 @@
+package com.bfm.app.timeseries.cache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * <pre>
+ * Coalesces single key loads into calls of a multiple entry loader.
+ *
+ * Keys submitted within <code>batchWindow</code> of the first key of a batch are loaded together.
+ * A batch is dispatched as soon as it holds <code>maxBatchSize</code> keys or once the window is
+ * closed, and always runs on the configured {@link Executor}: submitting never blocks, the thread
+ * submitting the last key of a batch may be serving a stale hit or driving expirations.
+ * </pre>
+ *
+ * @param <K> key type
+ * @param <V> type returned by the data store
+ */
+public class BatchingLoader<K, V> {
+
+	private static final ScheduledExecutorService TIMER;
+	static {
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "tscache-batching-loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timer.setRemoveOnCancelPolicy(true);
+		TIMER = timer;
+	}
+
+	private final Function<Set<K>, Map<K, V>> multipleEntryLoader;
+	private final long batchWindowNanos;
+	private final int maxBatchSize;
+	private final Executor executor;
+
+	private final Object lock = new Object();
+	private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+	private ScheduledFuture<?> scheduledFlush;
+
+	public BatchingLoader(Function<Set<K>, Map<K, V>> multipleEntryLoader, long batchWindow, TimeUnit unit,
+			int maxBatchSize, Executor executor) {
+		if(maxBatchSize<1) {
+			throw new IllegalArgumentException("maxBatchSize must be positive, was " + maxBatchSize);
+		}
+		this.multipleEntryLoader = multipleEntryLoader;
+		this.batchWindowNanos = unit.toNanos(batchWindow);
+		this.maxBatchSize = maxBatchSize;
+		this.executor = executor;
+	}
+
+	/**
+	 * Adds <code>key</code> to the current batch
+	 *
+	 * @param key the key to load
+	 * @return future completed with the loaded value, or <code>null</code> if the data store has no
+	 * 			value for the key
+	 */
+	public CompletableFuture<V> submit(K key) {
+		Map<K, CompletableFuture<V>> batch = null;
+		CompletableFuture<V> future;
+		synchronized (lock) {
+			future = pending.get(key);
+			if(future!=null) {
+				return future;
+			}
+			future = new CompletableFuture<>();
+			pending.put(key, future);
+			if(pending.size()>=maxBatchSize) {
+				batch = drainPending();
+			}else if(pending.size()==1) {
+				scheduledFlush = TIMER.schedule(this::flushOnExecutor, batchWindowNanos, TimeUnit.NANOSECONDS);
+			}
+		}
+		if(batch!=null) {
+			dispatch(batch);
+		}
+		return future;
+	}
+
+	/**
+	 * Dispatches the current batch immediately, in the calling thread
+	 */
+	public void flush() {
+		Map<K, CompletableFuture<V>> batch;
+		synchronized (lock) {
+			batch = drainPending();
+		}
+		if(!batch.isEmpty()) {
+			load(batch);
+		}
+	}
+
+	private void flushOnExecutor() {
+		Map<K, CompletableFuture<V>> batch;
+		synchronized (lock) {
+			batch = drainPending();
+		}
+		if(!batch.isEmpty()) {
+			dispatch(batch);
+		}
+	}
+
+	private void dispatch(Map<K, CompletableFuture<V>> batch) {
+		try {
+			executor.execute(() -> load(batch));
+		}catch (RejectedExecutionException e) {
+			for(CompletableFuture<V> future : batch.values()) {
+				future.completeExceptionally(e);
+			}
+		}
+	}
+
+	private Map<K, CompletableFuture<V>> drainPending() {
+		Map<K, CompletableFuture<V>> batch = pending;
+		pending = new LinkedHashMap<>();
+		if(scheduledFlush!=null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+		return batch;
+	}
+
+	private void load(Map<K, CompletableFuture<V>> batch) {
+		try {
+			Set<K> keys = Collections.unmodifiableSet(new LinkedHashSet<>(batch.keySet()));
+			Map<K, V> values = multipleEntryLoader.apply(keys);
+			for(Map.Entry<K, CompletableFuture<V>> entry : batch.entrySet()) {
+				entry.getValue().complete(values==null ? null : values.get(entry.getKey()));
+			}
+		}catch (Throwable t) {
+			for(CompletableFuture<V> future : batch.values()) {
+				future.completeExceptionally(t);
+			}
+		}
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	public long getBatchWindowNanos() {
+		return batchWindowNanos;
+	}
+
+}
@@ -0,0 +1,96 @@
+package com.bfm.app.timeseries.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * <pre>
+ * Drains a source in batches on a dedicated pool of <code>parallelism</code> threads.
+ *
+ * The calling thread reads the source one batch at a time and blocks while <code>parallelism</code>
+ * batches are in flight, so at most <code>parallelism + 1</code> batches of the source are held
+ * whatever its size. The pool only lives for one load, it never competes with the common pool.
+ * </pre>
+ */
+final class BulkLoader {
+
+	private BulkLoader() {
+	}
+
+	/**
+	 * @param loader called once per element, returns <code>true</code> if the element was loaded
+	 * @param progress called after every batch with the number of elements processed so far,
+	 * 			from the loading threads, may be <code>null</code>
+	 * @return number of elements loaded
+	 * @throws RuntimeException the first failure of <code>loader</code>, once the batches in flight are done.
+	 * 			The rest of the source is not read.
+	 */
+	static <T> long load(Iterator<? extends T> source, int parallelism, int batchSize, String name,
+			Predicate<? super T> loader, LongConsumer progress) {
+		if(parallelism<1) {
+			throw new IllegalArgumentException("parallelism must be positive, was " + parallelism);
+		}
+		if(batchSize<1) {
+			throw new IllegalArgumentException("batchSize must be positive, was " + batchSize);
+		}
+		AtomicInteger threads = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+			Thread thread = new Thread(r, name + "-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		Semaphore inFlight = new Semaphore(parallelism);
+		AtomicLong processed = new AtomicLong(), loaded = new AtomicLong();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		try {
+			while(failure.get()==null && source.hasNext()) {
+				List<T> batch = new ArrayList<>(batchSize);
+				while(batch.size()<batchSize && source.hasNext()) {
+					batch.add(source.next());
+				}
+				inFlight.acquire();
+				pool.execute(() -> {
+					try {
+						int count = 0;
+						for(T element : batch) {
+							if(loader.test(element))
+								count++;
+						}
+						loaded.addAndGet(count);
+						long done = processed.addAndGet(batch.size());
+						if(progress!=null)
+							progress.accept(done);
+					}catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}finally {
+						inFlight.release();
+					}
+				});
+			}
+			inFlight.acquire(parallelism);
+		}catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failure.compareAndSet(null, e);
+		}finally {
+			pool.shutdown();
+		}
+		Throwable t = failure.get();
+		if(t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		if(t instanceof Error)
+			throw (Error) t;
+		if(t!=null)
+			throw new IllegalStateException(name + " was interrupted after " + processed.get() + " elements", t);
+		return loaded.get();
+	}
+
+}
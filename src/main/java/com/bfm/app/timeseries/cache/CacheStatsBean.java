@@ -0,0 +1,135 @@
+package com.bfm.app.timeseries.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bfm.app.timeseries.cache.stats.CacheStatsSnapshot;
+import com.google.common.base.Suppliers;
+
+/**
+ * {@link TSCacheMXBean} over the snapshots of a cache. A snapshot is reused for a second so that a
+ * console reading every attribute takes one snapshot, not one per attribute.
+ */
+final class CacheStatsBean implements TSCacheMXBean {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CacheStatsBean.class);
+
+	private final String cacheName;
+	private final Supplier<CacheStatsSnapshot> snapshots;
+	private final LongSupplier maximumWeight;
+
+	private CacheStatsBean(String cacheName, Supplier<CacheStatsSnapshot> snapshots, LongSupplier maximumWeight) {
+		this.cacheName = cacheName;
+		this.snapshots = Suppliers.memoizeWithExpiration(snapshots::get, 1, TimeUnit.SECONDS)::get;
+		this.maximumWeight = maximumWeight;
+	}
+
+	/**
+	 * Registers the MBean of <code>cacheName</code>, replacing the one of a previous cache of the same name
+	 * @return the name it is registered under, <code>null</code> if it could not be registered
+	 */
+	static ObjectName register(String cacheName, Supplier<CacheStatsSnapshot> snapshots, LongSupplier maximumWeight) {
+		try {
+			ObjectName name = new ObjectName("com.bfm.app.timeseries:type=TSCache,name=" + ObjectName.quote(String.valueOf(cacheName)));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if(server.isRegistered(name)) {
+				LOGGER.warn("Replacing the MBean of cache {}, cache names should be unique", cacheName);
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(new CacheStatsBean(cacheName, snapshots, maximumWeight), name);
+			return name;
+		}catch (JMException e) {
+			LOGGER.warn("Could not register the MBean of cache {}", cacheName, e);
+			return null;
+		}
+	}
+
+	static void unregister(ObjectName name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if(server.isRegistered(name))
+				server.unregisterMBean(name);
+		}catch (JMException e) {
+			LOGGER.warn("Could not unregister MBean {}", name, e);
+		}
+	}
+
+	@Override
+	public String getCacheName() {
+		return cacheName;
+	}
+
+	@Override
+	public long getHitCount() {
+		return snapshots.get().getHitCount();
+	}
+
+	@Override
+	public long getMissCount() {
+		return snapshots.get().getMissCount();
+	}
+
+	@Override
+	public double getHitRate() {
+		return snapshots.get().getHitRate();
+	}
+
+	@Override
+	public double getMissRate() {
+		return snapshots.get().getMissRate();
+	}
+
+	@Override
+	public long getLoadCount() {
+		return snapshots.get().getLoadCount();
+	}
+
+	@Override
+	public double getLoadLatencyMean() {
+		return snapshots.get().getLoadLatencies().getMean();
+	}
+
+	@Override
+	public long getLoadLatencyP50() {
+		return snapshots.get().getLoadLatencies().getP50();
+	}
+
+	@Override
+	public long getLoadLatencyP99() {
+		return snapshots.get().getLoadLatencies().getP99();
+	}
+
+	@Override
+	public long getLoadLatencyP999() {
+		return snapshots.get().getLoadLatencies().getP999();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return snapshots.get().getEvictionCount();
+	}
+
+	@Override
+	public long getEntryCount() {
+		return snapshots.get().getEntryCount();
+	}
+
+	@Override
+	public long getWeightedSize() {
+		return snapshots.get().getWeightedSize();
+	}
+
+	@Override
+	public long getMaximumWeight() {
+		return maximumWeight.getAsLong();
+	}
+
+}
@@ -1,46 +1,101 @@
 package com.bfm.app.timeseries.cache;
 
+import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.bfm.app.timeseries.cache.stats.CacheStats;
 
 public class DataLoader<K, V> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DataLoader.class);
 	
 	private Function<K, V> singleEntryLoader = key -> {return null;};
 	private Function<Set<K>, Map<K, V>> multipleEntryLoader =  key -> {return null;};
 	private Supplier<Map<K, V>> allEntriesLoader = () -> {return null; };
+	private BiFunction<K, LocalDateTime, V> tailLoader = (key, since) -> {return null;};
+	private BatchingLoader<K, V> batchingLoader;
+	private boolean hasMultipleEntryLoader;
 	public DataLoader(Function<K, V> singleEntryLoader, Function<Set<K>, Map<K, V>> multipleEntryLoader,
 			Supplier<Map<K, V>> allEntriesLoader, final CacheStats cacheStats) {
+		this(singleEntryLoader, multipleEntryLoader, allEntriesLoader, null, cacheStats);
+	}
+	
+	/**
+	 * @param tailLoader loads the observations of a key strictly after the given time, used to extend
+	 * 			cached series without reloading their whole history
+	 */
+	public DataLoader(Function<K, V> singleEntryLoader, Function<Set<K>, Map<K, V>> multipleEntryLoader,
+			Supplier<Map<K, V>> allEntriesLoader, BiFunction<K, LocalDateTime, V> tailLoader, final CacheStats cacheStats) {
 		if(singleEntryLoader!=null) {
 			this.singleEntryLoader = key -> {
-				long start = System.currentTimeMillis();
+				long start = System.nanoTime();
 				V value = singleEntryLoader.apply(key);
 				cacheStats.incMissCounter();
-				cacheStats.incLoadCounter(System.currentTimeMillis()-start);
+				cacheStats.recordLoad(System.nanoTime()-start);
 				return value;
 			};
 		}
 		if(multipleEntryLoader!=null) {
+			this.hasMultipleEntryLoader = true;
 			this.multipleEntryLoader = keys -> {
-				long start = System.currentTimeMillis();
+				long start = System.nanoTime();
 				Map<K, V> value = multipleEntryLoader.apply(keys);
 				cacheStats.updateMissCounter(keys.size());
-				cacheStats.incLoadCounter(System.currentTimeMillis()-start);
+				cacheStats.recordLoad(System.nanoTime()-start);
 				return value;
 			};
 		}
 		if(allEntriesLoader!=null) {
 			this.allEntriesLoader = () -> {
-				long start = System.currentTimeMillis();
+				long start = System.nanoTime();
 				Map<K, V> value = allEntriesLoader.get();
-				cacheStats.incLoadCounter(System.currentTimeMillis()-start);
+				cacheStats.recordLoad(System.nanoTime()-start);
+				return value;
+			};
+		}
+		if(tailLoader!=null) {
+			this.tailLoader = (key, since) -> {
+				long start = System.nanoTime();
+				V value = tailLoader.apply(key, since);
+				cacheStats.recordLoad(System.nanoTime()-start);
 				return value;
 			};
 		}
 	}
+	/**
+	 * <pre>
+	 * Routes single key loads through a {@link BatchingLoader}, so that concurrent misses on different
+	 * keys are fetched with one call of the multiple entry loader. A batch is closed after
+	 * <code>batchWindow</code> or when it reaches <code>maxBatchSize</code> keys, whichever comes first.
+	 * 
+	 * Batches closed by the window are loaded on <code>executor</code>, which therefore must not be the
+	 * pool whose threads are blocked waiting on these loads.
+	 * 
+	 * Has no effect if no multiple entry loader was supplied.
+	 * </pre>
+	 */
+	public DataLoader<K, V> batchSingleEntryLoads(long batchWindow, TimeUnit unit, int maxBatchSize, Executor executor) {
+		if(!hasMultipleEntryLoader) {
+			LOGGER.warn("No multiple entry loader defined, single entry loads will not be batched");
+			return this;
+		}
+		this.batchingLoader = new BatchingLoader<>(this.multipleEntryLoader, batchWindow, unit, maxBatchSize, executor);
+		this.singleEntryLoader = key -> SingleFlight.await(batchingLoader.submit(key));
+		return this;
+	}
+	
+	public BatchingLoader<K, V> getBatchingLoader() {
+		return batchingLoader;
+	}
+	
 	public Function<K, V> getSingleEntryLoader() {
 		return singleEntryLoader;
 	}
@@ -50,6 +105,9 @@ public class DataLoader<K, V> {
 	public Supplier<Map<K, V>> getAllEntriesLoader() {
 		return allEntriesLoader;
 	}
+	public BiFunction<K, LocalDateTime, V> getTailLoader() {
+		return tailLoader;
+	}
 	
 	
 	
@@ -0,0 +1,209 @@
+package com.bfm.app.timeseries.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import com.bfm.app.timeseries.TimeSeriesEntry;
+import com.bfm.app.timeseries.TimeSeriesEntryCodec;
+
+/**
+ * <pre>
+ * Second tier of a cache: a ring buffer of series encoded by {@link TimeSeriesEntryCodec} in a memory
+ * mapped file of fixed capacity, indexed on heap by key.
+ *
+ * Series are appended at the head of the ring, a series which would straddle two mapped chunks of the
+ * file starts at the next chunk instead. Once the ring is full, appending overwrites the oldest series,
+ * which are dropped from the index, so the tier keeps the most recently spilled entries without any
+ * bookkeeping per access. A series is taken out of the tier when it is read back.
+ *
+ * Positions are logical, they keep increasing while the ring wraps: a series written at <code>start</code>
+ * is intact as long as <code>start >= head - capacity</code>.
+ * </pre>
+ */
+final class DiskTier<K, V extends TimeSeriesEntry> {
+	private static final long CHUNK_BYTES = 1L << 30;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final MappedByteBuffer[] chunks;
+	private final long capacity;
+	private final int maximumEntryBytes;
+	private final Function<ByteBuffer, V> decoder;
+	private final ConcurrentHashMap<K, Slot> index = new ConcurrentHashMap<>();
+	/** slots in write order, the oldest first, guarded by the write lock */
+	private final ArrayDeque<Slot> written = new ArrayDeque<>();
+	/** writers hold the write lock, readers the read lock so that the series they decode is not overwritten */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private long head;
+	private boolean closed;
+
+	private final class Slot {
+		private final K key;
+		private final long start;
+		private final int length;
+		private final long writeTime;
+
+		private Slot(K key, long start, int length, long writeTime) {
+			this.key = key;
+			this.start = start;
+			this.length = length;
+			this.writeTime = writeTime;
+		}
+	}
+
+	/**
+	 * Value read back from the tier, with the write time of the entry it was spilled from
+	 */
+	static final class Spilled<V> {
+		final V value;
+		final long writeTime;
+
+		private Spilled(V value, long writeTime) {
+			this.value = value;
+			this.writeTime = writeTime;
+		}
+	}
+
+	/**
+	 * @param file created or truncated, the tier does not survive the cache
+	 * @param decoder reads a series written by {@link TimeSeriesEntryCodec#write(TimeSeriesEntry, java.nio.ByteBuffer)}
+	 */
+	DiskTier(Path file, long capacity, Function<ByteBuffer, V> decoder) {
+		if(capacity<1) {
+			throw new IllegalArgumentException("capacity must be positive, was " + capacity);
+		}
+		this.file = file;
+		this.capacity = capacity;
+		this.maximumEntryBytes = (int) Math.min(capacity, CHUNK_BYTES);
+		this.decoder = decoder;
+		try {
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.chunks = new MappedByteBuffer[(int) ((capacity + CHUNK_BYTES - 1) / CHUNK_BYTES)];
+			for(int i=0;i<chunks.length;i++) {
+				long offset = i * CHUNK_BYTES;
+				chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset, Math.min(CHUNK_BYTES, capacity - offset));
+			}
+		}catch (IOException e) {
+			throw new UncheckedIOException("Could not map the disk tier " + file, e);
+		}
+	}
+
+	/**
+	 * Writes <code>value</code> at the head of the ring, replacing any spilled value of <code>key</code>
+	 * @param writeTime write time of the evicted entry, given back by {@link #take(Object)}
+	 * @return <code>false</code> if the series is bigger than a chunk of the tier or the tier is closed
+	 */
+	boolean spill(K key, V value, long writeTime) {
+		int length = TimeSeriesEntryCodec.encodedSize(value);
+		if(length>maximumEntryBytes) {
+			return false;
+		}
+		lock.writeLock().lock();
+		try {
+			if(closed) {
+				return false;
+			}
+			long offset;
+			while((offset = head % capacity % CHUNK_BYTES) + length > chunk(head).capacity()) {
+				head += chunk(head).capacity() - offset;
+			}
+			Slot slot = new Slot(key, head, length, writeTime);
+			head += length;
+			while(!written.isEmpty() && written.peekFirst().start < head - capacity) {
+				Slot overwritten = written.pollFirst();
+				index.remove(overwritten.key, overwritten);
+			}
+			TimeSeriesEntryCodec.write(value, view(slot));
+			written.addLast(slot);
+			index.put(key, slot);
+			return true;
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the spilled value of <code>key</code> from the tier and decodes it
+	 * @return <code>null</code> if the tier has no value for <code>key</code>
+	 */
+	Spilled<V> take(K key) {
+		Slot slot = index.remove(key);
+		if(slot==null) {
+			return null;
+		}
+		lock.readLock().lock();
+		try {
+			if(closed || slot.start < head - capacity) {
+				return null;
+			}
+			return new Spilled<>(decoder.apply(view(slot)), slot.writeTime);
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	void invalidate(K key) {
+		index.remove(key);
+	}
+
+	void clear() {
+		index.clear();
+	}
+
+	/**
+	 * @return number of values spilled to the tier and not overwritten nor taken yet
+	 */
+	long size() {
+		return index.size();
+	}
+
+	/**
+	 * Drops the spilled values and deletes the file of the tier
+	 */
+	void close() {
+		lock.writeLock().lock();
+		try {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			index.clear();
+			written.clear();
+			channel.close();
+			Files.deleteIfExists(file);
+		}catch (IOException e) {
+			throw new UncheckedIOException("Could not delete the disk tier " + file, e);
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private MappedByteBuffer chunk(long position) {
+		return chunks[(int) (position % capacity / CHUNK_BYTES)];
+	}
+
+	/**
+	 * @return a little endian buffer over the bytes of <code>slot</code>
+	 */
+	private ByteBuffer view(Slot slot) {
+		int offset = (int) (slot.start % capacity % CHUNK_BYTES);
+		ByteBuffer view = chunk(slot.start).duplicate();
+		((Buffer) view).limit(offset + slot.length).position(offset);
+		return view.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+}
@@ -1,28 +1,72 @@
 package com.bfm.app.timeseries.cache;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 //import java.util.concurrent.PriorityBlockingQueue;
 import java.util.stream.StreamSupport;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.bfm.app.timeseries.cache.TSCache.FrequencyNode;
 import com.bfm.app.timeseries.cache.TSCache.LFUNode;
 import com.bfm.app.timeseries.cache.TSCache.LRUNode;
 import com.bfm.app.timeseries.cache.TSCache.Node;
+import com.bfm.app.timeseries.cache.TSCache.TinyLFUNode;
 
 public interface EvictionStrategy<K, V> {
 	public void applyRead(Node<K, V> node);
+	/**
+	 * Links a node into the eviction queues, called once it is mapped in the cache
+	 */
 	public void applyWrite(Node<K, V> node);
+	public void applyRemove(Node<K, V> node);
+	/**
+	 * Creates a node of the type this policy links. The node is not linked yet, so that it can not be
+	 * taken as a victim before the cache maps it, see {@link #applyWrite(Node)}.
+	 */
 	public Node<K, V> getNode(K key, V value);
-	public Map<K, V> evict(int permits, ConcurrentHashMap<K, Node<K, V>> cache);
+	/**
+	 * Removes up to <code>permits</code> entries from <code>cache</code>
+	 * @return the evicted nodes by key
+	 */
+	public Map<K, Node<K, V>> evict(int permits, ConcurrentHashMap<K, Node<K, V>> cache);
 	public String queue(); 
 	
+	/**
+	 * <pre>
+	 * Unmaps the <code>victims</code> unlinked from the eviction queues. Called once the eviction lock is
+	 * released: removing takes a bin lock of the map, under which the cache registers and unregisters nodes
+	 * with the eviction lock.
+	 * 
+	 * Victims are unmapped by identity, nodes being equal by key and value. Nodes are only linked once
+	 * mapped, so a victim which is not mapped anymore was replaced or removed by a thread which gives its
+	 * weight back, and is not mapped again.
+	 * </pre>
+	 * @return the victims which were unmapped, by key
+	 */
+	static <K, V> Map<K, Node<K, V>> removeVictims(List<Node<K, V>> victims, ConcurrentHashMap<K, Node<K, V>> cache) {
+		Map<K, Node<K, V>> evictedEntries = new HashMap<>();
+		for(Node<K, V> victim : victims) {
+			cache.computeIfPresent(victim.getKey(), (k, v) -> {
+				if(v!=victim) {
+					return v;
+				}
+				evictedEntries.put(k, victim);
+				return null;
+			});
+		}
+		return evictedEntries;
+	}
+	
 	public static class NoneEvictionStrategy<K, V> implements EvictionStrategy<K, V>{
 
 		@Override
@@ -33,13 +77,17 @@ public interface EvictionStrategy<K, V> {
 		public void applyWrite(Node<K, V> node) {
 		}
 
+		@Override
+		public void applyRemove(Node<K, V> node) {
+		}
+
 		@Override
 		public Node<K, V> getNode(K key, V value) {
 			return new Node<K, V>(key, value);
 		}
 
 		@Override
-		public Map<K, V> evict(int permits, ConcurrentHashMap<K, Node<K, V>> cache) {
+		public Map<K, Node<K, V>> evict(int permits, ConcurrentHashMap<K, Node<K, V>> cache) {
 			return Collections.emptyMap();
 		}
 
@@ -50,37 +98,77 @@ public interface EvictionStrategy<K, V> {
 		
 	}
 	
+	/**
+	 * <pre>
+	 * Least recently used policy. Reads are recorded in a lossy {@link ReadBuffer} and replayed on the
+	 * eviction queue in batches by whichever thread gets the eviction lock, so cache hits do not
+	 * contend on the queue. Writes, removals and evictions replay pending reads before changing
+	 * the queue.
+	 * </pre>
+	 */
 	public static class LRUEvictionStrategy<K, V> implements EvictionStrategy<K, V>{
 		private final LinkedDequeThreadSafe<Node<K, V>> evictionQueue = new LinkedDequeThreadSafe<>();
+		private final ReadBuffer<Node<K, V>> readBuffer = new ReadBuffer<>();
+		private final ReentrantLock evictionLock = new ReentrantLock();
+		private final Consumer<Node<K, V>> onRead = node -> {
+			if(evictionQueue.contains(node))
+				evictionQueue.moveToBack(node);
+		};
 		
 		@Override
 		public void applyRead(Node<K, V> node) {
-			if(evictionQueue.contains(node))
-				evictionQueue.moveToBack(node);
+			if(readBuffer.offer(node) && evictionLock.tryLock()) {
+				try {
+					readBuffer.drainTo(onRead);
+				}finally {
+					evictionLock.unlock();
+				}
+			}
 		}
 
 		@Override
 		public void applyWrite(Node<K, V> node) {
-			evictionQueue.add(node);
-			
+			evictionLock.lock();
+			try {
+				readBuffer.drainTo(onRead);
+				evictionQueue.add(node);
+			}finally {
+				evictionLock.unlock();
+			}
+		}
+
+		@Override
+		public void applyRemove(Node<K, V> node) {
+			evictionLock.lock();
+			try {
+				readBuffer.drainTo(onRead);
+				evictionQueue.remove(node);
+			}finally {
+				evictionLock.unlock();
+			}
 		}
 
 		@Override
 		public Node<K, V> getNode(K key, V value) {
-			Node<K, V> node = new LRUNode<>(key, value);
-			applyWrite(node);
-			return node;
+			return new LRUNode<>(key, value);
 		}
 
 		@Override
-		public Map<K, V> evict(int permits, ConcurrentHashMap<K, Node<K, V>> cache) {
-			Map<K, V> evictedEntries = new HashMap<>();
-			for(int i=0;i<permits;i++) {
-				Node<K, V> evicted = evictionQueue.pollFirst();
-				cache.remove(evicted.getKey());
-				evictedEntries.put(evicted.getKey(), evicted.getValue());
+		public Map<K, Node<K, V>> evict(int permits, ConcurrentHashMap<K, Node<K, V>> cache) {
+			List<Node<K, V>> victims = new ArrayList<>(permits);
+			evictionLock.lock();
+			try {
+				readBuffer.drainTo(onRead);
+				for(int i=0;i<permits;i++) {
+					Node<K, V> evicted = evictionQueue.pollFirst();
+					if(evicted==null)
+						break;
+					victims.add(evicted);
+				}
+			}finally {
+				evictionLock.unlock();
 			}
-			return evictedEntries;
+			return removeVictims(victims, cache);
 		}
 
 		@Override
@@ -91,41 +179,369 @@ public interface EvictionStrategy<K, V> {
 		
 	}
 	
+	/**
+	 * <pre>
+	 * Least frequently used policy with constant time operations.
+	 * 
+	 * Nodes are kept in {@link FrequencyNode frequency buckets}, a doubly linked list ordered by
+	 * access count, each bucket holding its nodes in LRU order. A read moves the node to the bucket
+	 * of the next frequency (created on demand right after the current one), a write adds the node to
+	 * the bucket of frequency one at the head, and eviction takes the least recently used node of the
+	 * head bucket. Empty buckets are unlinked. Reads are buffered as in {@link LRUEvictionStrategy}.
+	 * </pre>
+	 */
 	public static class LFUEvictionStrategy<K, V> implements EvictionStrategy<K, V>{
-		private final PriorityBlockingQueue<Node<K, V>> evictionQueue = new PriorityBlockingQueue<>();
+		private FrequencyNode<K, V> head;
+		private final ReadBuffer<Node<K, V>> readBuffer = new ReadBuffer<>();
+		private final ReentrantLock evictionLock = new ReentrantLock();
+		private final Consumer<Node<K, V>> onRead = this::onRead;
 		
 		@Override
 		public void applyRead(Node<K, V> node) {
-			evictionQueue.add(evictionQueue.poll());
+			if(readBuffer.offer(node) && evictionLock.tryLock()) {
+				try {
+					readBuffer.drainTo(onRead);
+				}finally {
+					evictionLock.unlock();
+				}
+			}
+		}
+		
+		private void onRead(Node<K, V> node) {
+			LFUNode<K, V> lfuNode = (LFUNode<K, V>) node;
+			FrequencyNode<K, V> current = lfuNode.getFrequencyNode();
+			if(current==null) {
+				return;
+			}
+			FrequencyNode<K, V> next = current.getNext();
+			if(next==null || next.getFrequency()!=current.getFrequency()+1) {
+				next = new FrequencyNode<>(current.getFrequency()+1);
+				linkAfter(current, next);
+			}
+			current.getEntries().remove(node);
+			next.getEntries().add(node);
+			lfuNode.setFrequencyNode(next);
+			if(current.getEntries().isEmpty()) {
+				unlink(current);
+			}
 		}
 
 		@Override
 		public void applyWrite(Node<K, V> node) {
-			evictionQueue.add(node);
+			evictionLock.lock();
+			try {
+				readBuffer.drainTo(onRead);
+				if(head==null || head.getFrequency()!=1) {
+					FrequencyNode<K, V> first = new FrequencyNode<>(1);
+					first.setNext(head);
+					if(head!=null)
+						head.setPrevious(first);
+					head = first;
+				}
+				head.getEntries().add(node);
+				((LFUNode<K, V>) node).setFrequencyNode(head);
+			}finally {
+				evictionLock.unlock();
+			}
+		}
+
+		@Override
+		public void applyRemove(Node<K, V> node) {
+			evictionLock.lock();
+			try {
+				readBuffer.drainTo(onRead);
+				LFUNode<K, V> lfuNode = (LFUNode<K, V>) node;
+				FrequencyNode<K, V> frequencyNode = lfuNode.getFrequencyNode();
+				if(frequencyNode!=null) {
+					frequencyNode.getEntries().remove(node);
+					lfuNode.setFrequencyNode(null);
+					if(frequencyNode.getEntries().isEmpty()) {
+						unlink(frequencyNode);
+					}
+				}
+			}finally {
+				evictionLock.unlock();
+			}
 		}
 
 		@Override
 		public Node<K, V> getNode(K key, V value) {
-			Node<K, V> node = new LFUNode<>(key, value);
-			applyWrite(node);
-			return node;
+			return new LFUNode<>(key, value);
 		}
 
 		@Override
-		public Map<K, V> evict(int permits, ConcurrentHashMap<K, Node<K, V>> cache) {
-			Map<K, V> evictedEntries = new HashMap<>();
-			for(int i=0;i<permits;i++) {
-				Node<K, V> evicted = evictionQueue.poll();
-				cache.remove(evicted.getKey());
-				evictedEntries.put(evicted.getKey(), evicted.getValue());
+		public Map<K, Node<K, V>> evict(int permits, ConcurrentHashMap<K, Node<K, V>> cache) {
+			List<Node<K, V>> victims = new ArrayList<>(permits);
+			evictionLock.lock();
+			try {
+				readBuffer.drainTo(onRead);
+				for(int i=0;i<permits && head!=null;i++) {
+					FrequencyNode<K, V> lowest = head;
+					LFUNode<K, V> evicted = (LFUNode<K, V>) lowest.getEntries().pollFirst();
+					if(lowest.getEntries().isEmpty()) {
+						unlink(lowest);
+					}
+					if(evicted==null)
+						continue;
+					evicted.setFrequencyNode(null);
+					victims.add(evicted);
+				}
+			}finally {
+				evictionLock.unlock();
 			}
-			return evictedEntries;
+			return removeVictims(victims, cache);
+		}
+		
+		private void linkAfter(FrequencyNode<K, V> current, FrequencyNode<K, V> next) {
+			next.setPrevious(current);
+			next.setNext(current.getNext());
+			if(current.getNext()!=null)
+				current.getNext().setPrevious(next);
+			current.setNext(next);
+		}
+		
+		private void unlink(FrequencyNode<K, V> frequencyNode) {
+			FrequencyNode<K, V> prev = frequencyNode.getPrevious(), next = frequencyNode.getNext();
+			if(prev==null) {
+				head = next;
+			}else {
+				prev.setNext(next);
+			}
+			if(next!=null) {
+				next.setPrevious(prev);
+			}
+			frequencyNode.setPrevious(null);
+			frequencyNode.setNext(null);
 		}
 
 		@Override
 		public String queue() {
-			Spliterator<Node<K, V>> spliterator = Spliterators.spliteratorUnknownSize(evictionQueue.iterator(), 0); 
-			return StreamSupport.stream(spliterator, false).map(n -> n.getKey().toString()+"["+((LFUNode<K, V>)n).getCount()+"]["+((LFUNode<K, V>)n).getTimeStamp()+"]").collect(Collectors.joining("->"));
+			evictionLock.lock();
+			try {
+				StringBuilder builder = new StringBuilder();
+				for(FrequencyNode<K, V> frequencyNode = head; frequencyNode!=null; frequencyNode = frequencyNode.getNext()) {
+					for(Node<K, V> n : frequencyNode.getEntries()) {
+						if(builder.length()>0)
+							builder.append("->");
+						builder.append(n.getKey()).append("[").append(((LFUNode<K, V>)n).getCount()).append("][")
+							.append(((LFUNode<K, V>)n).getTimeStamp()).append("]");
+					}
+				}
+				return builder.toString();
+			}finally {
+				evictionLock.unlock();
+			}
+		}
+		
+	}
+	
+	/**
+	 * <pre>
+	 * Window TinyLFU policy.
+	 * 
+	 * New entries enter a small LRU admission window (1% of the capacity). Entries pushed out of the
+	 * window become candidates for the main space, a segmented LRU made of a probation and a protected
+	 * (80% of the main space) segment. Entries read while on probation are promoted to the protected
+	 * segment, whose overflow is demoted back to probation.
+	 * 
+	 * On eviction the oldest candidate duels the probation LRU victim: the one with the lower access
+	 * frequency, as estimated by a {@link FrequencySketch}, is evicted. The sketch is periodically
+	 * halved so formerly hot keys age out, and one-off scans cannot push frequently used entries out
+	 * of the cache because they never win admission.
+	 * 
+	 * As for {@link LRUEvictionStrategy} reads are buffered and replayed under the eviction lock.
+	 * 
+	 * The window and protected segments are bounded by the weight of their entries, in the unit the cache
+	 * is bounded in: entries when it is bounded by the allowed cache size, weight when it is bounded by
+	 * a maximum weight. The sketch is sized by the number of entries linked, growing with it.
+	 * </pre>
+	 */
+	public static class WindowTinyLFUEvictionStrategy<K, V> implements EvictionStrategy<K, V>{
+		private static final double WINDOW_PERCENTAGE = 0.01d;
+		private static final double PROTECTED_PERCENTAGE = 0.80d;
+		private static final int INITIAL_SKETCH_SIZE = 1 << 10;
+		
+		private final LinkedDequeThreadSafe<Node<K, V>> window = new LinkedDequeThreadSafe<>();
+		private final LinkedDequeThreadSafe<Node<K, V>> probation = new LinkedDequeThreadSafe<>();
+		private final LinkedDequeThreadSafe<Node<K, V>> protectedQueue = new LinkedDequeThreadSafe<>();
+		private final FrequencySketch<K> sketch;
+		private final ReadBuffer<Node<K, V>> readBuffer = new ReadBuffer<>();
+		private final ReentrantLock evictionLock = new ReentrantLock();
+		private final Consumer<Node<K, V>> onRead = this::onRead;
+		private final long maxWindow;
+		private final long maxProtected;
+		private long windowWeight;
+		private long protectedWeight;
+		/** number of nodes linked */
+		private long size;
+		
+		/**
+		 * @param maximum the bound of the cache: its allowed cache size, or its maximum weight when it
+		 * 			is bounded by weight
+		 */
+		public WindowTinyLFUEvictionStrategy(long maximum) {
+			this.maxWindow = Math.max(1, (long) (maximum * WINDOW_PERCENTAGE));
+			this.maxProtected = (long) ((maximum - maxWindow) * PROTECTED_PERCENTAGE);
+			this.sketch = new FrequencySketch<>(Math.min(maximum, INITIAL_SKETCH_SIZE));
+		}
+		
+		@Override
+		public void applyRead(Node<K, V> node) {
+			if(readBuffer.offer(node) && evictionLock.tryLock()) {
+				try {
+					readBuffer.drainTo(onRead);
+				}finally {
+					evictionLock.unlock();
+				}
+			}
+		}
+		
+		private void onRead(Node<K, V> node) {
+			TinyLFUNode<K, V> tinyLFUNode = (TinyLFUNode<K, V>) node;
+			sketch.increment(node.getKey());
+			switch (tinyLFUNode.getQueueType()) {
+			case TinyLFUNode.WINDOW:
+				window.moveToBack(node);
+				break;
+			case TinyLFUNode.PROBATION:
+				probation.remove(node);
+				tinyLFUNode.setCandidate(false);
+				tinyLFUNode.setQueueType(TinyLFUNode.PROTECTED);
+				protectedQueue.add(node);
+				protectedWeight += tinyLFUNode.getPolicyWeight();
+				demoteFromProtected();
+				break;
+			case TinyLFUNode.PROTECTED:
+				protectedQueue.moveToBack(node);
+				break;
+			default:
+				break;
+			}
+		}
+		
+		@Override
+		public void applyWrite(Node<K, V> node) {
+			TinyLFUNode<K, V> tinyLFUNode = (TinyLFUNode<K, V>) node;
+			evictionLock.lock();
+			try {
+				readBuffer.drainTo(onRead);
+				sketch.ensureCapacity(++size);
+				sketch.increment(node.getKey());
+				// the weight the node is accounted with, the cache may swap its value in place
+				tinyLFUNode.setPolicyWeight(Math.max(0, node.getWeight()));
+				tinyLFUNode.setQueueType(TinyLFUNode.WINDOW);
+				window.add(node);
+				windowWeight += tinyLFUNode.getPolicyWeight();
+				while(windowWeight>maxWindow && !window.isEmpty()) {
+					TinyLFUNode<K, V> candidate = (TinyLFUNode<K, V>) window.pollFirst();
+					windowWeight -= candidate.getPolicyWeight();
+					candidate.setQueueType(TinyLFUNode.PROBATION);
+					candidate.setCandidate(true);
+					probation.add(candidate);
+				}
+			}finally {
+				evictionLock.unlock();
+			}
+		}
+		
+		@Override
+		public void applyRemove(Node<K, V> node) {
+			evictionLock.lock();
+			try {
+				readBuffer.drainTo(onRead);
+				unlink((TinyLFUNode<K, V>) node);
+			}finally {
+				evictionLock.unlock();
+			}
+		}
+		
+		@Override
+		public Node<K, V> getNode(K key, V value) {
+			return new TinyLFUNode<>(key, value);
+		}
+		
+		@Override
+		public Map<K, Node<K, V>> evict(int permits, ConcurrentHashMap<K, Node<K, V>> cache) {
+			List<Node<K, V>> victims = new ArrayList<>(permits);
+			evictionLock.lock();
+			try {
+				readBuffer.drainTo(onRead);
+				for(int i=0;i<permits;i++) {
+					TinyLFUNode<K, V> evicted = selectVictim();
+					if(evicted==null)
+						break;
+					unlink(evicted);
+					victims.add(evicted);
+				}
+			}finally {
+				evictionLock.unlock();
+			}
+			return removeVictims(victims, cache);
+		}
+		
+		/**
+		 * The youngest admission candidate is compared with the probation LRU entry, when there is no
+		 * candidate the LRU end of probation, protected and window is used, in that order.
+		 */
+		private TinyLFUNode<K, V> selectVictim() {
+			TinyLFUNode<K, V> victim = (TinyLFUNode<K, V>) probation.peekFirst();
+			if(victim==null) {
+				victim = (TinyLFUNode<K, V>) protectedQueue.peekFirst();
+				return victim!=null ? victim : (TinyLFUNode<K, V>) window.peekFirst();
+			}
+			TinyLFUNode<K, V> candidate = (TinyLFUNode<K, V>) probation.peekLast();
+			if(candidate==victim || !candidate.isCandidate()) {
+				return victim;
+			}
+			candidate.setCandidate(false);
+			if(sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+				return victim;
+			}
+			return candidate;
+		}
+		
+		private void demoteFromProtected() {
+			while(protectedWeight>maxProtected && !protectedQueue.isEmpty()) {
+				TinyLFUNode<K, V> demoted = (TinyLFUNode<K, V>) protectedQueue.pollFirst();
+				protectedWeight -= demoted.getPolicyWeight();
+				demoted.setQueueType(TinyLFUNode.PROBATION);
+				probation.add(demoted);
+			}
+		}
+		
+		private void unlink(TinyLFUNode<K, V> node) {
+			switch (node.getQueueType()) {
+			case TinyLFUNode.WINDOW:
+				if(window.remove(node)) {
+					windowWeight -= node.getPolicyWeight();
+					size--;
+				}
+				break;
+			case TinyLFUNode.PROBATION:
+				if(probation.remove(node))
+					size--;
+				break;
+			case TinyLFUNode.PROTECTED:
+				if(protectedQueue.remove(node)) {
+					protectedWeight -= node.getPolicyWeight();
+					size--;
+				}
+				break;
+			default:
+				break;
+			}
+			node.setCandidate(false);
+			node.setQueueType(TinyLFUNode.REMOVED);
+		}
+		
+		@Override
+		public String queue() {
+			return "window[" + keys(window) + "] probation[" + keys(probation) + "] protected[" + keys(protectedQueue) + "]";
+		}
+		
+		private String keys(LinkedDequeThreadSafe<Node<K, V>> queue) {
+			Spliterator<Node<K, V>> spliterator = Spliterators.spliteratorUnknownSize(queue.iterator(), 0); 
+			return StreamSupport.stream(spliterator, false).map(n -> n.getKey().toString()).collect(Collectors.joining("->"));
 		}
 		
 	}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bfm.app.timeseries.cache;
+
+/**
+ * <pre>
+ * Count-Min sketch estimating how often a key has been seen, used as the admission filter of
+ * {@link EvictionStrategy.WindowTinyLFUEvictionStrategy}.
+ *
+ * Each key maps to four 4-bit counters (so a frequency saturates at 15), packed sixteen to a
+ * <code>long</code>. The estimate of a key is the minimum of its four counters. Once the number of
+ * increments reaches ten times the table capacity every counter is halved, so the sketch forgets
+ * keys which used to be hot but are no longer accessed.
+ *
+ * The sketch is not thread safe, callers must serialize access.
+ *
+ * Adapted from <code>com.github.benmanes.caffeine.cache.FrequencySketch</code> of Caffeine,
+ * https://github.com/ben-manes/caffeine, under the Apache License 2.0: counters are indexed and
+ * aged the same way, without the block-based layout of its later versions.
+ * </pre>
+ *
+ * @param <E> type of the keys being counted
+ */
+final class FrequencySketch<E> {
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+			0xcbf29ce484222325L };
+	/** Clears the high bit of every counter after a shift, so counters do not leak into each other */
+	private static final long RESET_MASK = 0x7777777777777777L;
+	/** The low bit of every counter, used to count odd counters lost while halving */
+	private static final long ONE_MASK = 0x1111111111111111L;
+	private static final long COUNTER_MASK = 0xfL;
+
+	private long[] table;
+	private int tableMask;
+	private int sampleSize;
+	private int additions;
+
+	FrequencySketch(long maximumSize) {
+		ensureCapacity(maximumSize);
+	}
+
+	/**
+	 * Grows the table to count <code>maximumSize</code> keys, the frequencies counted so far are lost
+	 * if it has to grow
+	 */
+	void ensureCapacity(long maximumSize) {
+		int maximum = (int) Math.min(Math.max(maximumSize, 1), Integer.MAX_VALUE >>> 1);
+		if (table != null && table.length >= maximum) {
+			return;
+		}
+		this.table = new long[ceilingPowerOfTwo(maximum)];
+		this.tableMask = table.length - 1;
+		this.sampleSize = maximum <= Integer.MAX_VALUE / 10 ? 10 * maximum : Integer.MAX_VALUE;
+		this.additions = 0;
+	}
+
+	/**
+	 * @return estimated number of occurrences of <code>e</code>, at most 15
+	 */
+	int frequency(E e) {
+		int hash = spread(e.hashCode());
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & COUNTER_MASK);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Records an occurrence of <code>e</code>, halving all counters once the sample size is reached
+	 */
+	void increment(E e) {
+		int hash = spread(e.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && ++additions == sampleSize) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int index, int counter) {
+		int offset = counter << 2;
+		long mask = COUNTER_MASK << offset;
+		if ((table[index] & mask) != mask) {
+			table[index] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	/** Halves every counter, the sample size accounts for the odd counters that were truncated */
+	void reset() {
+		int odd = 0;
+		for (int i = 0; i < table.length; i++) {
+			odd += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		additions = (additions >>> 1) - (odd >>> 2);
+	}
+
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		return ((int) h) & tableMask;
+	}
+
+	/** Applies a supplemental hash so that keys with poor hash codes still spread over the table */
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+	private static int ceilingPowerOfTwo(int x) {
+		return 1 << -Integer.numberOfLeadingZeros(x - 1);
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.bfm.app.timeseries.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ * Striped, lossy buffer of cache reads waiting to be replayed on an eviction policy.
+ *
+ * Reader threads record a hit with a single CAS on one of several small ring buffers, picked by
+ * thread, instead of taking the policy lock. When a ring is full, or the CAS loses a race, the read
+ * is simply dropped: the policy then sees a slightly stale recency/frequency for that entry, which
+ * is acceptable for a cache and keeps hits from serializing on one monitor.
+ *
+ * Rings are emptied in batches by {@link #drainTo(Consumer)}, which must only be called by one
+ * thread at a time (the holder of the policy lock). Reads of a thread are replayed in the order
+ * they were recorded.
+ * </pre>
+ *
+ * @param <E> type of the recorded elements
+ */
+final class ReadBuffer<E> {
+
+	private static final int NCPU = Runtime.getRuntime().availableProcessors();
+	/** Number of rings, a power of two so a thread is mapped to a ring with a mask */
+	private static final int STRIPES = Math.min(64, ceilingPowerOfTwo(NCPU));
+	private static final int BUFFER_SIZE = 16;
+	private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+	/** Number of pending reads in a ring above which the writer asks for a drain */
+	private static final int DRAIN_THRESHOLD = BUFFER_SIZE / 2;
+
+	private final Ring<E>[] rings;
+
+	@SuppressWarnings("unchecked")
+	ReadBuffer() {
+		rings = (Ring<E>[]) new Ring<?>[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			rings[i] = new Ring<>();
+		}
+	}
+
+	/**
+	 * Records <code>e</code>, dropping it if the ring of the calling thread is full or contended
+	 *
+	 * @return <code>true</code> if enough reads are pending that the caller should try to drain
+	 */
+	boolean offer(E e) {
+		return rings[ringIndex()].offer(e);
+	}
+
+	/**
+	 * Replays every pending read on <code>consumer</code>, must be called under the policy lock
+	 */
+	void drainTo(Consumer<E> consumer) {
+		for (Ring<E> ring : rings) {
+			ring.drainTo(consumer);
+		}
+	}
+
+	private static int ringIndex() {
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+	}
+
+	private static int ceilingPowerOfTwo(int x) {
+		return 1 << -Integer.numberOfLeadingZeros(x - 1);
+	}
+
+	private static final class Ring<E> {
+		private final AtomicLong readCounter = new AtomicLong();
+		private final AtomicLong writeCounter = new AtomicLong();
+		private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+
+		boolean offer(E e) {
+			long head = readCounter.get();
+			long tail = writeCounter.get();
+			long size = tail - head;
+			if (size >= BUFFER_SIZE) {
+				return true;
+			}
+			if (writeCounter.compareAndSet(tail, tail + 1)) {
+				buffer.lazySet((int) (tail & BUFFER_MASK), e);
+				return size + 1 >= DRAIN_THRESHOLD;
+			}
+			return false;
+		}
+
+		void drainTo(Consumer<E> consumer) {
+			long head = readCounter.get();
+			long tail = writeCounter.get();
+			for (; head < tail; head++) {
+				int index = (int) (head & BUFFER_MASK);
+				E e = buffer.get(index);
+				if (e == null) {
+					// the writer won the slot but has not published the element yet
+					break;
+				}
+				buffer.lazySet(index, null);
+				consumer.accept(e);
+			}
+			readCounter.lazySet(head);
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+package com.bfm.app.timeseries.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * <pre>
+ * Collapses concurrent loads of the same key into a single call of the loader.
+ *
+ * The first thread missing on a key registers an in-flight future and runs the loader
+ * on its own stack, outside of any lock held on the cache map. Every other thread missing
+ * on the same key while the load is running waits on that future instead of calling the
+ * loader again. The future is unregistered as soon as it completes, so a later miss
+ * (e.g. after eviction) triggers a fresh load.
+ * </pre>
+ *
+ * @param <K> key type
+ * @param <R> result of the load
+ */
+public class SingleFlight<K, R> {
+
+	private final ConcurrentHashMap<K, CompletableFuture<R>> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * Load the value for <code>key</code>, running <code>loader</code> in the calling thread
+	 * unless another thread is already loading the same key, in which case the result of that
+	 * load is returned.
+	 *
+	 * @param key the key to load
+	 * @param loader the function doing the actual load
+	 * @return result of the (possibly shared) load
+	 */
+	public R load(K key, Function<? super K, ? extends R> loader) {
+		CompletableFuture<R> future = new CompletableFuture<>();
+		CompletableFuture<R> existing = inFlight.putIfAbsent(key, future);
+		if(existing!=null) {
+			return await(existing);
+		}
+		try {
+			R result = loader.apply(key);
+			future.complete(result);
+			return result;
+		}catch (RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		}finally {
+			inFlight.remove(key, future);
+		}
+	}
+
+	/**
+	 * Non blocking variant of {@link #load(Object, Function)}. The returned future is shared by
+	 * every caller asking for <code>key</code> until the load completes. Synchronous and asynchronous
+	 * callers share the same in-flight loads.
+	 *
+	 * @param key the key to load
+	 * @param loader the function starting the actual load
+	 * @return future completed with the result of the (possibly shared) load
+	 */
+	public CompletableFuture<R> loadAsync(K key, Function<? super K, ? extends CompletableFuture<R>> loader) {
+		CompletableFuture<R> future = new CompletableFuture<>();
+		CompletableFuture<R> existing = inFlight.putIfAbsent(key, future);
+		if(existing!=null) {
+			return existing;
+		}
+		try {
+			loader.apply(key).whenComplete((result, error) -> {
+				inFlight.remove(key, future);
+				if(error!=null) {
+					future.completeExceptionally(error);
+				}else {
+					future.complete(result);
+				}
+			});
+		}catch (RuntimeException | Error e) {
+			inFlight.remove(key, future);
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	public boolean isLoading(K key) {
+		return inFlight.containsKey(key);
+	}
+
+	public int size() {
+		return inFlight.size();
+	}
+
+	static <R> R await(CompletableFuture<R> future) {
+		boolean interrupted = false;
+		try {
+			while(true) {
+				try {
+					return future.get();
+				}catch (InterruptedException e) {
+					interrupted = true;
+				}catch (ExecutionException e) {
+					throw propagate(e.getCause());
+				}
+			}
+		}finally {
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	static RuntimeException propagate(Throwable cause) {
+		if(cause instanceof CompletionException && cause.getCause()!=null) {
+			cause = cause.getCause();
+		}
+		if(cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		if(cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new CompletionException(cause);
+	}
+
+}
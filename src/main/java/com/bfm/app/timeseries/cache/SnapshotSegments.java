@@ -0,0 +1,268 @@
+package com.bfm.app.timeseries.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.bfm.app.timeseries.TimeSeriesEntry;
+import com.bfm.app.timeseries.TimeSeriesEntryCodec;
+
+/**
+ * <pre>
+ * Cache snapshot as a directory of memory mapped segment files <code>segment-00000.tss</code>, ...:
+ * 	int		magic "TSS1"
+ * 	int		format version
+ * 	long		time the snapshot was taken, in milliseconds since the epoch
+ * 	int		number of entries, then for each entry
+ * 		int		length of the cache key, then its UTF-8 bytes
+ * 		long		age of the entry when the snapshot was taken, in nanoseconds since it was written
+ * 		int		length of the series, then the series as written by {@link TimeSeriesEntryCodec}
+ * all in little endian. A segment holds up to {@link #SEGMENT_BYTES} bytes, a bigger series gets a
+ * segment of its own.
+ *
+ * Segments are written and read in parallel, one per thread. Each snapshot is written in a generation
+ * directory of its own, <code>generation-&lt;random&gt;</code>, and forced to disk. The file <code>CURRENT</code>
+ * names the generation of the snapshot: it is only switched, by the atomic rename of a temporary file, once
+ * all segments are written, and the other generations are deleted afterwards. A write interrupted at any
+ * point leaves the previous snapshot readable, its partial generation is deleted by the next write.
+ * </pre>
+ */
+final class SnapshotSegments {
+	private static final int MAGIC = 0x54535331;
+	private static final int VERSION = 2;
+	private static final int HEADER_BYTES = 3 * 4 + 8;
+	static final long SEGMENT_BYTES = 256L << 20;
+	private static final String PREFIX = "segment-";
+	private static final String SUFFIX = ".tss";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	private static final String GENERATION_PREFIX = "generation-";
+	private static final String CURRENT = "CURRENT";
+
+	private SnapshotSegments() {
+	}
+
+	/**
+	 * Entry of a snapshot: encoded cache key, series and write age
+	 */
+	static final class Entry {
+		private final String key;
+		private final TimeSeriesEntry value;
+		private final long age;
+
+		Entry(String key, TimeSeriesEntry value, long age) {
+			this.key = key;
+			this.value = value;
+			this.age = age;
+		}
+	}
+
+	@FunctionalInterface
+	interface Reader {
+		/**
+		 * @param age nanoseconds since the entry was written, including the time elapsed since the snapshot
+		 * @param series buffer limited to the series, which must be read whole
+		 * @return <code>true</code> if the entry was kept
+		 */
+		boolean read(String key, long age, ByteBuffer series);
+	}
+
+	private static final class Segment {
+		private final Path path;
+		private final List<byte[]> keys = new ArrayList<>();
+		private final List<TimeSeriesEntry> values = new ArrayList<>();
+		private final List<Long> ages = new ArrayList<>();
+		private final List<Integer> sizes = new ArrayList<>();
+		private long bytes = HEADER_BYTES;
+
+		private Segment(Path path) {
+			this.path = path;
+		}
+	}
+
+	/**
+	 * Replaces the snapshot in <code>directory</code> with <code>entries</code>
+	 * @return number of entries written
+	 */
+	static long write(Path directory, List<Entry> entries, int parallelism, String name) throws IOException {
+		long time = System.currentTimeMillis();
+		Files.createDirectories(directory);
+		Path generation = Files.createTempDirectory(directory, GENERATION_PREFIX);
+		List<Segment> segments = new ArrayList<>();
+		Segment segment = null;
+		for(Entry entry : entries) {
+			byte[] key = entry.key.getBytes(StandardCharsets.UTF_8);
+			int size = TimeSeriesEntryCodec.encodedSize(entry.value);
+			long bytes = 4 + key.length + 8 + 4 + (long) size;
+			if(segment==null || (segment.bytes + bytes > SEGMENT_BYTES && !segment.keys.isEmpty())) {
+				segment = new Segment(generation.resolve(String.format("%s%05d%s", PREFIX, segments.size(), SUFFIX)));
+				segments.add(segment);
+			}
+			segment.keys.add(key);
+			segment.values.add(entry.value);
+			segment.ages.add(entry.age);
+			segment.sizes.add(size);
+			segment.bytes += bytes;
+		}
+		try {
+			try {
+				BulkLoader.load(segments.iterator(), parallelism, 1, name, s -> {
+					writeSegment(s, time);
+					return true;
+				}, null);
+			}catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			Path current = directory.resolve(CURRENT + TEMPORARY_SUFFIX);
+			try (FileChannel channel = FileChannel.open(current, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				channel.write(ByteBuffer.wrap(generation.getFileName().toString().getBytes(StandardCharsets.UTF_8)));
+				channel.force(true);
+			}
+			Files.move(current, directory.resolve(CURRENT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}catch (IOException | RuntimeException e) {
+			try {
+				delete(generation);
+			}catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+		for(Path old : generations(directory)) {
+			if(!old.equals(generation))
+				delete(old);
+		}
+		return entries.size();
+	}
+
+	/**
+	 * Reads the current snapshot in <code>directory</code>, a directory without one or that does not exist
+	 * being an empty snapshot
+	 * @param reader called with the encoded cache key, the write age and the series of every entry
+	 * @return number of entries kept
+	 */
+	static long read(Path directory, int parallelism, String name, Reader reader) throws IOException {
+		Path current = directory.resolve(CURRENT);
+		if(!Files.isRegularFile(current)) {
+			return 0;
+		}
+		Path generation = directory.resolve(new String(Files.readAllBytes(current), StandardCharsets.UTF_8));
+		AtomicLong kept = new AtomicLong();
+		try {
+			BulkLoader.load(list(generation).iterator(), parallelism, 1, name, path -> {
+				kept.addAndGet(readSegment(path, reader));
+				return true;
+			}, null);
+		}catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return kept.get();
+	}
+
+	private static void writeSegment(Segment segment, long time) {
+		try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segment.bytes);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putLong(time).putInt(segment.keys.size());
+			for(int i=0;i<segment.keys.size();i++) {
+				buffer.putInt(segment.keys.get(i).length).put(segment.keys.get(i));
+				buffer.putLong(segment.ages.get(i));
+				buffer.putInt(segment.sizes.get(i));
+				TimeSeriesEntryCodec.write(segment.values.get(i), buffer);
+			}
+			buffer.force();
+		}catch (IOException e) {
+			throw new UncheckedIOException("Could not write snapshot segment " + segment.path, e);
+		}
+	}
+
+	private static long readSegment(Path path, Reader reader) {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if(buffer.remaining()<HEADER_BYTES || buffer.getInt()!=MAGIC) {
+				throw new IllegalStateException(path + " is not a snapshot segment");
+			}
+			int version = buffer.getInt();
+			if(version!=VERSION) {
+				throw new IllegalStateException(path + " has format version " + version + ", expected " + VERSION);
+			}
+			long elapsed = TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - buffer.getLong()));
+			int entries = buffer.getInt();
+			long kept = 0;
+			for(int i=0;i<entries;i++) {
+				byte[] key = new byte[buffer.getInt()];
+				buffer.get(key);
+				long age = buffer.getLong() + elapsed;
+				int size = buffer.getInt();
+				ByteBuffer value = buffer.slice();
+				((Buffer) value).limit(size);
+				value.order(ByteOrder.LITTLE_ENDIAN);
+				if(reader.read(new String(key, StandardCharsets.UTF_8), age, value))
+					kept++;
+				if(value.hasRemaining()) {
+					throw new IllegalStateException("Entry " + i + " of " + path + " was not read whole");
+				}
+				((Buffer) buffer).position(buffer.position() + size);
+			}
+			return kept;
+		}catch (IOException e) {
+			throw new UncheckedIOException("Could not read snapshot segment " + path, e);
+		}
+	}
+
+	/**
+	 * @return the segments in <code>generation</code>, in name order
+	 */
+	private static List<Path> list(Path generation) throws IOException {
+		List<Path> segments = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(generation, PREFIX + "*" + SUFFIX)) {
+			for(Path path : stream) {
+				segments.add(path);
+			}
+		}
+		segments.sort(null);
+		return segments;
+	}
+
+	/**
+	 * @return the generation directories in <code>directory</code>, current or not
+	 */
+	private static List<Path> generations(Path directory) throws IOException {
+		List<Path> generations = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, GENERATION_PREFIX + "*")) {
+			for(Path path : stream) {
+				if(Files.isDirectory(path))
+					generations.add(path);
+			}
+		}
+		return generations;
+	}
+
+	/**
+	 * Deletes <code>generation</code> and the segments it holds
+	 */
+	private static void delete(Path generation) throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(generation)) {
+			for(Path path : stream) {
+				Files.delete(path);
+			}
+		}
+		Files.delete(generation);
+	}
+
+}
@@ -1,35 +1,114 @@
 package com.bfm.app.timeseries.cache;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.LongConsumer;
 import java.util.function.Supplier;
 
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.bfm.app.timeseries.Status;
 import com.bfm.app.timeseries.TimeSeriesEntry;
 import com.bfm.app.timeseries.TimeSeriesEntryBuilder;
+import com.bfm.app.timeseries.TimeSeriesEntryCodec;
 import com.bfm.app.timeseries.TimeSeriesEntryUtils;
+import com.bfm.app.timeseries.TimeSeriesView;
 import com.bfm.app.timeseries.cache.stats.CacheStats;
+import com.bfm.app.timeseries.cache.stats.CacheTracer;
+import com.bfm.app.timeseries.cache.stats.CacheTracer.Phase;
+import com.bfm.app.timeseries.cache.stats.StatsExporter;
 import com.bfm.app.timeseries.cache.utils.IdGenerator;
 import com.bfm.app.timeseries.classifiers.IntervalType;
+import com.bfm.app.timeseries.column.ColumnFactory;
+import com.bfm.app.timeseries.column.StringDictionary;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 public class TSCache<K, V extends TimeSeriesEntry, D> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(TSCache.class);
+	private static final long UNBOUNDED = Long.MAX_VALUE;
+	private static final long DISABLED = -1;
+	private static final long MIN_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long MAX_TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final int TIMER_WHEEL_BUCKETS = 512;
+	private static final int DEFAULT_LOAD_BATCH_SIZE = 256;
+	/** attempts to evict finding nothing after which a reservation gives up */
+	private static final int MAX_IDLE_EVICTIONS = 1 << 10;
+	/** period at which a registered MBean checks that its cache is still there */
+	private static final long MBEAN_WATCH_NANOS = TimeUnit.SECONDS.toNanos(10);
+	private static final ScheduledExecutorService MAINTENANCE;
+	/** runs the stats exporters, apart from the maintenance so that a slow exporter does not delay expirations */
+	private static final ScheduledExecutorService STATS_EXPORT;
+	/**
+	 * runs the batches of single key loads closed by their window, apart from the load executor whose
+	 * threads may be the ones blocked waiting on these batches
+	 */
+	private static final ExecutorService BATCH_LOADS;
+	static {
+		ScheduledThreadPoolExecutor maintenance = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "tscache-maintenance");
+			thread.setDaemon(true);
+			return thread;
+		});
+		maintenance.setRemoveOnCancelPolicy(true);
+		MAINTENANCE = maintenance;
+		ScheduledThreadPoolExecutor statsExport = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "tscache-stats-export");
+			thread.setDaemon(true);
+			return thread;
+		});
+		statsExport.setRemoveOnCancelPolicy(true);
+		STATS_EXPORT = statsExport;
+		AtomicInteger batchLoaders = new AtomicInteger();
+		BATCH_LOADS = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "tscache-batch-load-" + batchLoaders.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
 	private EvictionStrategy<K, V> evictionStrategy = new EvictionStrategy.NoneEvictionStrategy<>();
 	static class Node<K, V> implements Linked<Node<K,V>> {
+		/** weight of a node handed out to the caller without being cached */
+		static final int DETACHED = -1;
 		private Node<K, V> prev;
 		private K key;
-		private V value;
+		private volatile V value;
 		private Node<K, V> next;
+		private int weight;
+		private volatile long writeTime;
+		private volatile long accessTime;
+		/** time of the last write or refresh attempt */
+		private volatile long refreshTime;
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+		private TimerWheel.Timer<Node<K, V>> timer;
 
 		public Node(K key, V value) {
 			this.value = value;
@@ -39,10 +118,73 @@ public class TSCache<K, V extends TimeSeriesEntry, D> {
 		public K getKey() {
 			return this.key;
 		}
+		
+		int getWeight() {
+			return weight;
+		}
+		
+		void setWeight(int weight) {
+			this.weight = weight;
+		}
+		
+		boolean isDetached() {
+			return weight==DETACHED;
+		}
 
 		public V getValue() {
 			return this.value;
 		}
+		
+		void setValue(V value) {
+			this.value = value;
+		}
+		
+		long getWriteTime() {
+			return writeTime;
+		}
+		
+		void setWriteTime(long writeTime) {
+			this.writeTime = writeTime;
+		}
+		
+		long getRefreshTime() {
+			return refreshTime;
+		}
+		
+		void setRefreshTime(long refreshTime) {
+			this.refreshTime = refreshTime;
+		}
+		
+		long getAccessTime() {
+			return accessTime;
+		}
+		
+		void setAccessTime(long accessTime) {
+			this.accessTime = accessTime;
+		}
+		
+		/**
+		 * @return <code>false</code> if a refresh of the node is already in flight
+		 */
+		boolean startRefresh() {
+			return refreshing.compareAndSet(false, true);
+		}
+		
+		void endRefresh() {
+			refreshing.set(false);
+		}
+		
+		boolean isRefreshing() {
+			return refreshing.get();
+		}
+		
+		TimerWheel.Timer<Node<K, V>> getTimer() {
+			return timer;
+		}
+		
+		void setTimer(TimerWheel.Timer<Node<K, V>> timer) {
+			this.timer = timer;
+		}
 
 		@Override
 		public boolean equals(Object obj) {
@@ -110,9 +252,9 @@ public class TSCache<K, V extends TimeSeriesEntry, D> {
 		}
 	}
 
-	static class LFUNode<K, V> extends Node<K, V> implements Comparable<LFUNode<K, V>> {
+	static class LFUNode<K, V> extends Node<K, V> {
 		private long timeStamp;
-		private AtomicLong count = new AtomicLong(0);
+		private FrequencyNode<K, V> frequencyNode;
 		public LFUNode(K key, V value) {
 			super(key, value);
 			this.timeStamp = IdGenerator.getNextInSequence();
@@ -120,94 +262,801 @@ public class TSCache<K, V extends TimeSeriesEntry, D> {
 
 		public V getValue() {
 			this.timeStamp = IdGenerator.getNextInSequence();
-			this.count.incrementAndGet();
 			return super.getValue();
 		}
 
 		public long getCount() {
-			return count.get();
+			FrequencyNode<K, V> frequency = frequencyNode;
+			return frequency==null ? 0 : frequency.getFrequency();
 		}
 		
 		public long getTimeStamp() {
 			return timeStamp;
 		}
+		
+		FrequencyNode<K, V> getFrequencyNode() {
+			return frequencyNode;
+		}
+		
+		void setFrequencyNode(FrequencyNode<K, V> frequencyNode) {
+			this.frequencyNode = frequencyNode;
+		}
+	}
+	
+	/**
+	 * A bucket of the constant time LFU policy, holds in LRU order every node accessed exactly 
+	 * <code>frequency</code> times. Buckets are linked in increasing order of frequency.
+	 */
+	static class FrequencyNode<K, V> implements Linked<FrequencyNode<K, V>> {
+		private final long frequency;
+		private final LinkedDequeThreadSafe<Node<K, V>> entries = new LinkedDequeThreadSafe<>();
+		private FrequencyNode<K, V> prev;
+		private FrequencyNode<K, V> next;
+		
+		FrequencyNode(long frequency) {
+			this.frequency = frequency;
+		}
+		
+		long getFrequency() {
+			return frequency;
+		}
+		
+		LinkedDequeThreadSafe<Node<K, V>> getEntries() {
+			return entries;
+		}
 
 		@Override
-		public int compareTo(LFUNode<K, V> that) {
-			int cmp = Long.compare(this.count.get(), that.count.get());
-			if(cmp==0) {
-				cmp = Long.compare(this.timeStamp, that.timeStamp);
-			}
-			return cmp;
+		public FrequencyNode<K, V> getPrevious() {
+			return prev;
+		}
+
+		@Override
+		public void setPrevious(FrequencyNode<K, V> prev) {
+			this.prev = prev;
+		}
+
+		@Override
+		public FrequencyNode<K, V> getNext() {
+			return next;
+		}
+
+		@Override
+		public void setNext(FrequencyNode<K, V> next) {
+			this.next = next;
+		}
+	}
+
+	static class TinyLFUNode<K, V> extends Node<K, V> {
+		static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2, REMOVED = 3;
+		private int queueType = WINDOW;
+		/** set while the node is a window victim waiting for admission to the main space */
+		private boolean candidate;
+		/** weight the node was linked with */
+		private int policyWeight;
+		public TinyLFUNode(K key, V value) {
+			super(key, value);
+		}
+		
+		int getPolicyWeight() {
+			return policyWeight;
+		}
+		
+		void setPolicyWeight(int policyWeight) {
+			this.policyWeight = policyWeight;
+		}
+		
+		int getQueueType() {
+			return queueType;
+		}
+		
+		void setQueueType(int queueType) {
+			this.queueType = queueType;
+		}
+		
+		boolean isCandidate() {
+			return candidate;
+		}
+		
+		void setCandidate(boolean candidate) {
+			this.candidate = candidate;
 		}
 	}
 
 	private ConcurrentHashMap<K, Node<K, V>> cache = new ConcurrentHashMap<>();
 	private IntervalType interval;
 	private DataLoader<K, D> dataLoader;
+	private AsyncDataLoader<K, D> asyncDataLoader;
 	private Function<D, V> transformer;
-	private CacheStats cacheStats = new CacheStats();
+	private final CacheStats cacheStats = new CacheStats(this::size, this::weightedSize);
 	private final String cacheName;
 	private int allowedCacheSize = Integer.MIN_VALUE;
-	private Semaphore sizeControlSemaphore;
+	private long maximumWeight = UNBOUNDED;
+	private final AtomicLong weightedSize = new AtomicLong();
+	private Weigher<? super K, ? super V> weigher = Weigher.singleton();
+	
+	private long expireAfterWriteNanos = DISABLED;
+	private long expireAfterAccessNanos = DISABLED;
+	private long refreshAfterWriteNanos = DISABLED;
+	/** schedules expirations and refreshes, <code>null</code> if entries never expire nor refresh */
+	private TimerWheel<Node<K, V>> timerWheel;
+	private ScheduledFuture<?> maintenance;
+	private ScheduledFuture<?> statsExport;
+	private ScheduledFuture<?> mbeanWatch;
+	private final CacheTracer tracer;
+	private final DiskTier<K, V> diskTier;
+	/** name of the registered {@link TSCacheMXBean}, <code>null</code> if none */
+	private ObjectName mbeanName;
 	
-	private EvictionListener<K, V> listener;
+	private EvictionListener<K, V> listener = (key, value) -> {};
+	private final SingleFlight<K, Node<K, V>> singleFlight = new SingleFlight<>();
 	
 	private final Map<String, Class<?>> fieldTypeMap = new HashMap<>();
 	private LocalDateTime start, end;
 	private Supplier<V> objectSupplier;
+	/** builds the columns of the numeric fields of cached values, <code>null</code> to keep the lists */
+	private ColumnFactory columnFactory;
+	/** dictionary of the string fields of cached values, <code>null</code> to keep the strings */
+	private StringDictionary stringDictionary;
 
 	public TSCache(String cacheName, IntervalType intervalType, Function<K, D> singleEntryLoader,
 			Function<Set<K>, Map<K, D>> multipleEntryLoader, Supplier<Map<K, D>> allEntriesLoader,
 			Function<D, V> transformer, int allowedCacheSize, EvictionStrategy<K, V> evictionStrategy, 
 			EvictionListener<K, V> listener, LocalDateTime startDate, LocalDateTime endDate, Map<String, Class<?>> fieldTypeMap,
 			Supplier<V> objectSupplier) {
-		this.cacheName = cacheName;
-		this.interval = intervalType.initialize();
-		this.transformer = transformer;
-		this.dataLoader = new DataLoader<>(singleEntryLoader, multipleEntryLoader, allEntriesLoader, cacheStats);
-		if(allowedCacheSize!=Integer.MIN_VALUE) {
-			this.allowedCacheSize = allowedCacheSize;
-			sizeControlSemaphore = new Semaphore(allowedCacheSize, true);
+		this(new TSCacheBuilder<K, V, D>().cacheName(cacheName).intervalType(intervalType)
+				.singleEntryLoader(singleEntryLoader).multipleEntryLoader(multipleEntryLoader)
+				.allEntriesLoader(allEntriesLoader).transformer(transformer).allowedCacheSize(allowedCacheSize)
+				.evictionStrategy(evictionStrategy).listener(listener).startDate(startDate).endDate(endDate)
+				.fieldTypeMap(fieldTypeMap).objectSupplier(objectSupplier));
+	}
+	
+	TSCache(TSCacheBuilder<K, V, D> builder) {
+		this.cacheName = builder.getCacheName();
+		this.interval = builder.getIntervalType().initialize();
+		this.transformer = builder.getTransformer();
+		this.tracer = builder.getTracer();
+		this.dataLoader = new DataLoader<>(traceLoads(builder.getSingleEntryLoader()), traceLoads(builder.getMultipleEntryLoader()), 
+				traceLoads(builder.getAllEntriesLoader()), traceLoads(builder.getTailLoader()), cacheStats);
+		if(builder.getBatchWindowNanos()>=0) {
+			this.dataLoader.batchSingleEntryLoads(builder.getBatchWindowNanos(), TimeUnit.NANOSECONDS, 
+					builder.getMaxBatchSize(), BATCH_LOADS);
+		}
+		if(builder.getAsyncSingleEntryLoader()!=null || builder.getAsyncMultipleEntryLoader()!=null) {
+			this.asyncDataLoader = new AsyncDataLoader<>(traceAsyncLoads(builder.getAsyncSingleEntryLoader()), 
+					traceAsyncLoads(builder.getAsyncMultipleEntryLoader()), builder.getExecutor(), cacheStats);
+		}else {
+			this.asyncDataLoader = AsyncDataLoader.of(dataLoader, builder.getExecutor());
+		}
+		if(builder.getAllowedCacheSize()!=Integer.MIN_VALUE) {
+			this.allowedCacheSize = builder.getAllowedCacheSize();
+			this.maximumWeight = allowedCacheSize;
+		}
+		if(builder.getWeigher()!=null) {
+			this.weigher = builder.getWeigher();
+			this.maximumWeight = builder.getMaximumWeight();
 		}
-		if(evictionStrategy!=null)
-			this.evictionStrategy = evictionStrategy;
+		if(builder.getEvictionStrategy()!=null)
+			this.evictionStrategy = builder.getEvictionStrategy();
 		
-		this.listener = listener;
+		if(builder.getListener()!=null)
+			this.listener = builder.getListener();
 		
-		this.fieldTypeMap.putAll(fieldTypeMap);
-		this.start = startDate; this.end = endDate;
-		this.objectSupplier = objectSupplier;
+		this.fieldTypeMap.putAll(builder.getFieldTypeMap());
+		this.start = builder.getStartDate(); this.end = builder.getEndDate();
+		this.objectSupplier = builder.getObjectSupplier();
+		this.columnFactory = builder.getColumnFactory();
+		this.stringDictionary = builder.getStringDictionary();
+		this.diskTier = builder.getDiskTierFile()==null ? null : new DiskTier<>(builder.getDiskTierFile(), builder.getDiskTierCapacity(), 
+				buffer -> TimeSeriesEntryCodec.read(buffer, interval, threadlocalBuilders.get(), objectSupplier));
+		
+		this.expireAfterWriteNanos = builder.getExpireAfterWriteNanos();
+		this.expireAfterAccessNanos = builder.getExpireAfterAccessNanos();
+		this.refreshAfterWriteNanos = builder.getRefreshAfterWriteNanos();
+		long shortest = Long.MAX_VALUE;
+		for(long duration : new long[] {expireAfterWriteNanos, expireAfterAccessNanos, refreshAfterWriteNanos}) {
+			if(duration!=DISABLED)
+				shortest = Math.min(shortest, duration);
+		}
+		if(shortest!=Long.MAX_VALUE) {
+			long tickNanos = Math.min(MAX_TICK_NANOS, Math.max(MIN_TICK_NANOS, shortest / 8));
+			this.timerWheel = new TimerWheel<>(tickNanos, TIMER_WHEEL_BUCKETS, System.nanoTime());
+			this.maintenance = WeakTask.schedule(MAINTENANCE, this, TSCache::expireEntries, () -> {}, tickNanos);
+		}
+		// the MBean server and the schedulers outlive the cache, nothing they hold may reference it strongly
+		if(builder.isRegisterMBean()) {
+			WeakReference<TSCache<K, V, D>> self = new WeakReference<>(this);
+			ObjectName name = CacheStatsBean.register(cacheName, () -> live(self).cacheStats.snapshot(), 
+					() -> live(self).getMaximumWeight());
+			if(name!=null) {
+				this.mbeanName = name;
+				this.mbeanWatch = WeakTask.schedule(STATS_EXPORT, this, cache -> {}, () -> CacheStatsBean.unregister(name), 
+						MBEAN_WATCH_NANOS);
+			}
+		}
+		if(builder.getStatsExporter()!=null) {
+			StatsExporter exporter = builder.getStatsExporter();
+			this.statsExport = WeakTask.schedule(STATS_EXPORT, this, cache -> {
+				try {
+					exporter.export(cache.cacheName, cache.cacheStats.intervalSnapshot());
+				}catch (RuntimeException e) {
+					LOGGER.warn("Could not export the stats of cache {}", cache.cacheName, e);
+				}
+			}, () -> {}, builder.getStatsExportPeriodNanos());
+		}
+	}
+
+	/**
+	 * <pre>
+	 * Periodic task of a cache which only references it weakly, so that a cache dropped without being
+	 * closed is still collected. The first run which finds the cache collected cancels the task and
+	 * calls <code>collected</code>.
+	 * </pre>
+	 */
+	private static final class WeakTask<C> implements Runnable {
+		private final WeakReference<C> cache;
+		private final Consumer<? super C> task;
+		private final Runnable collected;
+		private volatile ScheduledFuture<?> future;
+
+		private WeakTask(C cache, Consumer<? super C> task, Runnable collected) {
+			this.cache = new WeakReference<>(cache);
+			this.task = task;
+			this.collected = collected;
+		}
+
+		/**
+		 * @param task must not reference <code>cache</code>, which it is given on every run
+		 */
+		static <C> ScheduledFuture<?> schedule(ScheduledExecutorService executor, C cache, Consumer<? super C> task, 
+				Runnable collected, long periodNanos) {
+			WeakTask<C> weakTask = new WeakTask<>(cache, task, collected);
+			weakTask.future = executor.scheduleAtFixedRate(weakTask, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+			return weakTask.future;
+		}
+
+		@Override
+		public void run() {
+			C cache = this.cache.get();
+			if(cache!=null) {
+				task.accept(cache);
+				return;
+			}
+			ScheduledFuture<?> future = this.future;
+			if(future!=null && future.cancel(false))
+				collected.run();
+		}
+	}
+
+	private static <C> C live(WeakReference<C> cache) {
+		C live = cache.get();
+		if(live==null) {
+			throw new IllegalStateException("The cache was collected without being closed");
+		}
+		return live;
 	}
 
-	private void evict(int permits) {
+	/**
+	 * @return <code>loader</code> reporting its calls to the tracer as {@link Phase#LOAD}, <code>loader</code>
+	 * 			itself if nothing is traced
+	 */
+	private <T, R> Function<T, R> traceLoads(Function<T, R> loader) {
+		if(loader==null || tracer==CacheTracer.NOOP) {
+			return loader;
+		}
+		return keys -> {
+			long token = tracer.begin(Phase.LOAD, cacheName, keys);
+			try {
+				return loader.apply(keys);
+			}finally {
+				tracer.end(Phase.LOAD, cacheName, keys, token);
+			}
+		};
+	}
+	
+	private <R> Supplier<R> traceLoads(Supplier<R> loader) {
+		if(loader==null || tracer==CacheTracer.NOOP) {
+			return loader;
+		}
+		return () -> {
+			long token = tracer.begin(Phase.LOAD, cacheName, null);
+			try {
+				return loader.get();
+			}finally {
+				tracer.end(Phase.LOAD, cacheName, null, token);
+			}
+		};
+	}
+	
+	private <R> BiFunction<K, LocalDateTime, R> traceLoads(BiFunction<K, LocalDateTime, R> loader) {
+		if(loader==null || tracer==CacheTracer.NOOP) {
+			return loader;
+		}
+		return (key, since) -> {
+			long token = tracer.begin(Phase.LOAD, cacheName, key);
+			try {
+				return loader.apply(key, since);
+			}finally {
+				tracer.end(Phase.LOAD, cacheName, key, token);
+			}
+		};
+	}
+	
+	/**
+	 * Asynchronous loads end when their future completes
+	 */
+	private <T, R> Function<T, CompletableFuture<R>> traceAsyncLoads(Function<T, CompletableFuture<R>> loader) {
+		if(loader==null || tracer==CacheTracer.NOOP) {
+			return loader;
+		}
+		return keys -> {
+			long token = tracer.begin(Phase.LOAD, cacheName, keys);
+			CompletableFuture<R> load;
+			try {
+				load = loader.apply(keys);
+			}catch (RuntimeException e) {
+				tracer.end(Phase.LOAD, cacheName, keys, token);
+				throw e;
+			}
+			return load.whenComplete((value, error) -> tracer.end(Phase.LOAD, cacheName, keys, token));
+		};
+	}
+	
+	/**
+	 * Evicts up to <code>permits</code> entries
+	 * @return <code>false</code> if the eviction strategy had nothing to evict
+	 */
+	private boolean evict(int permits) {
 		if(evictionStrategy!=null) {
-			Map<K, V> evicetedEntries = evictionStrategy.evict(permits, cache);
-			sizeControlSemaphore.release(evicetedEntries.size());
-			for(Map.Entry<K, V> entry : evicetedEntries.entrySet()) {
-				listener.onEvict(entry.getKey(), entry.getValue());
+			long start = System.nanoTime();
+			Map<K, Node<K, V>> evicetedEntries = evictionStrategy.evict(permits, cache);
+			if(!evicetedEntries.isEmpty())
+				cacheStats.recordEviction(evicetedEntries.size(), System.nanoTime()-start);
+			for(Map.Entry<K, Node<K, V>> entry : evicetedEntries.entrySet()) {
+				weightedSize.addAndGet(-entry.getValue().getWeight());
+				cancelTimer(entry.getValue());
+				notifyEvicted(entry.getKey(), entry.getValue().value);
+				spill(entry.getKey(), entry.getValue());
 			}
+			return !evicetedEntries.isEmpty();
 		}
+		return false;
 	}
 	
-	private void acquireWithEvict(int permits) {
-		while(sizeControlSemaphore!=null && !sizeControlSemaphore.tryAcquire(permits)) {
-			evict(permits);
+	private void notifyEvicted(K key, V value) {
+		long token = tracer.begin(Phase.EVICTION_LISTENER, cacheName, key);
+		try {
+			listener.onEvict(key, value);
+		}finally {
+			tracer.end(Phase.EVICTION_LISTENER, cacheName, key, token);
 		}
 	}
 	
-	public void loadAll() {
-		dataLoader.getAllEntriesLoader().get().entrySet().parallelStream().forEach(entry -> {
-			V newValue;
-			if (entry.getValue() != null && (newValue = transformer.apply(entry.getValue())) != null) {
-				acquireWithEvict(1);
-				cache.put(entry.getKey(), evictionStrategy.getNode(entry.getKey(), newValue));
+	/**
+	 * Writes the value of an evicted node to the disk tier, if there is one
+	 */
+	private void spill(K key, Node<K, V> node) {
+		V value = node.getValue();
+		if(diskTier!=null && value!=null)
+			diskTier.spill(key, value, node.getWriteTime());
+	}
+	
+	/**
+	 * Moves the value of <code>key</code> spilled to the disk tier back to the cache, with the write time
+	 * it was evicted with
+	 * @return the cached node, <code>null</code> if the disk tier has no value for <code>key</code> or it expired
+	 */
+	private Node<K, V> promote(K key) {
+		DiskTier.Spilled<V> spilled = diskTier==null ? null : diskTier.take(key);
+		if(spilled==null || (expireAfterWriteNanos!=DISABLED && System.nanoTime() - spilled.writeTime >= expireAfterWriteNanos)) {
+			return null;
+		}
+		return install(key, spilled.value, spilled.writeTime);
+	}
+	
+	/**
+	 * Promotes the keys of <code>keysToLoad</code> spilled to the disk tier into <code>result</code>, they are
+	 * removed from <code>keysToLoad</code>
+	 */
+	private void promoteAll(Set<K> keysToLoad, Map<K, V> result) {
+		if(diskTier==null) {
+			return;
+		}
+		for(Iterator<K> keys = keysToLoad.iterator(); keys.hasNext();) {
+			K key = keys.next();
+			Node<K, V> node = result.get(key)==null ? promote(key) : null;
+			if(node!=null) {
+				result.put(key, read(node));
+				keys.remove();
 			}
-		});
+		}
 	}
 	
-	private V getQuietly(K key) {
+	/**
+	 * Reserves <code>weight</code> out of the maximum weight, evicting entries until it fits
+	 * @return <code>false</code> if the weight alone exceeds the maximum weight of the cache, or if it does
+	 * 			not fit and there was nothing to evict for {@link #MAX_IDLE_EVICTIONS} attempts in a row
+	 */
+	private boolean acquireWithEvict(K key, int weight) {
+		long token = tracer.begin(Phase.ACQUIRE, cacheName, key);
+		try {
+			return acquireWithEvict(weight);
+		}finally {
+			tracer.end(Phase.ACQUIRE, cacheName, key, token);
+		}
+	}
+	
+	private boolean acquireWithEvict(int weight) {
+		if(maximumWeight==UNBOUNDED) {
+			weightedSize.addAndGet(weight);
+			return true;
+		}
+		if(weight>maximumWeight) {
+			return false;
+		}
+		int idle = 0;
+		while(true) {
+			long current = weightedSize.get();
+			if(current+weight<=maximumWeight) {
+				if(weightedSize.compareAndSet(current, current+weight))
+					return true;
+			}else if(evict(1)) {
+				idle = 0;
+			}else if(++idle>MAX_IDLE_EVICTIONS) {
+				// the weight is held by entries about to be published or removed by other threads
+				return false;
+			}else {
+				Thread.yield();
+			}
+		}
+	}
+	
+	/**
+	 * Evicts entries until the weighted size is back under the maximum weight, after a write which
+	 * grew an entry without reserving its weight
+	 */
+	private void evictToMaximumWeight() {
+		if(maximumWeight!=UNBOUNDED) {
+			while(weightedSize.get()>maximumWeight && evict(1));
+		}
+	}
+	
+	/**
+	 * Unregisters a node which is no longer mapped in the cache and gives its weight back
+	 */
+	private void removed(Node<K, V> node) {
+		evictionStrategy.applyRemove(node);
+		weightedSize.addAndGet(-node.getWeight());
+		cancelTimer(node);
+	}
+	
+	/**
+	 * Stamps a node about to be published with its write time, the timer is scheduled by 
+	 * {@link #scheduleTimer(Node)} once the node is in the map
+	 */
+	private void prepareTimer(Node<K, V> node, long writeTime) {
+		if(timerWheel!=null) {
+			node.setWriteTime(writeTime);
+			node.setAccessTime(writeTime);
+			node.setRefreshTime(writeTime);
+			node.setTimer(new TimerWheel.Timer<>(node));
+		}
+	}
+	
+	private void scheduleTimer(Node<K, V> node) {
+		if(timerWheel!=null) {
+			timerWheel.schedule(node.getTimer(), nextDeadline(node));
+		}
+	}
+	
+	private void cancelTimer(Node<K, V> node) {
+		if(timerWheel!=null && node.getTimer()!=null) {
+			timerWheel.cancel(node.getTimer());
+		}
+	}
+	
+	/**
+	 * @return the earliest time at which <code>node</code> expires or is due for a refresh
+	 */
+	private long nextDeadline(Node<K, V> node) {
+		long deadline = Long.MAX_VALUE;
+		if(expireAfterWriteNanos!=DISABLED)
+			deadline = node.getWriteTime() + expireAfterWriteNanos;
+		if(expireAfterAccessNanos!=DISABLED)
+			deadline = Math.min(deadline, node.getAccessTime() + expireAfterAccessNanos);
+		if(refreshAfterWriteNanos!=DISABLED && !node.isRefreshing())
+			deadline = Math.min(deadline, node.getRefreshTime() + refreshAfterWriteNanos);
+		return deadline;
+	}
+	
+	private boolean hasExpired(Node<K, V> node, long now) {
+		return (expireAfterWriteNanos!=DISABLED && now - node.getWriteTime() >= expireAfterWriteNanos)
+				|| (expireAfterAccessNanos!=DISABLED && now - node.getAccessTime() >= expireAfterAccessNanos);
+	}
+	
+	private boolean needsRefresh(Node<K, V> node, long now) {
+		return refreshAfterWriteNanos!=DISABLED && now - node.getRefreshTime() >= refreshAfterWriteNanos;
+	}
+	
+	private void expire(Node<K, V> node) {
+		if(cache.remove(node.getKey(), node)) {
+			removed(node);
+			notifyEvicted(node.getKey(), node.getValue());
+		}
+	}
+	
+	/**
+	 * Runs on the maintenance thread every tick of the timer wheel. A timer only fires at the earliest
+	 * deadline of its node, the node is checked again as reads may have pushed its expiration back.
+	 */
+	private void expireEntries() {
+		try {
+			long now = System.nanoTime();
+			for(Node<K, V> node : timerWheel.advance(now)) {
+				if(cache.get(node.getKey())!=node) {
+					continue;
+				}
+				if(hasExpired(node, now)) {
+					expire(node);
+				}else {
+					if(needsRefresh(node, now))
+						refresh(node);
+					scheduleTimer(node);
+				}
+			}
+		}catch (RuntimeException e) {
+			LOGGER.error("Expiration of entries of cache {} failed", cacheName, e);
+		}
+	}
+	
+	/**
+	 * Reloads the value of <code>node</code> in the background, the stale value keeps being served
+	 * until the new one is published. A failed refresh keeps the stale value and is retried once the
+	 * refresh interval elapsed again, a key no longer found in the data store is removed.
+	 */
+	private void refresh(Node<K, V> node) {
+		if(!node.startRefresh()) {
+			return;
+		}
+		K key = node.getKey();
+		CompletableFuture<D> load;
+		try {
+			load = asyncDataLoader.getSingleEntryLoader().apply(key);
+		}catch (RuntimeException e) {
+			load = new CompletableFuture<>();
+			load.completeExceptionally(e);
+		}
+		load.thenApplyAsync(data -> data==null ? null : transform(key, data), asyncDataLoader.getExecutor())
+			.whenComplete((value, error) -> {
+				try {
+					if(error!=null) {
+						LOGGER.warn("Refresh of {} in cache {} failed, keeping the stale value", key, cacheName, error);
+						node.setRefreshTime(System.nanoTime());
+					}else if(value==null) {
+						expire(node);
+					}else {
+						replace(key, v -> v==node ? value : null);
+					}
+				}finally {
+					node.endRefresh();
+					if(cache.get(key)==node)
+						scheduleTimer(node);
+				}
+			});
+	}
+	
+	/**
+	 * <pre>
+	 * Swaps in place the value of the node mapped to <code>key</code>, keeping its position in the
+	 * eviction policy. The swap counts as a write.
+	 * 
+	 * The new value is computed, re-encoded and weighed outside of the map bin lock, which is only held
+	 * to swap it in if the node is still mapped with the value it was computed from. Otherwise the
+	 * remapping is applied again to the node now mapped.
+	 * </pre>
+	 * @param remapping computes the new value from the mapped node, <code>null</code> keeps the node as is
+	 * @return the new value, <code>null</code> if nothing was replaced
+	 */
+	private V replace(K key, Function<Node<K, V>, V> remapping) {
+		while(true) {
+			Node<K, V> node = cache.get(key);
+			if(node==null) {
+				return null;
+			}
+			V current = node.getValue();
+			V computed = remapping.apply(node);
+			if(computed==null) {
+				return null;
+			}
+			V value = toStored(key, computed);
+			int weight = weigher.weigh(key, value);
+			boolean[] swapped = new boolean[1];
+			cache.computeIfPresent(key, (k, v) -> {
+				if(v==node && v.value==current) {
+					weightedSize.addAndGet(weight - v.getWeight());
+					v.setWeight(weight);
+					v.setValue(value);
+					long now = System.nanoTime();
+					v.setWriteTime(now);
+					v.setRefreshTime(now);
+					swapped[0] = true;
+				}
+				return v;
+			});
+			if(swapped[0]) {
+				scheduleTimer(node);
+				evictToMaximumWeight();
+				return value;
+			}
+		}
+	}
+	
+	/**
+	 * @return <code>value</code> as it is cached, a copy of it if the cache stores columns or encodes strings
+	 */
+	private V toStored(K key, V value) {
+		if(stringDictionary==null && columnFactory==null) {
+			return value;
+		}
+		long token = tracer.begin(Phase.TRANSFORM, cacheName, key);
+		try {
+			if(stringDictionary!=null) {
+				value = TimeSeriesEntryUtils.dictionaryEncode(value, stringDictionary, threadlocalBuilders.get(), objectSupplier);
+			}
+			if(columnFactory!=null) {
+				value = TimeSeriesEntryUtils.columnarCopy(value, columnFactory, threadlocalBuilders.get(), objectSupplier);
+			}
+			return value;
+		}finally {
+			tracer.end(Phase.TRANSFORM, cacheName, key, token);
+		}
+	}
+	
+	/**
+	 * Applies the transformer to the data loaded for <code>key</code>
+	 */
+	private V transform(K key, D data) {
+		long token = tracer.begin(Phase.TRANSFORM, cacheName, key);
+		try {
+			return transformer.apply(data);
+		}finally {
+			tracer.end(Phase.TRANSFORM, cacheName, key, token);
+		}
+	}
+	
+	/**
+	 * @return the cached node of <code>key</code>, <code>null</code> if it is absent or expired.
+	 * 			Records the access and starts a refresh if the node is due for one.
+	 */
+	private Node<K, V> getIfPresent(K key) {
 		Node<K, V> node = cache.get(key);
+		if(node==null || timerWheel==null) {
+			return node;
+		}
+		long now = System.nanoTime();
+		if(hasExpired(node, now)) {
+			expire(node);
+			return null;
+		}
+		if(expireAfterAccessNanos!=DISABLED)
+			node.setAccessTime(now);
+		if(needsRefresh(node, now))
+			refresh(node);
+		return node;
+	}
+	
+	/**
+	 * Loads every entry of the all entries loader, see {@link #loadAll(Iterator, int, int, LongConsumer)}
+	 */
+	public void loadAll() {
+		loadAll(dataLoader.getAllEntriesLoader().get().entrySet().iterator(), Runtime.getRuntime().availableProcessors(), 
+				DEFAULT_LOAD_BATCH_SIZE, null);
+	}
+	
+	/**
+	 * <pre>
+	 * Warms the cache up from <code>source</code> without holding it whole: the calling thread reads
+	 * batches of <code>batchSize</code> entries and blocks while <code>parallelism</code> batches are being
+	 * transformed and inserted, on a pool dedicated to this load. The source is read lazily, a loader
+	 * backed by a cursor only has <code>(parallelism + 1) * batchSize</code> entries on heap at a time.
+	 * </pre>
+	 * @param progress called after each batch with the number of entries processed so far, may be <code>null</code>
+	 * @return number of entries cached
+	 */
+	public long loadAll(Iterator<? extends Map.Entry<K, D>> source, int parallelism, int batchSize, LongConsumer progress) {
+		return BulkLoader.load(source, parallelism, batchSize, "tscache-loadall-" + cacheName, 
+				entry -> preload(entry.getKey(), entry.getValue()), progress);
+	}
+	
+	/**
+	 * Transforms and caches <code>data</code>, replacing any cached value of <code>key</code>
+	 * @return <code>false</code> if there is no value or it does not fit in the cache
+	 */
+	private boolean preload(K key, D data) {
+		V newValue;
+		if (data == null || (newValue = transform(key, data)) == null) {
+			return false;
+		}
+		return insert(key, newValue);
+	}
+	
+	/**
+	 * Caches <code>newValue</code>, replacing any cached value of <code>key</code>
+	 * @return <code>false</code> if the value does not fit in the cache
+	 */
+	private boolean insert(K key, V newValue) {
+		return insert(key, newValue, System.nanoTime());
+	}
+	
+	private boolean insert(K key, V newValue, long writeTime) {
+		if(diskTier!=null)
+			diskTier.invalidate(key);
+		newValue = toStored(key, newValue);
+		int weight = weigher.weigh(key, newValue);
+		if(!acquireWithEvict(key, weight)) {
+			return false;
+		}
+		Node<K, V> node = evictionStrategy.getNode(key, newValue);
+		node.setWeight(weight);
+		prepareTimer(node, writeTime);
+		Node<K, V> old = cache.put(key, node);
+		evictionStrategy.applyWrite(node);
+		if(old!=null)
+			removed(old);
+		scheduleTimer(node);
+		return true;
+	}
+	
+	/**
+	 * <pre>
+	 * Writes the cached entries to memory mapped segment files in <code>directory</code>, replacing the
+	 * snapshot it may hold, see {@link #restore(Path, Function)}. Only the state of {@link TimeSeriesEntry}
+	 * is written: key, time range, stored range and fields, not the fields of a subclass.
+	 * 
+	 * The cache stays available meanwhile, an entry cached or replaced during the snapshot may or may not be part of it.
+	 * </pre>
+	 * @param keyEncoder turns a cache key into the string it is stored as
+	 * @return number of entries written
+	 */
+	public long snapshot(Path directory, Function<? super K, String> keyEncoder) throws IOException {
+		List<SnapshotSegments.Entry> entries = new ArrayList<>(cache.size());
+		long now = System.nanoTime();
+		for(Node<K, V> node : cache.values()) {
+			V value = node.getValue();
+			if(value!=null)
+				entries.add(new SnapshotSegments.Entry(keyEncoder.apply(node.getKey()), value, 
+						timerWheel==null ? 0 : now - node.getWriteTime()));
+		}
+		return SnapshotSegments.write(directory, entries, Runtime.getRuntime().availableProcessors(), 
+				"tscache-snapshot-" + cacheName);
+	}
+	
+	/**
+	 * <pre>
+	 * Caches the entries of the snapshot <code>directory</code> holds, read in parallel from its memory mapped
+	 * segments. The transformer and the loaders are not called, values are built with the object supplier
+	 * and re-encoded the way this cache stores them. Entries replace the cached values of their key, those
+	 * which do not fit in the cache are skipped.
+	 * 
+	 * Entries keep the age they had when the snapshot was taken, plus the time elapsed since by the wall clock:
+	 * they expire and are refreshed as if they had been written then, and those already expired are skipped.
+	 * </pre>
+	 * @param keyDecoder turns a stored string back into its cache key
+	 * @return number of entries cached, 0 if <code>directory</code> holds no snapshot
+	 */
+	public long restore(Path directory, Function<String, ? extends K> keyDecoder) throws IOException {
+		return SnapshotSegments.read(directory, Runtime.getRuntime().availableProcessors(), "tscache-restore-" + cacheName, 
+				(key, age, buffer) -> {
+					V value = TimeSeriesEntryCodec.read(buffer, interval, threadlocalBuilders.get(), objectSupplier);
+					if((expireAfterWriteNanos!=DISABLED && age>=expireAfterWriteNanos)
+							|| (expireAfterAccessNanos!=DISABLED && age>=expireAfterAccessNanos)) {
+						return false;
+					}
+					return insert(keyDecoder.apply(key), value, System.nanoTime() - age);
+				});
+	}
+	
+	private V getQuietly(K key) {
+		Node<K, V> node = getIfPresent(key);
 		if(node!=null) {
 			evictionStrategy.applyRead(node);
 			return node.getValue();
@@ -215,23 +1064,70 @@ public class TSCache<K, V extends TimeSeriesEntry, D> {
 		return null;
 	}
 
-	public V get(K key) {
-		V val;
-		Node<K, V> node = cache.computeIfAbsent(key, k -> {
-			acquireWithEvict(1);
-			Optional<V> value = Optional.ofNullable(dataLoader.getSingleEntryLoader().apply(k)).map(transformer);
-			return value.isPresent() ? evictionStrategy.getNode(k, value.get()) : null;
+	/**
+	 * Returns the cached node for <code>key</code>, loading it on a miss. Concurrent misses on the
+	 * same key share one load, and the loader and eviction run outside of any map bin lock.
+	 */
+	private Node<K, V> getOrLoad(K key) {
+		Node<K, V> node = getIfPresent(key);
+		if(node!=null) {
+			return node;
+		}
+		return singleFlight.load(key, k -> {
+			Node<K, V> loaded = getIfPresent(k);
+			if(loaded!=null) {
+				return loaded;
+			}
+			Node<K, V> promoted = promote(k);
+			if(promoted!=null) {
+				return promoted;
+			}
+			Optional<V> value = Optional.ofNullable(dataLoader.getSingleEntryLoader().apply(k)).map(data -> transform(k, data));
+			return value.isPresent() ? install(k, value.get()) : null;
 		});
-		if(node==null) {
-			val = null;
-		}else {
-			val = node.getValue();
-			cacheStats.incHitCounter();
+	}
+	
+	/**
+	 * Reserves room for and publishes a freshly loaded value. If another thread published a node for
+	 * the same key in the meantime, that node wins and the reservation is given back. A value heavier
+	 * than the whole cache is returned in a detached node, without being cached.
+	 */
+	private Node<K, V> install(K key, V value) {
+		return install(key, value, System.nanoTime());
+	}
+	
+	private Node<K, V> install(K key, V value, long writeTime) {
+		value = toStored(key, value);
+		int weight = weigher.weigh(key, value);
+		if(!acquireWithEvict(key, weight)) {
+			Node<K, V> detached = new Node<>(key, value);
+			detached.setWeight(Node.DETACHED);
+			return detached;
+		}
+		Node<K, V> node = evictionStrategy.getNode(key, value);
+		node.setWeight(weight);
+		prepareTimer(node, writeTime);
+		Node<K, V> existing = cache.putIfAbsent(key, node);
+		if(existing!=null) {
+			removed(node);
+			return existing;
 		}
+		evictionStrategy.applyWrite(node);
+		scheduleTimer(node);
+		return node;
+	}
+
+	public V get(K key) {
+		V val;
+		long start = System.nanoTime();
+		Node<K, V> present = getIfPresent(key);
+		boolean cached = present!=null;
+		Node<K, V> node = cached ? present : getOrLoad(key);
 		val = node == null?null:node.getValue();
-		if(node!=null)
+		if(node!=null && !node.isDetached())
 			evictionStrategy.applyRead(node);
 		TimeSeriesEntryUtils.updateStatus(val);
+		recordLatency(cached, start);
 		return val;
 	}
 
@@ -250,22 +1146,21 @@ public class TSCache<K, V extends TimeSeriesEntry, D> {
 				}
 			}
 		}
-		if(keysToLoad.size()>allowedCacheSize) {
+		if(allowedCacheSize!=Integer.MIN_VALUE && keysToLoad.size()>allowedCacheSize) {
 			return ImmutableMap.copyOf(result);
 		}
 		try {
+			promoteAll(keysToLoad, result);
 			if (!keysToLoad.isEmpty()) {
 				Map<K, D> newEntries = Optional.ofNullable(dataLoader.getMultipleEntryLoader().apply(keysToLoad))
 						.orElseGet(Collections::emptyMap);
 				for (K key : keysToLoad) {
 					D value = newEntries.get(key);
 					if (value != null) {
-						V newValue = transformer.apply(value);
-						acquireWithEvict(1);
-						result.put(key, transformer.apply(value));
-						cache.putIfAbsent(key, evictionStrategy.getNode(key, newValue));
+						V newValue = transform(key, value);
+						result.put(key, newValue);
+						install(key, newValue);
 						TimeSeriesEntryUtils.updateStatus(newValue);
-						hits++;
 					}
 				}
 			}
@@ -285,50 +1180,84 @@ public class TSCache<K, V extends TimeSeriesEntry, D> {
 		};
 	};
 	
-	private Node<K,V> getTimeSeriesValue(K key, Node<K, V> node) {
+	/**
+	 * <pre>
+	 * Replaces the freshly loaded <code>node</code> of <code>key</code> by a node holding its value restricted to
+	 * the range of the cache. Only the first reader of a just loaded value restricts it.
+	 * 
+	 * The restricted value is built outside of any map bin lock and only published if <code>node</code> is
+	 * still mapped, a node replaced or removed meanwhile is left to the thread which did it.
+	 * </pre>
+	 */
+	private void restrict(K key, Node<K, V> node) {
 		V value = node.getValue();
+		if(TimeSeriesEntryUtils.getStatus(value)!=Status.JUST_LOADED || !TimeSeriesEntryUtils.updateStatus(value)) {
+			return;
+		}
 		if(value.getStoredStartTime().compareTo(this.start)<0 || value.getStoredEndTime().compareTo(this.end)>0) {
-			return node;
+			return;
+		}
+		long token = tracer.begin(Phase.SLICE, cacheName, key);
+		try {
+			value = TimeSeriesEntryUtils.restrictedClone(value, start, end, interval, threadlocalBuilders.get(), fieldTypeMap, 
+					objectSupplier);
+		}finally {
+			tracer.end(Phase.SLICE, cacheName, key, token);
+		}
+		value = toStored(key, value);
+		int weight = weigher.weigh(key, value);
+		Node<K, V> restricted = evictionStrategy.getNode(key, value);
+		restricted.setWeight(weight);
+		weightedSize.addAndGet(weight);
+		prepareTimer(restricted, node.getWriteTime());
+		restricted.setAccessTime(node.getAccessTime());
+		restricted.setRefreshTime(node.getRefreshTime());
+		if(cache.replace(key, node, restricted)) {
+			evictionStrategy.applyWrite(restricted);
+			removed(node);
+			scheduleTimer(restricted);
+			evictToMaximumWeight();
+		}else {
+			removed(restricted);
 		}
-		value = TimeSeriesEntryUtils.restrictedClone(value, start, end, interval, threadlocalBuilders.get(), fieldTypeMap, 
-				objectSupplier);
-		return evictionStrategy.getNode(node.getKey(), value);
 	}
 	
 	public V get(K key, LocalDateTime start, LocalDateTime end) {
 		V val;
-		Node<K, V> node = cache.computeIfAbsent(key, k -> {
-			acquireWithEvict(1);
-			Optional<V> value = Optional.ofNullable(dataLoader.getSingleEntryLoader().apply(k)).map(transformer);
-			return value.isPresent() ? evictionStrategy.getNode(k, value.get()) : null;
-		});
+		long startNanos = System.nanoTime();
+		Node<K, V> present = getIfPresent(key);
+		boolean cached = present!=null;
+		Node<K, V> node = cached ? present : getOrLoad(key);
 		
 		if(node==null) {
 			val = null;
 		}else {
 			if(TimeSeriesEntryUtils.canUseThis(node.getValue(), start, end)) {
-				if(TimeSeriesEntryUtils.getStatus(node.getValue())==Status.JUST_LOADED) {
-					cache.computeIfPresent(key, (k, v) -> {
-						if (TimeSeriesEntryUtils.updateStatus(node.getValue()))
-							return getTimeSeriesValue(key, node);
-						else
-							return v;
-					});
-				}
+				restrict(key, node);
 				val = node.getValue();
 			}else {
-				Optional<V> value = Optional.ofNullable(dataLoader.getSingleEntryLoader().apply(key)).map(transformer);
+				Optional<V> value = Optional.ofNullable(dataLoader.getSingleEntryLoader().apply(key)).map(data -> transform(key, data));
 				val = value.isPresent() ? value.get() : null;
 			}
-			cacheStats.incHitCounter();
 		}
 		val = node == null?null:node.getValue();
-		if(node!=null)
+		if(node!=null && !node.isDetached())
 			evictionStrategy.applyRead(node);
 		TimeSeriesEntryUtils.updateStatus(val);
+		recordLatency(cached, startNanos);
 		return val;
 	}
 	
+	/**
+	 * Same lookup as {@link #get(Object, LocalDateTime, LocalDateTime)}, returning a read only view over
+	 * the requested range of the cached series instead of the series, so that no field is copied
+	 * @return the view, <code>null</code> if the data store has no value for <code>key</code>
+	 */
+	public TimeSeriesView getView(K key, LocalDateTime start, LocalDateTime end) {
+		V value = get(key, start, end);
+		return value==null ? null : TimeSeriesView.of(value, start, end, interval);
+	}
+	
 	public Map<K, V> get(Set<K> keys, LocalDateTime start, LocalDateTime end) {
 		int hits = 0;
 		Map<K, V> result = Maps.newLinkedHashMap();
@@ -344,32 +1273,24 @@ public class TSCache<K, V extends TimeSeriesEntry, D> {
 				}
 			}
 		}
-		if(keysToLoad.size()>allowedCacheSize) {
+		if(allowedCacheSize!=Integer.MIN_VALUE && keysToLoad.size()>allowedCacheSize) {
 			return ImmutableMap.copyOf(result);
 		}
 		try {
+			promoteAll(keysToLoad, result);
 			if (!keysToLoad.isEmpty()) {
 				Map<K, D> newEntries = Optional.ofNullable(dataLoader.getMultipleEntryLoader().apply(keysToLoad))
 						.orElseGet(Collections::emptyMap);
 				for (K key : keysToLoad) {
 					D value = newEntries.get(key);
 					if (value != null) {
-						V newValue = transformer.apply(value);
-						acquireWithEvict(1);
+						V newValue = toStored(key, transform(key, value));
 						result.put(key, newValue);
-						Node<K, V> node = evictionStrategy.getNode(key, newValue);
-						if(cache.putIfAbsent(key, node)==null) {
-							if(TimeSeriesEntryUtils.getStatus(node.getValue())==Status.JUST_LOADED) {
-								cache.computeIfPresent(key, (k, v) -> {
-									if (TimeSeriesEntryUtils.updateStatus(node.getValue()))
-										return getTimeSeriesValue(key, node);
-									else
-										return v;
-								});
-							}
+						Node<K, V> node = install(key, newValue);
+						if(node.value==newValue) {
+							restrict(key, node);
 						}
 						TimeSeriesEntryUtils.updateStatus(newValue);
-						hits++;
 					}
 				}
 			}
@@ -379,12 +1300,218 @@ public class TSCache<K, V extends TimeSeriesEntry, D> {
 		}
 	}
 
+	private CompletableFuture<Node<K, V>> loadAsync(K key) {
+		return singleFlight.loadAsync(key, k -> {
+			Node<K, V> loaded = getIfPresent(k);
+			if(loaded!=null) {
+				return CompletableFuture.completedFuture(loaded);
+			}
+			Node<K, V> promoted = promote(k);
+			if(promoted!=null) {
+				return CompletableFuture.completedFuture(promoted);
+			}
+			return asyncDataLoader.getSingleEntryLoader().apply(k).thenApplyAsync(data -> {
+				V value = data==null ? null : transform(k, data);
+				return value==null ? null : install(k, value);
+			}, asyncDataLoader.getExecutor());
+		});
+	}
+	
+	private V read(Node<K, V> node) {
+		V val = node.getValue();
+		if(!node.isDetached())
+			evictionStrategy.applyRead(node);
+		TimeSeriesEntryUtils.updateStatus(val);
+		return val;
+	}
+	
+	/**
+	 * Non blocking variant of {@link #get(Object)}. A hit completes immediately, a miss is loaded
+	 * through the asynchronous loader and shares in-flight loads with blocking callers.
+	 */
+	public CompletableFuture<V> getAsync(K key) {
+		Node<K, V> node = getIfPresent(key);
+		if(node!=null) {
+			cacheStats.incHitCounter();
+			return CompletableFuture.completedFuture(read(node));
+		}
+		return loadAsync(key).thenApply(loaded -> loaded==null ? null : read(loaded));
+	}
+	
+	/**
+	 * Non blocking variant of {@link #get(Object, LocalDateTime, LocalDateTime)}. When the cached
+	 * entry does not cover the requested range the value is loaded again, without replacing the
+	 * cached entry.
+	 */
+	public CompletableFuture<V> getAsync(K key, LocalDateTime start, LocalDateTime end) {
+		Node<K, V> cached = getIfPresent(key);
+		if(cached!=null)
+			cacheStats.incHitCounter();
+		CompletableFuture<Node<K, V>> future = cached!=null ? CompletableFuture.completedFuture(cached) : loadAsync(key);
+		return future.thenCompose(node -> {
+			if(node==null) {
+				return CompletableFuture.completedFuture(null);
+			}
+			if(!TimeSeriesEntryUtils.canUseThis(node.getValue(), start, end)) {
+				return asyncDataLoader.getSingleEntryLoader().apply(key)
+						.thenApplyAsync(data -> data==null ? null : transform(key, data), asyncDataLoader.getExecutor());
+			}
+			restrict(key, node);
+			return CompletableFuture.completedFuture(read(node));
+		});
+	}
+	
+	/**
+	 * Non blocking variant of {@link #get(Set)}, misses are fetched with a single call of the
+	 * asynchronous multiple entry loader. Keys not found in the data store map to <code>null</code>.
+	 */
+	public CompletableFuture<Map<K, V>> getAllAsync(Set<K> keys) {
+		Map<K, V> result = Maps.newLinkedHashMap();
+		Set<K> keysToLoad = Sets.newLinkedHashSet();
+		for (K key : keys) {
+			Node<K, V> node = getIfPresent(key);
+			if(node!=null) {
+				cacheStats.incHitCounter();
+				result.put(key, read(node));
+			}else {
+				result.put(key, null);
+				keysToLoad.add(key);
+			}
+		}
+		promoteAll(keysToLoad, result);
+		if(keysToLoad.isEmpty()) {
+			return CompletableFuture.completedFuture(Collections.unmodifiableMap(result));
+		}
+		return asyncDataLoader.getMultipleEntryLoader().apply(keysToLoad).thenApplyAsync(newEntries -> {
+			if(newEntries!=null) {
+				for (K key : keysToLoad) {
+					D value = newEntries.get(key);
+					if (value != null) {
+						V newValue = transform(key, value);
+						result.put(key, newValue);
+						install(key, newValue);
+						TimeSeriesEntryUtils.updateStatus(newValue);
+					}
+				}
+			}
+			return Collections.unmodifiableMap(result);
+		}, asyncDataLoader.getExecutor());
+	}
+
+	/**
+	 * <pre>
+	 * Extends the cached series of <code>key</code> with the observations after <code>since</code>
+	 * fetched by the tail loader, instead of reloading its whole history. Cached observations after
+	 * <code>since</code> are replaced by the loaded ones, so passing a time before the end of the
+	 * cached series also picks up restated points.
+	 * 
+	 * Readers see either the previous or the extended series, never a partially extended one. Keys
+	 * which are not cached are not loaded.
+	 * </pre>
+	 * @return the extended series, <code>null</code> if <code>key</code> is not cached
+	 */
+	public V appendSince(K key, LocalDateTime since) {
+		Node<K, V> node = getIfPresent(key);
+		if(node==null) {
+			return null;
+		}
+		D data = dataLoader.getTailLoader().apply(key, since);
+		V tail = data==null ? null : transform(key, data);
+		if(tail==null) {
+			return node.getValue();
+		}
+		V appended = replace(key, v -> TimeSeriesEntryUtils.append(v.getValue(), tail, since, interval, 
+				threadlocalBuilders.get(), objectSupplier));
+		if(appended!=null) {
+			evictionStrategy.applyRead(node);
+		}
+		return appended;
+	}
+
+	/**
+	 * Records the latency of a read started at <code>start</code>, a hit if the value was <code>cached</code>
+	 */
+	private void recordLatency(boolean cached, long start) {
+		long nanos = System.nanoTime()-start;
+		if(cached) {
+			cacheStats.incHitCounter();
+			cacheStats.recordHitLatency(nanos);
+		}else {
+			cacheStats.recordMissLatency(nanos);
+		}
+	}
+
+	/**
+	 * @return the counters and latency histograms of this cache, see {@link CacheStats#snapshot()}
+	 */
+	public CacheStats getCacheStats() {
+		return cacheStats;
+	}
+
 	public String getCacheName() {
 		return cacheName;
 	}
 	
 	public void clear() {
-		this.cache.clear();
+		for(Map.Entry<K, Node<K, V>> entry : cache.entrySet()) {
+			if(cache.remove(entry.getKey(), entry.getValue()))
+				removed(entry.getValue());
+		}
+		if(diskTier!=null)
+			diskTier.clear();
+	}
+	
+	/**
+	 * @return number of entries currently cached
+	 */
+	public long size() {
+		return cache.size();
+	}
+	
+	/**
+	 * @return number of entries spilled to the disk tier, 0 without one, see {@link TSCacheBuilder#diskTier(Path, long)}
+	 */
+	public long diskTierSize() {
+		return diskTier==null ? 0 : diskTier.size();
+	}
+	
+	/**
+	 * @return sum of the weights of the cached entries, the entry count if no {@link Weigher} is set
+	 */
+	public long weightedSize() {
+		return weightedSize.get();
+	}
+	
+	/**
+	 * @return the bound on {@link #weightedSize()}, {@link Long#MAX_VALUE} if the cache is unbounded
+	 */
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+	
+	/**
+	 * Stops the background expiration and refresh of entries and the stats export, and unregisters
+	 * the MBean of the cache. The cached entries are kept, those spilled to the disk tier are dropped
+	 * with its file. A cache dropped without being closed is still collected, its background tasks then
+	 * stop and its MBean is unregistered on their next run.
+	 */
+	public void close() {
+		if(maintenance!=null) {
+			maintenance.cancel(false);
+		}
+		if(statsExport!=null) {
+			statsExport.cancel(false);
+		}
+		if(mbeanWatch!=null) {
+			mbeanWatch.cancel(false);
+		}
+		if(mbeanName!=null) {
+			CacheStatsBean.unregister(mbeanName);
+			mbeanName = null;
+		}
+		if(diskTier!=null) {
+			diskTier.close();
+		}
 	}
 
 }
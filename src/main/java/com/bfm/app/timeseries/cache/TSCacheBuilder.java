@@ -0,0 +1,446 @@
+package com.bfm.app.timeseries.cache;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.bfm.app.timeseries.TimeSeriesEntry;
+import com.bfm.app.timeseries.cache.stats.CacheTracer;
+import com.bfm.app.timeseries.cache.stats.SampledCacheTracer;
+import com.bfm.app.timeseries.cache.stats.StatsExporter;
+import com.bfm.app.timeseries.classifiers.IntervalType;
+import com.bfm.app.timeseries.column.ColumnFactory;
+import com.bfm.app.timeseries.column.CompressedColumns;
+import com.bfm.app.timeseries.column.DictionaryStringColumn;
+import com.bfm.app.timeseries.column.SlabAllocator;
+import com.bfm.app.timeseries.column.StringDictionary;
+
+/**
+ * Fluent builder for {@link TSCache}, mirrors the arguments of the {@link TSCache} constructor and
+ * adds the optional settings which are not part of it.
+ *
+ * @param <K> key type
+ * @param <V> cached time series type
+ * @param <D> type returned by the data store
+ */
+public class TSCacheBuilder<K, V extends TimeSeriesEntry, D> {
+	private String cacheName;
+	private IntervalType intervalType = IntervalType.DAILY;
+	private Function<K, D> singleEntryLoader;
+	private Function<Set<K>, Map<K, D>> multipleEntryLoader;
+	private Supplier<Map<K, D>> allEntriesLoader;
+	private BiFunction<K, LocalDateTime, D> tailLoader;
+	private Function<K, CompletableFuture<D>> asyncSingleEntryLoader;
+	private Function<Set<K>, CompletableFuture<Map<K, D>>> asyncMultipleEntryLoader;
+	private Executor executor = ForkJoinPool.commonPool();
+	private Function<D, V> transformer;
+	private int allowedCacheSize = Integer.MIN_VALUE;
+	private EvictionStrategy<K, V> evictionStrategy;
+	private EvictionListener<K, V> listener;
+	private LocalDateTime startDate;
+	private LocalDateTime endDate;
+	private Map<String, Class<?>> fieldTypeMap = new HashMap<>();
+	private Supplier<V> objectSupplier;
+	private long batchWindowNanos = -1;
+	private ColumnFactory columnFactory;
+	private StringDictionary stringDictionary;
+	private int maxBatchSize;
+	private long maximumWeight;
+	private Weigher<? super K, ? super V> weigher;
+	private long expireAfterWriteNanos = -1;
+	private long expireAfterAccessNanos = -1;
+	private long refreshAfterWriteNanos = -1;
+	private boolean registerMBean;
+	private StatsExporter statsExporter;
+	private long statsExportPeriodNanos;
+	private CacheTracer tracer = CacheTracer.NOOP;
+	private Path diskTierFile;
+	private long diskTierCapacity;
+
+	public TSCacheBuilder<K, V, D> cacheName(String cacheName) {
+		this.cacheName = cacheName;
+		return this;
+	}
+
+	public TSCacheBuilder<K, V, D> intervalType(IntervalType intervalType) {
+		this.intervalType = intervalType;
+		return this;
+	}
+
+	public TSCacheBuilder<K, V, D> singleEntryLoader(Function<K, D> singleEntryLoader) {
+		this.singleEntryLoader = singleEntryLoader;
+		return this;
+	}
+
+	public TSCacheBuilder<K, V, D> multipleEntryLoader(Function<Set<K>, Map<K, D>> multipleEntryLoader) {
+		this.multipleEntryLoader = multipleEntryLoader;
+		return this;
+	}
+
+	public TSCacheBuilder<K, V, D> allEntriesLoader(Supplier<Map<K, D>> allEntriesLoader) {
+		this.allEntriesLoader = allEntriesLoader;
+		return this;
+	}
+
+	/**
+	 * Loader of the observations of a key strictly after a given time, used by 
+	 * {@link TSCache#appendSince(Object, LocalDateTime)}
+	 */
+	public TSCacheBuilder<K, V, D> tailLoader(BiFunction<K, LocalDateTime, D> tailLoader) {
+		this.tailLoader = tailLoader;
+		return this;
+	}
+
+	/**
+	 * Loader used by {@link TSCache#getAsync(Object)}, if not set the blocking single entry loader
+	 * is run on the {@link #executor(Executor) executor}
+	 */
+	public TSCacheBuilder<K, V, D> asyncSingleEntryLoader(Function<K, CompletableFuture<D>> asyncSingleEntryLoader) {
+		this.asyncSingleEntryLoader = asyncSingleEntryLoader;
+		return this;
+	}
+
+	/**
+	 * Loader used by {@link TSCache#getAllAsync(Set)}, if not set the blocking multiple entry loader
+	 * is run on the {@link #executor(Executor) executor}
+	 */
+	public TSCacheBuilder<K, V, D> asyncMultipleEntryLoader(Function<Set<K>, CompletableFuture<Map<K, D>>> asyncMultipleEntryLoader) {
+		this.asyncMultipleEntryLoader = asyncMultipleEntryLoader;
+		return this;
+	}
+
+	/**
+	 * Executor running asynchronous loads and their post processing, defaults to {@link ForkJoinPool#commonPool()}
+	 */
+	public TSCacheBuilder<K, V, D> executor(Executor executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	public TSCacheBuilder<K, V, D> transformer(Function<D, V> transformer) {
+		this.transformer = transformer;
+		return this;
+	}
+
+	public TSCacheBuilder<K, V, D> allowedCacheSize(int allowedCacheSize) {
+		this.allowedCacheSize = allowedCacheSize;
+		return this;
+	}
+
+	public TSCacheBuilder<K, V, D> evictionStrategy(EvictionStrategy<K, V> evictionStrategy) {
+		this.evictionStrategy = evictionStrategy;
+		return this;
+	}
+
+	public TSCacheBuilder<K, V, D> listener(EvictionListener<K, V> listener) {
+		this.listener = listener;
+		return this;
+	}
+
+	public TSCacheBuilder<K, V, D> startDate(LocalDateTime startDate) {
+		this.startDate = startDate;
+		return this;
+	}
+
+	public TSCacheBuilder<K, V, D> endDate(LocalDateTime endDate) {
+		this.endDate = endDate;
+		return this;
+	}
+
+	public TSCacheBuilder<K, V, D> fieldTypeMap(Map<String, Class<?>> fieldTypeMap) {
+		this.fieldTypeMap.putAll(fieldTypeMap);
+		return this;
+	}
+
+	public TSCacheBuilder<K, V, D> addField(String name, Class<?> clazz) {
+		this.fieldTypeMap.put(name, clazz);
+		return this;
+	}
+
+	public TSCacheBuilder<K, V, D> objectSupplier(Supplier<V> objectSupplier) {
+		this.objectSupplier = objectSupplier;
+		return this;
+	}
+
+	/**
+	 * Coalesce concurrent single key misses into calls of the multiple entry loader, see 
+	 * {@link DataLoader#batchSingleEntryLoads(long, TimeUnit, int, Executor)}. Batches closed by the
+	 * window are loaded on daemon threads dedicated to them, never on the {@link #executor(Executor) executor}.
+	 */
+	public TSCacheBuilder<K, V, D> batchSingleEntryLoads(long batchWindow, TimeUnit unit, int maxBatchSize) {
+		this.batchWindowNanos = unit.toNanos(batchWindow);
+		this.maxBatchSize = maxBatchSize;
+		return this;
+	}
+
+	/**
+	 * Bounds the cache by the sum of the weights of its entries instead of the entry count given by
+	 * {@link #allowedCacheSize(int)}, e.g. with {@link Weigher#retainedBytes()} to bound it by bytes.
+	 * A {@link EvictionStrategy.WindowTinyLFUEvictionStrategy} has to be created with the same maximum weight.
+	 */
+	public TSCacheBuilder<K, V, D> maximumWeight(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+		this.maximumWeight = maximumWeight;
+		this.weigher = weigher;
+		return this;
+	}
+
+	/**
+	 * Removes entries once <code>duration</code> elapsed since they were loaded or last refreshed
+	 */
+	public TSCacheBuilder<K, V, D> expireAfterWrite(long duration, TimeUnit unit) {
+		this.expireAfterWriteNanos = unit.toNanos(duration);
+		return this;
+	}
+
+	/**
+	 * Removes entries which were not read for <code>duration</code>
+	 */
+	public TSCacheBuilder<K, V, D> expireAfterAccess(long duration, TimeUnit unit) {
+		this.expireAfterAccessNanos = unit.toNanos(duration);
+		return this;
+	}
+
+	/**
+	 * Reloads entries in the background once <code>duration</code> elapsed since they were loaded,
+	 * the stale value keeps being served until the reload completes. Should be shorter than
+	 * {@link #expireAfterWrite(long, TimeUnit)} for the cache to stay warm.
+	 */
+	public TSCacheBuilder<K, V, D> refreshAfterWrite(long duration, TimeUnit unit) {
+		this.refreshAfterWriteNanos = unit.toNanos(duration);
+		return this;
+	}
+
+	/**
+	 * Stores the integer, long and double fields of cached series in columns built by <code>factory</code>.
+	 * Cached values are copies made with the {@link #objectSupplier(Supplier) object supplier}, which
+	 * is then required. Columns are read through {@link TimeSeriesEntry#getDoubleColumn(String)} and
+	 * the like, the list getters copy them.
+	 */
+	public TSCacheBuilder<K, V, D> columns(ColumnFactory factory) {
+		this.columnFactory = factory;
+		return this;
+	}
+
+	/**
+	 * Stores the numeric fields of cached series outside of the java heap, in slabs of <code>allocator</code>
+	 * @see #columns(ColumnFactory)
+	 */
+	public TSCacheBuilder<K, V, D> offHeap(SlabAllocator allocator) {
+		return columns(allocator);
+	}
+
+	/**
+	 * Stores the numeric fields of cached series compressed, see {@link CompressedColumns}
+	 * @see #columns(ColumnFactory)
+	 */
+	public TSCacheBuilder<K, V, D> compressed() {
+		return columns(CompressedColumns.INSTANCE);
+	}
+
+	/**
+	 * Stores the string fields of cached series as codes in <code>dictionary</code>, shared by all
+	 * the series of the cache, see {@link DictionaryStringColumn}. Requires the
+	 * {@link #objectSupplier(Supplier) object supplier}, values are re-encoded in copies.
+	 */
+	public TSCacheBuilder<K, V, D> stringDictionary(StringDictionary dictionary) {
+		this.stringDictionary = dictionary;
+		return this;
+	}
+
+	/**
+	 * Registers a {@link TSCacheMXBean} of the cache under its name, unregistered by {@link TSCache#close()}
+	 */
+	public TSCacheBuilder<K, V, D> registerMBean() {
+		this.registerMBean = true;
+		return this;
+	}
+
+	/**
+	 * Calls <code>exporter</code> every <code>period</code> with the activity of the cache since the
+	 * previous export, until {@link TSCache#close()}
+	 */
+	public TSCacheBuilder<K, V, D> statsExporter(StatsExporter exporter, long period, TimeUnit unit) {
+		if(period<=0) {
+			throw new IllegalArgumentException("The export period must be positive, was " + period);
+		}
+		this.statsExporter = exporter;
+		this.statsExportPeriodNanos = unit.toNanos(period);
+		return this;
+	}
+
+	/**
+	 * Reports the phases of the reads of the cache to <code>tracer</code>, e.g. a {@link SampledCacheTracer}
+	 * to find where slow reads spend their time. Nothing is traced by default.
+	 */
+	public TSCacheBuilder<K, V, D> tracer(CacheTracer tracer) {
+		this.tracer = tracer==null ? CacheTracer.NOOP : tracer;
+		return this;
+	}
+
+	/**
+	 * <pre>
+	 * Spills the entries evicted for lack of room to a second tier of <code>capacity</code> bytes memory mapped
+	 * from <code>file</code>, checked on misses before the loaders. Entries read back are removed from the
+	 * tier and cached again, the oldest spilled entries are overwritten once the tier is full.
+	 * 
+	 * The file is truncated when the cache is built and deleted by {@link TSCache#close()}, only the state of
+	 * {@link TimeSeriesEntry} is kept in it. Requires the {@link #objectSupplier(Supplier) object supplier}.
+	 * </pre>
+	 */
+	public TSCacheBuilder<K, V, D> diskTier(Path file, long capacity) {
+		if(capacity<=0) {
+			throw new IllegalArgumentException("The capacity of the disk tier must be positive, was " + capacity);
+		}
+		this.diskTierFile = file;
+		this.diskTierCapacity = capacity;
+		return this;
+	}
+
+	public TSCache<K, V, D> build() {
+		if((columnFactory!=null || stringDictionary!=null) && objectSupplier==null) {
+			throw new IllegalArgumentException("An object supplier is required to re-encode the values of cache " + cacheName);
+		}
+		if(diskTierFile!=null && objectSupplier==null) {
+			throw new IllegalArgumentException("An object supplier is required to read back the disk tier of cache " + cacheName);
+		}
+		return new TSCache<>(this);
+	}
+
+	CacheTracer getTracer() {
+		return tracer;
+	}
+
+	Path getDiskTierFile() {
+		return diskTierFile;
+	}
+
+	long getDiskTierCapacity() {
+		return diskTierCapacity;
+	}
+
+	boolean isRegisterMBean() {
+		return registerMBean;
+	}
+
+	StatsExporter getStatsExporter() {
+		return statsExporter;
+	}
+
+	long getStatsExportPeriodNanos() {
+		return statsExportPeriodNanos;
+	}
+
+	String getCacheName() {
+		return cacheName;
+	}
+
+	IntervalType getIntervalType() {
+		return intervalType;
+	}
+
+	Function<K, D> getSingleEntryLoader() {
+		return singleEntryLoader;
+	}
+
+	Function<Set<K>, Map<K, D>> getMultipleEntryLoader() {
+		return multipleEntryLoader;
+	}
+
+	Supplier<Map<K, D>> getAllEntriesLoader() {
+		return allEntriesLoader;
+	}
+
+	BiFunction<K, LocalDateTime, D> getTailLoader() {
+		return tailLoader;
+	}
+
+	Function<K, CompletableFuture<D>> getAsyncSingleEntryLoader() {
+		return asyncSingleEntryLoader;
+	}
+
+	Function<Set<K>, CompletableFuture<Map<K, D>>> getAsyncMultipleEntryLoader() {
+		return asyncMultipleEntryLoader;
+	}
+
+	Executor getExecutor() {
+		return executor;
+	}
+
+	Function<D, V> getTransformer() {
+		return transformer;
+	}
+
+	int getAllowedCacheSize() {
+		return allowedCacheSize;
+	}
+
+	EvictionStrategy<K, V> getEvictionStrategy() {
+		return evictionStrategy;
+	}
+
+	EvictionListener<K, V> getListener() {
+		return listener;
+	}
+
+	LocalDateTime getStartDate() {
+		return startDate;
+	}
+
+	LocalDateTime getEndDate() {
+		return endDate;
+	}
+
+	Map<String, Class<?>> getFieldTypeMap() {
+		return fieldTypeMap;
+	}
+
+	Supplier<V> getObjectSupplier() {
+		return objectSupplier;
+	}
+
+	long getBatchWindowNanos() {
+		return batchWindowNanos;
+	}
+
+	int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	Weigher<? super K, ? super V> getWeigher() {
+		return weigher;
+	}
+
+	long getExpireAfterWriteNanos() {
+		return expireAfterWriteNanos;
+	}
+
+	long getExpireAfterAccessNanos() {
+		return expireAfterAccessNanos;
+	}
+
+	long getRefreshAfterWriteNanos() {
+		return refreshAfterWriteNanos;
+	}
+
+	ColumnFactory getColumnFactory() {
+		return columnFactory;
+	}
+
+	StringDictionary getStringDictionary() {
+		return stringDictionary;
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.bfm.app.timeseries.cache;
+
+/**
+ * Read only statistics of a {@link TSCache}, registered as
+ * <code>com.bfm.app.timeseries:type=TSCache,name=&lt;cacheName&gt;</code> by
+ * {@link TSCacheBuilder#registerMBean()}. Counts are totals since the cache was created, latencies
+ * are in nanoseconds.
+ */
+public interface TSCacheMXBean {
+
+	String getCacheName();
+
+	long getHitCount();
+
+	long getMissCount();
+
+	double getHitRate();
+
+	double getMissRate();
+
+	long getLoadCount();
+
+	double getLoadLatencyMean();
+
+	long getLoadLatencyP50();
+
+	long getLoadLatencyP99();
+
+	long getLoadLatencyP999();
+
+	long getEvictionCount();
+
+	long getEntryCount();
+
+	long getWeightedSize();
+
+	long getMaximumWeight();
+
+}
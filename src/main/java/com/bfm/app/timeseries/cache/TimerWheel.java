@@ -0,0 +1,112 @@
+package com.bfm.app.timeseries.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <pre>
+ * Hashed timer wheel scheduling the expiration and refresh of cache entries.
+ *
+ * Time is cut in ticks of <code>tickNanos</code>, a timer due at tick <code>t</code> is linked in
+ * bucket <code>t % buckets</code>. Advancing the wheel only visits the buckets of the ticks that
+ * elapsed, so the cost of expiration is proportional to the number of timers sharing those buckets
+ * instead of the size of the cache. Timers further away than one revolution simply stay in their
+ * bucket until a revolution reaches their deadline.
+ *
+ * Scheduling, cancelling and advancing are serialized on the wheel.
+ * </pre>
+ *
+ * @param <T> type of the scheduled items
+ */
+final class TimerWheel<T> {
+
+	private final long tickNanos;
+	private final Timer<T>[] buckets;
+	private final int mask;
+	private long currentTick;
+
+	@SuppressWarnings("unchecked")
+	TimerWheel(long tickNanos, int bucketCount, long nowNanos) {
+		int size = Integer.highestOneBit(Math.max(2, bucketCount - 1)) << 1;
+		this.tickNanos = Math.max(1, tickNanos);
+		this.buckets = (Timer<T>[]) new Timer<?>[size];
+		this.mask = size - 1;
+		for (int i = 0; i < size; i++) {
+			buckets[i] = new Timer<>(null);
+		}
+		this.currentTick = nowNanos / this.tickNanos;
+	}
+
+	/**
+	 * Schedules <code>item</code> at <code>deadlineNanos</code>, replacing any previous schedule of
+	 * <code>timer</code>
+	 */
+	synchronized void schedule(Timer<T> timer, long deadlineNanos) {
+		unlink(timer);
+		timer.deadline = deadlineNanos;
+		long tick = Math.max(deadlineNanos / tickNanos, currentTick);
+		link(buckets[(int) (tick & mask)], timer);
+	}
+
+	synchronized void cancel(Timer<T> timer) {
+		unlink(timer);
+	}
+
+	/**
+	 * Moves the wheel to <code>nowNanos</code>
+	 * @return items of the timers which are due, their timers are unscheduled
+	 */
+	synchronized List<T> advance(long nowNanos) {
+		List<T> due = new ArrayList<>();
+		long nowTick = nowNanos / tickNanos;
+		long ticks = Math.min(nowTick - currentTick, buckets.length - 1);
+		for (long tick = nowTick - ticks; tick <= nowTick; tick++) {
+			Timer<T> sentinel = buckets[(int) (tick & mask)];
+			Timer<T> timer = sentinel.next;
+			while (timer != sentinel) {
+				Timer<T> next = timer.next;
+				if (timer.deadline <= nowNanos) {
+					unlink(timer);
+					due.add(timer.item);
+				}
+				timer = next;
+			}
+		}
+		currentTick = Math.max(currentTick, nowTick);
+		return due;
+	}
+
+	private static <T> void link(Timer<T> sentinel, Timer<T> timer) {
+		timer.prev = sentinel.prev;
+		timer.next = sentinel;
+		sentinel.prev.next = timer;
+		sentinel.prev = timer;
+	}
+
+	private static <T> void unlink(Timer<T> timer) {
+		if (timer.next != null) {
+			timer.prev.next = timer.next;
+			timer.next.prev = timer.prev;
+			timer.next = timer.prev = null;
+		}
+	}
+
+	/**
+	 * Handle of an item on the wheel, reused by every (re)schedule of that item
+	 */
+	static final class Timer<T> {
+		private final T item;
+		private long deadline;
+		private Timer<T> prev;
+		private Timer<T> next;
+
+		Timer(T item) {
+			this.item = item;
+			if (item == null) {
+				// bucket sentinel
+				prev = next = this;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,36 @@
+package com.bfm.app.timeseries.cache;
+
+import com.bfm.app.timeseries.TimeSeriesEntry;
+import com.bfm.app.timeseries.TimeSeriesEntryUtils;
+
+/**
+ * Computes the weight of a cache entry, the cache keeps the sum of the weights of its entries
+ * under the configured maximum weight.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+	
+	/**
+	 * @return weight of the entry, must not be negative and must not change while the entry is cached
+	 */
+	public int weigh(K key, V value);
+	
+	/**
+	 * Every entry weighs one, the maximum weight is then an entry count
+	 */
+	public static <K, V> Weigher<K, V> singleton() {
+		return (key, value) -> 1;
+	}
+	
+	/**
+	 * Weighs a time series by the estimated number of bytes retained by its fields, see 
+	 * {@link TimeSeriesEntryUtils#estimateRetainedBytes(TimeSeriesEntry)}
+	 */
+	public static <K, V extends TimeSeriesEntry> Weigher<K, V> retainedBytes() {
+		return (key, value) -> (int) Math.min(Integer.MAX_VALUE, TimeSeriesEntryUtils.estimateRetainedBytes(value));
+	}
+
+}
@@ -1,30 +1,117 @@
 package com.bfm.app.timeseries.cache.stats;
 
-import java.util.ArrayList;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
 
+/**
+ * <pre>
+ * Counters and latency histograms of a cache. Counters are striped {@link LongAdder}s and the
+ * histograms {@link LatencyHistogram}s, so recording never serializes the threads reading and
+ * loading through the cache.
+ *
+ * {@link #snapshot()} gives the totals since the cache was created, {@link #intervalSnapshot()} the
+ * activity since its previous call, which suits periodic reporting. Neither resets what recorders see.
+ * </pre>
+ */
 public class CacheStats {
-	
-	private AtomicLong hitCounter = new AtomicLong(0);
-	private AtomicLong missCounter = new AtomicLong(0);
-	private AtomicLong totalLoadCounter = new AtomicLong();
-	private AtomicLong totalLoadTimeInMillis = new AtomicLong(0);
-	private CircularList<Long> lastHundredLoadTimes = new CircularList<>(new ArrayList<>(100));
-	
-	public void incHitCounter() {hitCounter.incrementAndGet();}
-	public void incMissCounter() {missCounter.incrementAndGet();}
+
+	private final LongSupplier entryCount;
+	private final LongSupplier weightedSize;
+
+	private final LongAdder hitCounter = new LongAdder();
+	private final LongAdder missCounter = new LongAdder();
+	private final LongAdder loadCounter = new LongAdder();
+	private final LongAdder evictionCounter = new LongAdder();
+	private final LatencyHistogram hitLatencies = new LatencyHistogram();
+	private final LatencyHistogram missLatencies = new LatencyHistogram();
+	private final LatencyHistogram loadLatencies = new LatencyHistogram();
+	private final LatencyHistogram evictionLatencies = new LatencyHistogram();
+	private final Object intervalLock = new Object();
+	/** snapshot taken by the previous {@link #intervalSnapshot()}, <code>null</code> before the first one */
+	private CacheStatsSnapshot intervalStart;
+
+	public CacheStats() {
+		this(() -> 0, () -> 0);
+	}
+
+	/**
+	 * @param entryCount gives the number of entries of the cache
+	 * @param weightedSize gives the weighted size of the cache
+	 */
+	public CacheStats(LongSupplier entryCount, LongSupplier weightedSize) {
+		this.entryCount = entryCount;
+		this.weightedSize = weightedSize;
+	}
+
+	public void incHitCounter() {hitCounter.increment();}
+	public void incMissCounter() {missCounter.increment();}
+
+	/**
+	 * @deprecated millisecond resolution, use {@link #recordLoad(long)}
+	 */
+	@Deprecated
 	public void incLoadCounter(long loadTime) {
-		totalLoadCounter.incrementAndGet();
-		totalLoadTimeInMillis.addAndGet(loadTime);
-		lastHundredLoadTimes.addElement(loadTime);
+		recordLoad(TimeUnit.MILLISECONDS.toNanos(loadTime));
 	}
-	
+
 	public void updateHitCounter(long hits) {
-		hitCounter.addAndGet(hits);
+		hitCounter.add(hits);
 	}
 
 	public void updateMissCounter(long misses) {
-		missCounter.addAndGet(misses);
-	}	
+		missCounter.add(misses);
+	}
+
+	/**
+	 * @param nanos time taken by a read served from the cache
+	 */
+	public void recordHitLatency(long nanos) {
+		hitLatencies.record(nanos);
+	}
+
+	/**
+	 * @param nanos time taken by a read which had to load the value
+	 */
+	public void recordMissLatency(long nanos) {
+		missLatencies.record(nanos);
+	}
+
+	/**
+	 * @param nanos time taken by one call of a loader
+	 */
+	public void recordLoad(long nanos) {
+		loadCounter.increment();
+		loadLatencies.record(nanos);
+	}
+
+	/**
+	 * @param count number of entries evicted in one pass
+	 * @param nanos time taken by the pass
+	 */
+	public void recordEviction(int count, long nanos) {
+		evictionCounter.add(count);
+		evictionLatencies.record(nanos);
+	}
+
+	/**
+	 * @return the totals since the creation of the cache
+	 */
+	public CacheStatsSnapshot snapshot() {
+		return new CacheStatsSnapshot(hitCounter.sum(), missCounter.sum(), loadCounter.sum(), evictionCounter.sum(),
+				entryCount.getAsLong(), weightedSize.getAsLong(), hitLatencies.snapshot(), missLatencies.snapshot(), loadLatencies.snapshot(), evictionLatencies.snapshot());
+	}
+
+	/**
+	 * @return the activity since the previous call, since the creation of the cache for the first call
+	 */
+	public CacheStatsSnapshot intervalSnapshot() {
+		synchronized (intervalLock) {
+			CacheStatsSnapshot current = snapshot();
+			CacheStatsSnapshot interval = intervalStart==null ? current : current.minus(intervalStart);
+			intervalStart = current;
+			return interval;
+		}
+	}
 
 }
@@ -0,0 +1,140 @@
+package com.bfm.app.timeseries.cache.stats;
+
+/**
+ * Immutable state of a {@link CacheStats}, since the creation of the cache or over an interval,
+ * see {@link CacheStats#snapshot()} and {@link CacheStats#intervalSnapshot()}
+ */
+public final class CacheStatsSnapshot {
+	private final long hitCount;
+	private final long missCount;
+	private final long loadCount;
+	private final long evictionCount;
+	private final long entryCount;
+	private final long weightedSize;
+	private final LatencyHistogram.Snapshot hitLatencies;
+	private final LatencyHistogram.Snapshot missLatencies;
+	private final LatencyHistogram.Snapshot loadLatencies;
+	private final LatencyHistogram.Snapshot evictionLatencies;
+
+	CacheStatsSnapshot(long hitCount, long missCount, long loadCount, long evictionCount, long entryCount, long weightedSize,
+			LatencyHistogram.Snapshot hitLatencies, LatencyHistogram.Snapshot missLatencies,
+			LatencyHistogram.Snapshot loadLatencies, LatencyHistogram.Snapshot evictionLatencies) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.loadCount = loadCount;
+		this.evictionCount = evictionCount;
+		this.entryCount = entryCount;
+		this.weightedSize = weightedSize;
+		this.hitLatencies = hitLatencies;
+		this.missLatencies = missLatencies;
+		this.loadLatencies = loadLatencies;
+		this.evictionLatencies = evictionLatencies;
+	}
+
+	/**
+	 * @return number of reads served from the cache
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return number of keys sent to the loaders
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return number of calls of the loaders
+	 */
+	public long getLoadCount() {
+		return loadCount;
+	}
+
+	/**
+	 * @return number of entries evicted
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return share of the reads served from the cache, 0 if there was none
+	 */
+	public double getHitRate() {
+		long requests = hitCount+missCount;
+		return requests==0 ? 0 : (double) hitCount/requests;
+	}
+
+	/**
+	 * @return share of the reads which had to load the value, 0 if there was none
+	 */
+	public double getMissRate() {
+		long requests = hitCount+missCount;
+		return requests==0 ? 0 : (double) missCount/requests;
+	}
+
+	/**
+	 * @return number of entries cached when the snapshot was taken
+	 */
+	public long getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * @return weighted size of the cache when the snapshot was taken
+	 */
+	public long getWeightedSize() {
+		return weightedSize;
+	}
+
+	/**
+	 * @return latencies of the reads served from the cache
+	 */
+	public LatencyHistogram.Snapshot getHitLatencies() {
+		return hitLatencies;
+	}
+
+	/**
+	 * @return latencies of the reads which had to load the value
+	 */
+	public LatencyHistogram.Snapshot getMissLatencies() {
+		return missLatencies;
+	}
+
+	/**
+	 * @return latencies of the loader calls
+	 */
+	public LatencyHistogram.Snapshot getLoadLatencies() {
+		return loadLatencies;
+	}
+
+	/**
+	 * @return latencies of the evictions, one per eviction pass
+	 */
+	public LatencyHistogram.Snapshot getEvictionLatencies() {
+		return evictionLatencies;
+	}
+
+	/**
+	 * @return the activity since <code>previous</code>, an earlier snapshot of the same stats, with the
+	 * 			entry count and weighted size of this snapshot
+	 */
+	public CacheStatsSnapshot minus(CacheStatsSnapshot previous) {
+		return new CacheStatsSnapshot(hitCount-previous.hitCount, missCount-previous.missCount,
+				loadCount-previous.loadCount, evictionCount-previous.evictionCount, entryCount, weightedSize,
+				hitLatencies.minus(previous.hitLatencies), missLatencies.minus(previous.missLatencies),
+				loadLatencies.minus(previous.loadLatencies), evictionLatencies.minus(previous.evictionLatencies));
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + hitCount + ", misses=" + missCount + ", loads=" + loadCount + ", evictions=" + evictionCount
+				+ ", entries=" + entryCount + ", weightedSize=" + weightedSize
+				+ System.lineSeparator() + "hit latencies: " + hitLatencies
+				+ System.lineSeparator() + "miss latencies: " + missLatencies
+				+ System.lineSeparator() + "load latencies: " + loadLatencies
+				+ System.lineSeparator() + "eviction latencies: " + evictionLatencies;
+	}
+}
@@ -0,0 +1,49 @@
+package com.bfm.app.timeseries.cache.stats;
+
+/**
+ * <pre>
+ * Instrumentation of the phases of a cache read, registered with TSCacheBuilder.tracer.
+ *
+ * The cache calls {@link #begin} before a phase and {@link #end} after it, on the thread running
+ * the phase, passing to <code>end</code> the token <code>begin</code> returned, so a tracer keeps no
+ * per call state. Both are called on the hot path and must be cheap, {@link #NOOP}, the default,
+ * does nothing. <code>key</code> is the key, or the set of keys of a multiple entry load.
+ * </pre>
+ */
+public interface CacheTracer {
+
+	enum Phase {
+		/** call of a loader */
+		LOAD,
+		/** transformer and encoding of a loaded value into its cached form */
+		TRANSFORM,
+		/** restriction of a cached series to the cache range */
+		SLICE,
+		/** reservation of the weight of a new entry, evicting as needed */
+		ACQUIRE,
+		/** calls of the eviction listener */
+		EVICTION_LISTENER
+	}
+
+	CacheTracer NOOP = new CacheTracer() {
+		@Override
+		public long begin(Phase phase, String cacheName, Object key) {
+			return 0;
+		}
+
+		@Override
+		public void end(Phase phase, String cacheName, Object key, long token) {
+		}
+	};
+
+	/**
+	 * @return token handed back to {@link #end}
+	 */
+	long begin(Phase phase, String cacheName, Object key);
+
+	/**
+	 * @param token returned by the {@link #begin} of this phase, also called if the phase failed
+	 */
+	void end(Phase phase, String cacheName, Object key, long token);
+
+}
@@ -0,0 +1,192 @@
+package com.bfm.app.timeseries.cache.stats;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * Log-linear histogram of latencies in nanoseconds, along the lines of HdrHistogram:
+ * 	values below 64			one bucket per value
+ * 	values in [2^e, 2^(e+1))	32 buckets of width 2^(e-5)
+ * so a value is known within 1/32 of itself, whatever its magnitude, with a fixed array of counters.
+ *
+ * Counts are striped as in {@link LongAdder}: a histogram starts with one array of counters, and
+ * a recorder whose increment is contended moves to another stripe, adding stripes up to the number
+ * of processors. Recording is then one uncontended atomic increment of a bucket and of a striped sum,
+ * recorders never wait on each other nor on readers even when their latencies fall into the same
+ * few buckets. A {@link Snapshot} sums the stripes bucket by bucket and may miss values recorded
+ * while it is taken, they show up in the next one.
+ * </pre>
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+	private static final int MAX_STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+	/** per thread hash picking its stripe, changed when the thread meets contention */
+	private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(() -> new int[] {ThreadLocalRandom.current().nextInt() | 1});
+
+	private volatile AtomicLongArray[] stripes = {new AtomicLongArray(BUCKETS)};
+	private final LongAdder total = new LongAdder();
+
+	/**
+	 * @param nanos latency to record, negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		int bucket = bucketOf(value);
+		int[] probe = PROBE.get();
+		AtomicLongArray[] stripes = this.stripes;
+		AtomicLongArray counts = stripes[probe[0] & (stripes.length-1)];
+		long count = counts.get(bucket);
+		if(!counts.compareAndSet(bucket, count, count+1)) {
+			counts.incrementAndGet(bucket);
+			// xorshift to another stripe
+			int hash = probe[0];
+			hash ^= hash << 13;
+			hash ^= hash >>> 17;
+			hash ^= hash << 5;
+			probe[0] = hash;
+			if(stripes.length<MAX_STRIPES)
+				grow(stripes);
+		}
+		total.add(value);
+	}
+
+	private synchronized void grow(AtomicLongArray[] current) {
+		if(stripes!=current) {
+			return;
+		}
+		AtomicLongArray[] grown = Arrays.copyOf(current, current.length * 2);
+		for(int i=current.length;i<grown.length;i++) {
+			grown[i] = new AtomicLongArray(BUCKETS);
+		}
+		stripes = grown;
+	}
+
+	public Snapshot snapshot() {
+		long[] snapshot = new long[BUCKETS];
+		for(AtomicLongArray counts : stripes) {
+			for(int i=0;i<BUCKETS;i++) {
+				snapshot[i] += counts.get(i);
+			}
+		}
+		return new Snapshot(snapshot, total.sum());
+	}
+
+	static int bucketOf(long value) {
+		if(value<2*SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return SUB_BUCKETS*(shift+1) + (int) (value>>>shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * @return the highest value recorded in <code>bucket</code>
+	 */
+	static long highestValueOf(int bucket) {
+		if(bucket<2*SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket/SUB_BUCKETS - 1;
+		long subBucket = bucket%SUB_BUCKETS + SUB_BUCKETS;
+		// wraps to Long.MAX_VALUE for the last bucket
+		return ((subBucket+1)<<shift) - 1;
+	}
+
+	/**
+	 * Immutable counts of a {@link LatencyHistogram}, percentiles are the highest value of the bucket
+	 * they fall in
+	 */
+	public static final class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long total;
+
+		Snapshot(long[] counts, long total) {
+			long count = 0;
+			for(long bucketCount : counts) {
+				count += bucketCount;
+			}
+			this.counts = counts;
+			this.count = count;
+			this.total = total;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return mean latency in nanoseconds, 0 if nothing was recorded
+		 */
+		public double getMean() {
+			return count==0 ? 0 : (double) total/count;
+		}
+
+		/**
+		 * @return the latency in nanoseconds that <code>percentile</code> percents of the recorded
+		 * 			latencies do not exceed, 0 if nothing was recorded
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if(count==0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+			long seen = 0;
+			for(int i=0;i<counts.length;i++) {
+				seen += counts[i];
+				if(seen>=rank) {
+					return highestValueOf(i);
+				}
+			}
+			return getMax();
+		}
+
+		public long getP50() {
+			return getValueAtPercentile(50);
+		}
+
+		public long getP99() {
+			return getValueAtPercentile(99);
+		}
+
+		public long getP999() {
+			return getValueAtPercentile(99.9);
+		}
+
+		/**
+		 * @return the highest recorded latency in nanoseconds, 0 if nothing was recorded
+		 */
+		public long getMax() {
+			for(int i=counts.length-1;i>=0;i--) {
+				if(counts[i]>0) {
+					return highestValueOf(i);
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * @return the latencies recorded since <code>previous</code>, an earlier snapshot of the same histogram
+		 */
+		public Snapshot minus(Snapshot previous) {
+			long[] difference = new long[counts.length];
+			for(int i=0;i<counts.length;i++) {
+				difference[i] = Math.max(0, counts[i]-previous.counts[i]);
+			}
+			return new Snapshot(difference, Math.max(0, total-previous.total));
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + ", mean=" + Math.round(getMean()) + "ns, p50=" + getP50() + "ns, p99=" + getP99()
+					+ "ns, p999=" + getP999() + "ns, max=" + getMax() + "ns";
+		}
+	}
+
+}
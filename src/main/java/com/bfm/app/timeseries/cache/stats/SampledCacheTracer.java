@@ -0,0 +1,86 @@
+package com.bfm.app.timeseries.cache.stats;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <pre>
+ * {@link CacheTracer} timing one phase out of <code>sampling</code> and aggregating the timings in a
+ * {@link LatencyHistogram} per cache and phase. An unsampled phase costs a random draw, a sampled one
+ * two clock reads and a histogram update. One tracer can be shared by several caches.
+ * </pre>
+ */
+public class SampledCacheTracer implements CacheTracer {
+
+	private final int sampling;
+	private final ConcurrentMap<String, LatencyHistogram[]> histograms = new ConcurrentHashMap<>();
+
+	/**
+	 * @param sampling one phase out of <code>sampling</code> is timed, 1 to time them all
+	 */
+	public SampledCacheTracer(int sampling) {
+		if(sampling<1) {
+			throw new IllegalArgumentException("sampling must be positive, was " + sampling);
+		}
+		this.sampling = sampling;
+	}
+
+	@Override
+	public long begin(Phase phase, String cacheName, Object key) {
+		if(sampling>1 && ThreadLocalRandom.current().nextInt(sampling)!=0) {
+			return 0;
+		}
+		// 0 marks an unsampled phase
+		return System.nanoTime() | 1;
+	}
+
+	@Override
+	public void end(Phase phase, String cacheName, Object key, long token) {
+		if(token==0) {
+			return;
+		}
+		long nanos = System.nanoTime()-token;
+		histograms.computeIfAbsent(String.valueOf(cacheName), name -> newHistograms())[phase.ordinal()].record(nanos);
+	}
+
+	private static LatencyHistogram[] newHistograms() {
+		LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+		for(int i=0;i<histograms.length;i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+		return histograms;
+	}
+
+	/**
+	 * @return sampled latencies of the phases of <code>cacheName</code>, the phases never sampled are absent
+	 */
+	public Map<Phase, LatencyHistogram.Snapshot> snapshot(String cacheName) {
+		Map<Phase, LatencyHistogram.Snapshot> snapshot = new EnumMap<>(Phase.class);
+		LatencyHistogram[] phases = histograms.get(cacheName);
+		if(phases!=null) {
+			for(Phase phase : Phase.values()) {
+				LatencyHistogram.Snapshot latencies = phases[phase.ordinal()].snapshot();
+				if(latencies.getCount()>0)
+					snapshot.put(phase, latencies);
+			}
+		}
+		return Collections.unmodifiableMap(snapshot);
+	}
+
+	/**
+	 * @return sampled latencies of the phases of every traced cache, by cache name
+	 */
+	public Map<String, Map<Phase, LatencyHistogram.Snapshot>> snapshot() {
+		Map<String, Map<Phase, LatencyHistogram.Snapshot>> snapshot = new TreeMap<>();
+		for(String cacheName : histograms.keySet()) {
+			snapshot.put(cacheName, snapshot(cacheName));
+		}
+		return Collections.unmodifiableMap(snapshot);
+	}
+
+}
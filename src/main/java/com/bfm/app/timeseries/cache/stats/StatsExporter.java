@@ -0,0 +1,20 @@
+package com.bfm.app.timeseries.cache.stats;
+
+/**
+ * <pre>
+ * Pushes the statistics of a cache to a metrics pipeline. Registered with
+ * TSCacheBuilder.statsExporter, it is called on a background thread at a fixed period with the
+ * activity of the cache since its previous call, readers and loaders never wait on it.
+ * A failing export is logged and retried at the next period.
+ * </pre>
+ */
+@FunctionalInterface
+public interface StatsExporter {
+
+	/**
+	 * @param cacheName name of the exported cache
+	 * @param interval activity since the previous export, with the current entry count and weighted size
+	 */
+	void export(String cacheName, CacheStatsSnapshot interval);
+
+}
@@ -0,0 +1,260 @@
+package com.bfm.app.timeseries.classifiers;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * <pre>
+ * Index of the business days between two epoch days, the <code>n</code>th business day having
+ * index <code>n</code>.
+ *
+ * The range is cut in decades. A decade {@link Segment} holds two primitive arrays:
+ * 	<code>businessDays</code>	local index -> epoch day of the business day
+ * 	<code>floorIndexes</code>	epoch day - segment start -> local index of the last business day on or before that day
+ * so index lookups, floor and ceiling are array reads, without boxing nor date comparisons.
+ *
+ * Segments are only built when a lookup first touches them. The index of the first business day of
+ * every segment is computed arithmetically (weekdays before the segment minus the holidays falling on
+ * them), so a segment never needs the previous ones. Segments are immutable and shared through a
+ * static pool between all calendars having the same weekends and the same holidays in that decade. The pool
+ * holds them weakly, a segment is dropped once no calendar references it any more.
+ * </pre>
+ */
+final class BusinessDayCalendar {
+
+	private static final int FIRST_YEAR = 1950;
+	private static final int YEARS_PER_SEGMENT = 10;
+	private static final LoadingCache<SegmentKey, Segment> SEGMENTS = CacheBuilder.newBuilder().weakValues()
+			.build(CacheLoader.from(Segment::new));
+
+	private final int weekendMask;
+	/** sorted epoch days of the holidays falling on a weekday */
+	private final long[] holidays;
+	private final long[] segmentStarts;
+	/** index of the first business day of each segment, with the total count as last element */
+	private final int[] segmentBases;
+	private final AtomicReferenceArray<Segment> segments;
+
+	/**
+	 * @param lastYear last year covered, the range ends on the 31st of December of that year, exclusive
+	 * @param weekends days of week which are never business days
+	 * @param holidays epoch days which are not business days
+	 */
+	BusinessDayCalendar(int lastYear, Set<DayOfWeek> weekends, Set<Long> holidays) {
+		int mask = 0;
+		for (DayOfWeek dayOfWeek : weekends) {
+			mask |= 1 << dayOfWeek.getValue();
+		}
+		this.weekendMask = mask;
+		int count = (lastYear - FIRST_YEAR) / YEARS_PER_SEGMENT + 1;
+		this.segmentStarts = new long[count + 1];
+		for (int i = 0; i < count; i++) {
+			segmentStarts[i] = LocalDate.of(FIRST_YEAR + i * YEARS_PER_SEGMENT, 1, 1).toEpochDay();
+		}
+		segmentStarts[count] = LocalDate.of(lastYear, 12, 31).toEpochDay();
+		this.holidays = holidays.stream().mapToLong(Long::longValue)
+				.filter(day -> !isWeekend(day) && day >= segmentStarts[0] && day < segmentStarts[count])
+				.sorted().distinct().toArray();
+		this.segmentBases = new int[count + 1];
+		for (int i = 0; i <= count; i++) {
+			segmentBases[i] = (int) (weekdaysBetween(segmentStarts[0], segmentStarts[i]) - holidaysBefore(segmentStarts[i]));
+		}
+		this.segments = new AtomicReferenceArray<>(count);
+	}
+
+	/** ISO day of week of an epoch day, 1970-01-01 being a Thursday */
+	static int dayOfWeek(long epochDay) {
+		return (int) Math.floorMod(epochDay + 3, 7L) + 1;
+	}
+
+	private boolean isWeekend(long epochDay) {
+		return (weekendMask & (1 << dayOfWeek(epochDay))) != 0;
+	}
+
+	/** number of days of <code>[from, to)</code> which are not weekends */
+	private long weekdaysBetween(long from, long to) {
+		long days = to - from;
+		long count = (days / 7) * (7 - Integer.bitCount(weekendMask));
+		for (long day = from + (days / 7) * 7; day < to; day++) {
+			if (!isWeekend(day)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private int holidaysBefore(long epochDay) {
+		int position = Arrays.binarySearch(holidays, epochDay);
+		return position >= 0 ? position : -position - 1;
+	}
+
+	int size() {
+		return segmentBases[segmentBases.length - 1];
+	}
+
+	boolean contains(long epochDay) {
+		return indexOf(epochDay) != -1;
+	}
+
+	/**
+	 * @return index of <code>epochDay</code>, -1 if it is not a business day or out of range
+	 */
+	int indexOf(long epochDay) {
+		if (!inRange(epochDay)) {
+			return -1;
+		}
+		int i = segmentOf(epochDay);
+		int local = segment(i).indexOf(epochDay);
+		return local == -1 ? -1 : segmentBases[i] + local;
+	}
+
+	/**
+	 * @return index of the last business day on or before <code>epochDay</code>
+	 */
+	int floorIndex(long epochDay) {
+		checkRange(epochDay);
+		int i = segmentOf(epochDay);
+		int floor = segmentBases[i] + segment(i).floorIndex(epochDay);
+		if (floor < 0) {
+			throw new IllegalArgumentException("No business day on or before epoch day " + epochDay);
+		}
+		return floor;
+	}
+
+	/**
+	 * @return index of the first business day on or after <code>epochDay</code>
+	 */
+	int ceilingIndex(long epochDay) {
+		checkRange(epochDay);
+		int i = segmentOf(epochDay);
+		int ceiling = segmentBases[i] + segment(i).ceilingIndex(epochDay);
+		if (ceiling >= size()) {
+			throw new IllegalArgumentException("No business day on or after epoch day " + epochDay);
+		}
+		return ceiling;
+	}
+
+	int epochDayAt(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Business day index " + index + " out of [0, " + size() + ")");
+		}
+		int position = Arrays.binarySearch(segmentBases, 0, segments.length(), index);
+		int i = position >= 0 ? position : -position - 2;
+		// skip segments without business days, which share their base with the next one
+		while (segmentBases[i + 1] <= index) {
+			i++;
+		}
+		return segment(i).epochDayAt(index - segmentBases[i]);
+	}
+
+	private int segmentOf(long epochDay) {
+		int position = Arrays.binarySearch(segmentStarts, 0, segments.length(), epochDay);
+		return position >= 0 ? position : -position - 2;
+	}
+
+	private Segment segment(int i) {
+		Segment segment = segments.get(i);
+		if (segment == null) {
+			long start = segmentStarts[i], end = segmentStarts[i + 1];
+			long[] segmentHolidays = Arrays.copyOfRange(holidays, holidaysBefore(start), holidaysBefore(end));
+			segment = SEGMENTS.getUnchecked(new SegmentKey(weekendMask, start, end, segmentHolidays));
+			segments.lazySet(i, segment);
+		}
+		return segment;
+	}
+
+	private boolean inRange(long epochDay) {
+		return epochDay >= segmentStarts[0] && epochDay < segmentStarts[segmentStarts.length - 1];
+	}
+
+	private void checkRange(long epochDay) {
+		if (!inRange(epochDay)) {
+			throw new IllegalArgumentException("Epoch day " + epochDay + " is outside of the calendar range");
+		}
+	}
+
+	private static final class SegmentKey {
+		private final int weekendMask;
+		private final long start, end;
+		private final long[] holidays;
+
+		SegmentKey(int weekendMask, long start, long end, long[] holidays) {
+			this.weekendMask = weekendMask;
+			this.start = start;
+			this.end = end;
+			this.holidays = holidays;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * (31 * weekendMask + Long.hashCode(start)) + Long.hashCode(end)) + Arrays.hashCode(holidays);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof SegmentKey))
+				return false;
+			SegmentKey other = (SegmentKey) obj;
+			return weekendMask == other.weekendMask && start == other.start && end == other.end
+					&& Arrays.equals(holidays, other.holidays);
+		}
+	}
+
+	/**
+	 * Business days of one decade, indexes are local to the segment
+	 */
+	private static final class Segment {
+		private final long start;
+		private final int[] businessDays;
+		private final int[] floorIndexes;
+
+		Segment(SegmentKey key) {
+			int days = (int) (key.end - key.start);
+			int[] business = new int[days];
+			int[] floors = new int[days];
+			int count = 0, holiday = 0;
+			for (int i = 0; i < days; i++) {
+				long day = key.start + i;
+				if (holiday < key.holidays.length && key.holidays[holiday] == day) {
+					holiday++;
+				} else if ((key.weekendMask & (1 << dayOfWeek(day))) == 0) {
+					business[count++] = (int) day;
+				}
+				floors[i] = count - 1;
+			}
+			this.start = key.start;
+			this.businessDays = Arrays.copyOf(business, count);
+			this.floorIndexes = floors;
+		}
+
+		int indexOf(long epochDay) {
+			int floor = floorIndexes[(int) (epochDay - start)];
+			return floor >= 0 && businessDays[floor] == epochDay ? floor : -1;
+		}
+
+		/** -1 if the segment has no business day on or before <code>epochDay</code> */
+		int floorIndex(long epochDay) {
+			return floorIndexes[(int) (epochDay - start)];
+		}
+
+		/** the segment size if it has no business day on or after <code>epochDay</code> */
+		int ceilingIndex(long epochDay) {
+			int floor = floorIndexes[(int) (epochDay - start)];
+			return floor >= 0 && businessDays[floor] == epochDay ? floor : floor + 1;
+		}
+
+		int epochDayAt(int index) {
+			return businessDays[index];
+		}
+	}
+
+}
@@ -2,29 +2,38 @@ package com.bfm.app.timeseries.classifiers;
 
 import java.time.DayOfWeek;
 import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.collections.CollectionUtils;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Sets;
 
 public abstract class IntervalType {
 	public static final IntervalType DAILY = new DailyInterval(null, null); 
 	
+	private static final int LAST_YEAR = 2222;
 	
-	private TreeMap<LocalDateTime, Integer> intervalRange = new TreeMap<>();
-	private ReentrantLock lock = new ReentrantLock();
+	private final BusinessDayCalendar calendar;
 	private Set<LocalDateTime> holidays;
 	private Set<DayOfWeek> weekends;
+	/** indexes of this calendar's business days which are holidays of the key calendar */
+	private final LoadingCache<IntervalType, BitSet> holidayIndexes = CacheBuilder.newBuilder().weakKeys()
+			.build(CacheLoader.from(this::holidayIndexes));
 	
 	public IntervalType(Collection<LocalDateTime> holidays, Collection<DayOfWeek> weekends) {
 		if(CollectionUtils.isEmpty(holidays)) {
@@ -39,19 +48,20 @@ public abstract class IntervalType {
 		}else {
 			this.weekends = Sets.newHashSet(weekends); 
 		}
-	}
-	
-	protected void populateIntervals() {
-		LocalDateTime start = LocalDateTime.of(1950, 01, 1, 0, 0);
-		LocalDateTime end = LocalDateTime.of(2222,12, 31, 0, 0);
-		int index = 0;
-		while(!start.isEqual(end)) {
-			if(!this.getWeekends().contains(start.getDayOfWeek())) {
-				if(!this.getHolidays().contains(start))
-					this.addEntryToInterval(start, index++);
-			}
-			start = start.plusDays(1);
+		this.calendar = populateIntervals();
+	}
+	
+	/**
+	 * Index of business days from 1950 to 2222, holidays only count if they fall at the start of a
+	 * day. Decades of the calendar are built when first looked up.
+	 */
+	private BusinessDayCalendar populateIntervals() {
+		Set<Long> holidayDays = new HashSet<>();
+		for(LocalDateTime holiday : holidays) {
+			if(holiday.toLocalTime().equals(LocalTime.MIDNIGHT))
+				holidayDays.add(holiday.toLocalDate().toEpochDay());
 		}
+		return new BusinessDayCalendar(LAST_YEAR, weekends, holidayDays);
 	}
 	
 	public boolean isHoliday(LocalDateTime time) {
@@ -70,64 +80,104 @@ public abstract class IntervalType {
 		return Collections.unmodifiableSet(weekends);
 	}
 	
+	/**
+	 * Kept for compatibility, the calendar is built lazily on lookup
+	 */
 	public IntervalType initialize() {
-		lock.lock();
-		try {
-			if(intervalRange.size()==0) {
-				populateIntervals();
-			}
-		}finally {
-			lock.unlock();
-		}
 		return this;
 	}
 	
+	/**
+	 * @return index of the business day <code>time</code> relative to the business day <code>timeOffset</code>,
+	 * 			-1 if either of them is not the start of a business day
+	 */
 	public int getIndex(LocalDateTime time, LocalDateTime timeOffset) {
-		if(intervalRange.size()==0) {
-			initialize();
-		}
-		try {
-			return intervalRange.get(time)-intervalRange.get(timeOffset);
-		}catch (NullPointerException e) {
-			return -1;
-		}
+		int index = indexOf(calendar, time), offset = indexOf(calendar, timeOffset);
+		return index==-1 || offset==-1 ? -1 : index-offset;
 	}
 	
 	public int getClosetPreviousIndex(LocalDateTime time, LocalDateTime timeOffset) {
-		if(intervalRange.size()==0) {
-			initialize();
-		}
-		return intervalRange.floorEntry(time).getValue()-intervalRange.floorEntry(timeOffset).getValue();
+		return calendar.floorIndex(epochDay(time))-calendar.floorIndex(epochDay(timeOffset));
 	}
 	
 	
 	public int getClosetNextIndex(LocalDateTime time, LocalDateTime timeOffset) {
-		if(intervalRange.size()==0) {
-			initialize();
-		}
-		return intervalRange.ceilingEntry(time).getValue()-intervalRange.ceilingEntry(timeOffset).getValue();
+		return ceilingIndex(calendar, time)-ceilingIndex(calendar, timeOffset);
 	}
 	
 	public LocalDateTime getClosestTimePrevTo(LocalDateTime time) {
-		return intervalRange.floorEntry(time).getKey();
+		return toTime(calendar.epochDayAt(calendar.floorIndex(epochDay(time))));
 	}
 	
 	public LocalDateTime getClosestTimeNextTo(LocalDateTime time) {
-		return intervalRange.ceilingEntry(time).getKey();
+		return toTime(calendar.epochDayAt(ceilingIndex(calendar, time)));
+	}
+	
+	/**
+	 * @return the business day of index <code>index</code> relative to the business day <code>timeOffset</code>
+	 */
+	public LocalDateTime getTimeAt(int index, LocalDateTime timeOffset) {
+		return toTime(calendar.epochDayAt(calendar.floorIndex(epochDay(timeOffset))+index));
+	}
+	
+	/**
+	 * <pre>
+	 * Bit <code>i</code> is set if the business day of index <code>i</code> relative to the business day
+	 * <code>timeOffset</code>, for <code>i</code> in <code>[0, length)</code>, is a holiday of <code>other</code>.
+	 * The holidays of <code>other</code> are indexed on this calendar once, every mask is then a copy
+	 * of a slice of that bitmap.
+	 * </pre>
+	 * @return an empty mask if <code>timeOffset</code> is not the start of a business day
+	 */
+	public BitSet getHolidayMask(IntervalType other, LocalDateTime timeOffset, int length) {
+		int offset = indexOf(calendar, timeOffset);
+		if(offset==-1 || length<=0) {
+			return new BitSet();
+		}
+		return holidayIndexes.getUnchecked(other).get(offset, offset+length);
+	}
+	
+	private BitSet holidayIndexes(IntervalType other) {
+		BitSet indexes = new BitSet();
+		for(LocalDateTime holiday : other.holidays) {
+			int index = indexOf(calendar, holiday);
+			if(index!=-1) {
+				indexes.set(index);
+			}
+		}
+		return indexes;
+	}
+	
+	private static int indexOf(BusinessDayCalendar calendar, LocalDateTime time) {
+		return time.toLocalTime().equals(LocalTime.MIDNIGHT) ? calendar.indexOf(epochDay(time)) : -1;
+	}
+	
+	/** a time after the start of a day is past that day's business day */
+	private static int ceilingIndex(BusinessDayCalendar calendar, LocalDateTime time) {
+		long day = epochDay(time);
+		return calendar.ceilingIndex(time.toLocalTime().equals(LocalTime.MIDNIGHT) ? day : day+1);
+	}
+	
+	private static long epochDay(LocalDateTime time) {
+		return time.toLocalDate().toEpochDay();
 	}
 	
-	protected void addEntryToInterval(LocalDateTime timeInMillis, Integer index) {
-		intervalRange.put(timeInMillis, index);
+	private static LocalDateTime toTime(long epochDay) {
+		return LocalDate.ofEpochDay(epochDay).atStartOfDay();
 	}
 	
+	/**
+	 * @return every business day and its index, built on each call
+	 */
 	public Map<LocalDateTime, Integer> getIntervalRange(){
-		return Collections.unmodifiableMap(intervalRange);
+		Map<LocalDateTime, Integer> range = new TreeMap<>();
+		for(int i=0;i<calendar.size();i++) {
+			range.put(toTime(calendar.epochDayAt(i)), i);
+		}
+		return Collections.unmodifiableMap(range);
 	}
 	
 	public Map<Integer, Long> getIntervalRange(LocalDateTime start, LocalDateTime end, LocalDateTime timeOffset, IntervalType interval) {
-		if(intervalRange.size()==0) {
-			initialize();
-		}
 		Map<Integer, Long> map = new TreeMap<>();
 //		int startIndex = getClosetNextIndex(start, timeOffset), endIndex = getClosetPreviousIndex(end, timeOffset);
 		LocalDateTime startDateTime = getClosestTimeNextTo(interval.getClosestTimeNextTo(start)), endDateTime = getClosestTimePrevTo(interval.getClosestTimePrevTo(end));
@@ -158,20 +208,6 @@ public abstract class IntervalType {
 			}
 		}
 
-		@Override
-		protected void populateIntervals() {
-			LocalDateTime start = LocalDateTime.of(1950, 01, 1, 0, 0);
-			LocalDateTime end = LocalDateTime.of(2222,12, 31, 0, 0);
-			int index = 0;
-			while(!start.isEqual(end)) {
-				if(!this.getWeekends().contains(start.getDayOfWeek())) {
-					if(!this.getHolidays().contains(start))
-						this.addEntryToInterval(start, index++);
-				}
-				start = getNext(start);
-			}
-		}
-
 		@Override
 		public LocalDateTime getNext(LocalDateTime localDate) {
 			return localDate.plusDays(1);
@@ -0,0 +1,29 @@
+package com.bfm.app.timeseries.column;
+
+/**
+ * Read only sequence of the observations of one field of a time series, index 0 being the first
+ * stored observation
+ */
+public interface Column {
+
+	/**
+	 * @return number of observations
+	 */
+	public int size();
+
+	/**
+	 * @return estimated bytes retained on the java heap by this column, 0 for a view over memory
+	 * 			owned by another object
+	 */
+	public default long heapBytes() {
+		return 0;
+	}
+
+	/**
+	 * @return bytes held outside of the java heap by this column
+	 */
+	public default long offHeapBytes() {
+		return 0;
+	}
+
+}
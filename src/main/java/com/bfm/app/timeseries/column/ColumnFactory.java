@@ -0,0 +1,30 @@
+package com.bfm.app.timeseries.column;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * Builds the immutable columns in which cached series store their numeric fields
+ *
+ * @see SlabAllocator
+ * @see CompressedColumns
+ */
+public interface ColumnFactory {
+
+	/**
+	 * @return a column holding a copy of <code>list</code>
+	 */
+	public DoubleColumn copyOf(TDoubleArrayList list);
+
+	/**
+	 * @return a column holding a copy of <code>list</code>
+	 */
+	public IntColumn copyOf(TIntArrayList list);
+
+	/**
+	 * @return a column holding a copy of <code>list</code>
+	 */
+	public LongColumn copyOf(TLongArrayList list);
+
+}
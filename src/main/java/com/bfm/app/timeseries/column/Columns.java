@@ -0,0 +1,115 @@
+package com.bfm.app.timeseries.column;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * Columns over the Trove lists backing on heap fields, the lists are not copied
+ */
+public final class Columns {
+
+	private Columns() {
+	}
+
+	public static DoubleColumn of(TDoubleArrayList list) {
+		return new DoubleColumn() {
+			@Override
+			public int size() {
+				return list.size();
+			}
+
+			@Override
+			public double get(int index) {
+				return list.get(index);
+			}
+
+			@Override
+			public double[] copyTo(int from, double[] dest, int destPos, int length) {
+				checkRange(from, length, list.size());
+				return list.toArray(dest, from, destPos, length);
+			}
+		};
+	}
+
+	public static IntColumn of(TIntArrayList list) {
+		return new IntColumn() {
+			@Override
+			public int size() {
+				return list.size();
+			}
+
+			@Override
+			public int get(int index) {
+				return list.get(index);
+			}
+
+			@Override
+			public int[] copyTo(int from, int[] dest, int destPos, int length) {
+				checkRange(from, length, list.size());
+				return list.toArray(dest, from, destPos, length);
+			}
+		};
+	}
+
+	public static LongColumn of(TLongArrayList list) {
+		return new LongColumn() {
+			@Override
+			public int size() {
+				return list.size();
+			}
+
+			@Override
+			public long get(int index) {
+				return list.get(index);
+			}
+
+			@Override
+			public long[] copyTo(int from, long[] dest, int destPos, int length) {
+				checkRange(from, length, list.size());
+				return list.toArray(dest, from, destPos, length);
+			}
+		};
+	}
+
+	/**
+	 * @return a new on heap list holding a copy of <code>column</code>
+	 */
+	public static TDoubleArrayList toList(DoubleColumn column) {
+		return new TDoubleArrayList(column.copyTo(0, new double[column.size()], 0, column.size()));
+	}
+
+	/**
+	 * @return a new on heap list holding a copy of <code>column</code>
+	 */
+	public static TIntArrayList toList(IntColumn column) {
+		return new TIntArrayList(column.copyTo(0, new int[column.size()], 0, column.size()));
+	}
+
+	/**
+	 * @return a new on heap list holding a copy of <code>column</code>
+	 */
+	public static TLongArrayList toList(LongColumn column) {
+		return new TLongArrayList(column.copyTo(0, new long[column.size()], 0, column.size()));
+	}
+
+	/**
+	 * @return heap retained by an array of <code>length</code> elements of <code>elementBytes</code> bytes
+	 */
+	static long arrayBytes(int length, int elementBytes) {
+		return (16L + (long) length * elementBytes + 7) & ~7L;
+	}
+
+	static void checkIndex(int index, int size) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of column of size " + size);
+		}
+	}
+
+	static void checkRange(int from, int length, int size) {
+		if (from < 0 || length < 0 || from + length > size) {
+			throw new IndexOutOfBoundsException("Range [" + from + ", " + (from + length) + ") out of column of size " + size);
+		}
+	}
+
+}
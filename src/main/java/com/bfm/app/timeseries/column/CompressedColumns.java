@@ -0,0 +1,480 @@
+package com.bfm.app.timeseries.column;
+
+import java.util.Arrays;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * <pre>
+ * Compressed on heap columns, cut in blocks of {@link #BLOCK_SIZE} observations encoded independently
+ * so that a read only decodes the blocks it touches.
+ *
+ * Double blocks use the XOR encoding of the Gorilla paper: the first value is stored as is, then
+ * every value is XORed with the previous one, a repeated value costs one bit and a close value
+ * only the meaningful bits of the XOR. A block holding a single value is stored as that value.
+ *
+ * Integer and long blocks store the first value and the first delta, then the deltas of the deltas,
+ * all as zig-zag varints. A run of zero deltas of deltas, i.e. a constant or linear run, is stored
+ * as its length.
+ *
+ * The last decoded block of a column is kept so that sequential reads decode each block once.
+ * </pre>
+ */
+public final class CompressedColumns implements ColumnFactory {
+	public static final int BLOCK_SIZE = 128;
+	public static final CompressedColumns INSTANCE = new CompressedColumns();
+
+	private CompressedColumns() {
+	}
+
+	@Override
+	public DoubleColumn copyOf(TDoubleArrayList list) {
+		int size = list.size();
+		BitWriter writer = new BitWriter(size);
+		long[] blockOffsets = new long[blocks(size)];
+		for (int block = 0; block < blockOffsets.length; block++) {
+			blockOffsets[block] = writer.position;
+			int from = block * BLOCK_SIZE, to = Math.min(size, from + BLOCK_SIZE);
+			long first = Double.doubleToRawLongBits(list.getQuick(from));
+			boolean constant = true;
+			for (int i = from + 1; i < to && constant; i++) {
+				constant = Double.doubleToRawLongBits(list.getQuick(i)) == first;
+			}
+			writer.write(constant ? 1 : 0, 1);
+			writer.write(first, 64);
+			if (constant) {
+				continue;
+			}
+			long previous = first;
+			int previousLeading = -1, previousTrailing = 0;
+			for (int i = from + 1; i < to; i++) {
+				long bits = Double.doubleToRawLongBits(list.getQuick(i));
+				long xor = bits ^ previous;
+				previous = bits;
+				if (xor == 0) {
+					writer.write(0, 1);
+					continue;
+				}
+				int leading = Math.min(31, Long.numberOfLeadingZeros(xor)), trailing = Long.numberOfTrailingZeros(xor);
+				if (previousLeading != -1 && leading >= previousLeading && trailing >= previousTrailing) {
+					writer.write(0b10, 2);
+					writer.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+				} else {
+					int meaningful = 64 - leading - trailing;
+					writer.write(0b11, 2);
+					writer.write(leading, 5);
+					writer.write(meaningful - 1, 6);
+					writer.write(xor >>> trailing, meaningful);
+					previousLeading = leading;
+					previousTrailing = trailing;
+				}
+			}
+		}
+		return new XorDoubleColumn(writer.toArray(), blockOffsets, size);
+	}
+
+	@Override
+	public IntColumn copyOf(TIntArrayList list) {
+		long[] values = new long[list.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = list.getQuick(i);
+		}
+		return new DeltaIntColumn(encode(values), values.length);
+	}
+
+	@Override
+	public LongColumn copyOf(TLongArrayList list) {
+		return new DeltaLongColumn(encode(list.toArray()), list.size());
+	}
+
+	private static int blocks(int size) {
+		return (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+	}
+
+	private static DeltaBlocks encode(long[] values) {
+		ByteWriter writer = new ByteWriter(values.length);
+		int[] blockOffsets = new int[blocks(values.length)];
+		for (int block = 0; block < blockOffsets.length; block++) {
+			blockOffsets[block] = writer.position;
+			int from = block * BLOCK_SIZE, to = Math.min(values.length, from + BLOCK_SIZE);
+			writer.writeSigned(values[from]);
+			if (to - from == 1) {
+				continue;
+			}
+			long delta = values[from + 1] - values[from];
+			writer.writeSigned(delta);
+			for (int i = from + 2; i < to; i++) {
+				long next = values[i] - values[i - 1];
+				long deltaOfDelta = next - delta;
+				delta = next;
+				if (deltaOfDelta != 0) {
+					writer.writeSigned(deltaOfDelta);
+					continue;
+				}
+				int run = 1;
+				while (i + 1 < to && values[i + 1] - values[i] == delta) {
+					run++;
+					i++;
+				}
+				writer.writeUnsigned(0);
+				writer.writeUnsigned(run - 1);
+			}
+		}
+		return new DeltaBlocks(writer.toArray(), blockOffsets);
+	}
+
+	/**
+	 * A decoded block, immutable once published
+	 */
+	private static final class Block<A> {
+		final int index;
+		final A values;
+
+		Block(int index, A values) {
+			this.index = index;
+			this.values = values;
+		}
+	}
+
+	static final class XorDoubleColumn implements DoubleColumn {
+		private final long[] bits;
+		private final long[] blockOffsets;
+		private final int size;
+		private volatile Block<double[]> last;
+
+		XorDoubleColumn(long[] bits, long[] blockOffsets, int size) {
+			this.bits = bits;
+			this.blockOffsets = blockOffsets;
+			this.size = size;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public double get(int index) {
+			Columns.checkIndex(index, size);
+			return block(index / BLOCK_SIZE)[index % BLOCK_SIZE];
+		}
+
+		@Override
+		public double[] copyTo(int from, double[] dest, int destPos, int length) {
+			Columns.checkRange(from, length, size);
+			for (int copied = 0; copied < length;) {
+				int index = from + copied, offset = index % BLOCK_SIZE;
+				double[] values = block(index / BLOCK_SIZE);
+				int count = Math.min(length - copied, values.length - offset);
+				System.arraycopy(values, offset, dest, destPos + copied, count);
+				copied += count;
+			}
+			return dest;
+		}
+
+		@Override
+		public long heapBytes() {
+			return 32 + Columns.arrayBytes(bits.length, Long.BYTES) + Columns.arrayBytes(blockOffsets.length, Long.BYTES);
+		}
+
+		private double[] block(int index) {
+			Block<double[]> block = last;
+			if (block == null || block.index != index) {
+				block = new Block<>(index, decode(index));
+				last = block;
+			}
+			return block.values;
+		}
+
+		private double[] decode(int block) {
+			double[] values = new double[Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE)];
+			BitReader reader = new BitReader(bits, blockOffsets[block]);
+			boolean constant = reader.read(1) == 1;
+			long previous = reader.read(64);
+			values[0] = Double.longBitsToDouble(previous);
+			if (constant) {
+				Arrays.fill(values, values[0]);
+				return values;
+			}
+			int leading = 0, trailing = 0;
+			for (int i = 1; i < values.length; i++) {
+				if (reader.read(1) == 1) {
+					if (reader.read(1) == 1) {
+						leading = (int) reader.read(5);
+						int meaningful = (int) reader.read(6) + 1;
+						trailing = 64 - leading - meaningful;
+					}
+					previous ^= reader.read(64 - leading - trailing) << trailing;
+				}
+				values[i] = Double.longBitsToDouble(previous);
+			}
+			return values;
+		}
+	}
+
+	/**
+	 * Varint encoded blocks of deltas of deltas, shared by the integer and long columns
+	 */
+	private static final class DeltaBlocks {
+		private final byte[] bytes;
+		private final int[] blockOffsets;
+
+		DeltaBlocks(byte[] bytes, int[] blockOffsets) {
+			this.bytes = bytes;
+			this.blockOffsets = blockOffsets;
+		}
+
+		long heapBytes() {
+			return 16 + Columns.arrayBytes(bytes.length, Byte.BYTES) + Columns.arrayBytes(blockOffsets.length, Integer.BYTES);
+		}
+
+		long[] decode(int block, int count) {
+			long[] values = new long[count];
+			ByteReader reader = new ByteReader(bytes, blockOffsets[block]);
+			long value = reader.readSigned();
+			values[0] = value;
+			if (count == 1) {
+				return values;
+			}
+			long delta = reader.readSigned();
+			value += delta;
+			values[1] = value;
+			for (int i = 2; i < count;) {
+				long deltaOfDelta = reader.readSigned();
+				if (deltaOfDelta == 0) {
+					for (long run = reader.readUnsigned() + 1; run > 0; run--) {
+						value += delta;
+						values[i++] = value;
+					}
+				} else {
+					delta += deltaOfDelta;
+					value += delta;
+					values[i++] = value;
+				}
+			}
+			return values;
+		}
+	}
+
+	static final class DeltaLongColumn implements LongColumn {
+		private final DeltaBlocks blocks;
+		private final int size;
+		private volatile Block<long[]> last;
+
+		DeltaLongColumn(DeltaBlocks blocks, int size) {
+			this.blocks = blocks;
+			this.size = size;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public long get(int index) {
+			Columns.checkIndex(index, size);
+			return block(index / BLOCK_SIZE)[index % BLOCK_SIZE];
+		}
+
+		@Override
+		public long[] copyTo(int from, long[] dest, int destPos, int length) {
+			Columns.checkRange(from, length, size);
+			for (int copied = 0; copied < length;) {
+				int index = from + copied, offset = index % BLOCK_SIZE;
+				long[] values = block(index / BLOCK_SIZE);
+				int count = Math.min(length - copied, values.length - offset);
+				System.arraycopy(values, offset, dest, destPos + copied, count);
+				copied += count;
+			}
+			return dest;
+		}
+
+		@Override
+		public long heapBytes() {
+			return 16 + blocks.heapBytes();
+		}
+
+		private long[] block(int index) {
+			Block<long[]> block = last;
+			if (block == null || block.index != index) {
+				block = new Block<>(index, blocks.decode(index, Math.min(BLOCK_SIZE, size - index * BLOCK_SIZE)));
+				last = block;
+			}
+			return block.values;
+		}
+	}
+
+	static final class DeltaIntColumn implements IntColumn {
+		private final DeltaBlocks blocks;
+		private final int size;
+		private volatile Block<int[]> last;
+
+		DeltaIntColumn(DeltaBlocks blocks, int size) {
+			this.blocks = blocks;
+			this.size = size;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public int get(int index) {
+			Columns.checkIndex(index, size);
+			return block(index / BLOCK_SIZE)[index % BLOCK_SIZE];
+		}
+
+		@Override
+		public int[] copyTo(int from, int[] dest, int destPos, int length) {
+			Columns.checkRange(from, length, size);
+			for (int copied = 0; copied < length;) {
+				int index = from + copied, offset = index % BLOCK_SIZE;
+				int[] values = block(index / BLOCK_SIZE);
+				int count = Math.min(length - copied, values.length - offset);
+				System.arraycopy(values, offset, dest, destPos + copied, count);
+				copied += count;
+			}
+			return dest;
+		}
+
+		@Override
+		public long heapBytes() {
+			return 16 + blocks.heapBytes();
+		}
+
+		private int[] block(int index) {
+			Block<int[]> block = last;
+			if (block == null || block.index != index) {
+				long[] decoded = blocks.decode(index, Math.min(BLOCK_SIZE, size - index * BLOCK_SIZE));
+				int[] values = new int[decoded.length];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = (int) decoded[i];
+				}
+				block = new Block<>(index, values);
+				last = block;
+			}
+			return block.values;
+		}
+	}
+
+	/**
+	 * Appends bit strings, most significant bit first
+	 */
+	private static final class BitWriter {
+		private long[] words;
+		private long position;
+
+		BitWriter(int values) {
+			words = new long[Math.max(1, values / 8)];
+		}
+
+		/**
+		 * Writes the <code>count</code> low bits of <code>value</code>, <code>count</code> in [1, 64]
+		 */
+		void write(long value, int count) {
+			if (count < 64) {
+				value &= (1L << count) - 1;
+			}
+			int word = (int) (position >>> 6), free = 64 - (int) (position & 63);
+			if (word + 1 >= words.length) {
+				words = Arrays.copyOf(words, Math.max(word + 2, words.length * 2));
+			}
+			if (count <= free) {
+				words[word] |= value << (free - count);
+			} else {
+				words[word] |= value >>> (count - free);
+				words[word + 1] |= value << (64 - (count - free));
+			}
+			position += count;
+		}
+
+		long[] toArray() {
+			return Arrays.copyOf(words, (int) ((position + 63) >>> 6));
+		}
+	}
+
+	private static final class BitReader {
+		private final long[] words;
+		private long position;
+
+		BitReader(long[] words, long position) {
+			this.words = words;
+			this.position = position;
+		}
+
+		long read(int count) {
+			int word = (int) (position >>> 6), free = 64 - (int) (position & 63);
+			long value;
+			if (count <= free) {
+				value = words[word] >>> (free - count);
+			} else {
+				int rest = count - free;
+				value = (words[word] << rest) | (words[word + 1] >>> (64 - rest));
+			}
+			position += count;
+			return count < 64 ? value & ((1L << count) - 1) : value;
+		}
+	}
+
+	/**
+	 * Appends varints, signed values being zig-zag encoded first
+	 */
+	private static final class ByteWriter {
+		private byte[] bytes;
+		private int position;
+
+		ByteWriter(int values) {
+			bytes = new byte[Math.max(16, values / 2)];
+		}
+
+		void writeSigned(long value) {
+			writeUnsigned((value << 1) ^ (value >> 63));
+		}
+
+		void writeUnsigned(long value) {
+			if (position + 10 > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(position + 10, bytes.length * 2));
+			}
+			while ((value & ~0x7FL) != 0) {
+				bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			bytes[position++] = (byte) value;
+		}
+
+		byte[] toArray() {
+			return Arrays.copyOf(bytes, position);
+		}
+	}
+
+	private static final class ByteReader {
+		private final byte[] bytes;
+		private int position;
+
+		ByteReader(byte[] bytes, int position) {
+			this.bytes = bytes;
+			this.position = position;
+		}
+
+		long readSigned() {
+			long value = readUnsigned();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		long readUnsigned() {
+			long value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = bytes[position++];
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+		}
+	}
+
+}
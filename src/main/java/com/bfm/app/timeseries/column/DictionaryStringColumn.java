@@ -0,0 +1,110 @@
+package com.bfm.app.timeseries.column;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * <pre>
+ * String field stored as the codes of its values in a shared {@link StringDictionary}: four bytes
+ * per observation instead of a reference, and one instance per distinct value across all the series
+ * sharing the dictionary.
+ *
+ * It is a {@link java.util.List} so that it can back any string field, and exposes the codes to
+ * compare or group observations without going through the strings.
+ * </pre>
+ */
+public final class DictionaryStringColumn extends AbstractList<String> implements Column, RandomAccess {
+	private final StringDictionary dictionary;
+	private final TIntArrayList codes;
+
+	public DictionaryStringColumn(StringDictionary dictionary) {
+		this(dictionary, new TIntArrayList());
+	}
+
+	public DictionaryStringColumn(StringDictionary dictionary, Collection<String> values) {
+		this(dictionary, new TIntArrayList(values.size()));
+		for(String value : values) {
+			codes.add(dictionary.encode(value));
+		}
+	}
+
+	private DictionaryStringColumn(StringDictionary dictionary, TIntArrayList codes) {
+		this.dictionary = dictionary;
+		this.codes = codes;
+	}
+
+	public StringDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * @return the dictionary code of observation <code>index</code>, {@link StringDictionary#NULL_CODE} for <code>null</code>
+	 */
+	public int getCode(int index) {
+		return codes.get(index);
+	}
+
+	/**
+	 * @return <code>true</code> if observation <code>index</code> is <code>value</code>, without decoding it
+	 */
+	public boolean is(int index, String value) {
+		int code = codes.get(index);
+		return value==null ? code==StringDictionary.NULL_CODE : code!=StringDictionary.NULL_CODE && code==dictionary.codeOf(value);
+	}
+
+	/**
+	 * Copies <code>length</code> codes from <code>from</code> into <code>dest</code> at <code>destPos</code>
+	 * @return <code>dest</code>
+	 */
+	public int[] copyCodesTo(int from, int[] dest, int destPos, int length) {
+		Columns.checkRange(from, length, codes.size());
+		return codes.toArray(dest, from, destPos, length);
+	}
+
+	/**
+	 * @return a new column holding the observations in <code>[from, to)</code>, sharing the dictionary
+	 */
+	public DictionaryStringColumn copyOfRange(int from, int to) {
+		Columns.checkRange(from, to - from, codes.size());
+		return new DictionaryStringColumn(dictionary, new TIntArrayList(codes.toArray(from, to - from)));
+	}
+
+	@Override
+	public String get(int index) {
+		return dictionary.decode(codes.get(index));
+	}
+
+	@Override
+	public int size() {
+		return codes.size();
+	}
+
+	@Override
+	public String set(int index, String value) {
+		return dictionary.decode(codes.set(index, dictionary.encode(value)));
+	}
+
+	@Override
+	public void add(int index, String value) {
+		codes.insert(index, dictionary.encode(value));
+		modCount++;
+	}
+
+	@Override
+	public String remove(int index) {
+		String removed = get(index);
+		codes.removeAt(index);
+		modCount++;
+		return removed;
+	}
+
+	/** the codes, the dictionary being shared */
+	@Override
+	public long heapBytes() {
+		return 24 + 32 + Columns.arrayBytes(codes.size(), Integer.BYTES);
+	}
+
+}
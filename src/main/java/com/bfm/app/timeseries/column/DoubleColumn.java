@@ -0,0 +1,13 @@
+package com.bfm.app.timeseries.column;
+
+public interface DoubleColumn extends Column {
+
+	public double get(int index);
+
+	/**
+	 * Copies <code>length</code> observations from <code>from</code> into <code>dest</code> at <code>destPos</code>
+	 * @return <code>dest</code>
+	 */
+	public double[] copyTo(int from, double[] dest, int destPos, int length);
+
+}
@@ -0,0 +1,13 @@
+package com.bfm.app.timeseries.column;
+
+public interface IntColumn extends Column {
+
+	public int get(int index);
+
+	/**
+	 * Copies <code>length</code> observations from <code>from</code> into <code>dest</code> at <code>destPos</code>
+	 * @return <code>dest</code>
+	 */
+	public int[] copyTo(int from, int[] dest, int destPos, int length);
+
+}
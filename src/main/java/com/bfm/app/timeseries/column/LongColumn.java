@@ -0,0 +1,13 @@
+package com.bfm.app.timeseries.column;
+
+public interface LongColumn extends Column {
+
+	public long get(int index);
+
+	/**
+	 * Copies <code>length</code> observations from <code>from</code> into <code>dest</code> at <code>destPos</code>
+	 * @return <code>dest</code>
+	 */
+	public long[] copyTo(int from, long[] dest, int destPos, int length);
+
+}
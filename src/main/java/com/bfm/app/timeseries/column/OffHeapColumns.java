@@ -0,0 +1,107 @@
+package com.bfm.app.timeseries.column;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Columns stored in a slab of a {@link SlabAllocator}, only ever read with absolute accessors so
+ * they can be shared between threads
+ */
+final class OffHeapColumns {
+
+	private OffHeapColumns() {
+	}
+
+	static abstract class OffHeapColumn implements Column {
+		final ByteBuffer slab;
+		final int size;
+
+		OffHeapColumn(ByteBuffer slab, int size) {
+			this.slab = slab;
+			this.size = size;
+		}
+
+		ByteBuffer slab() {
+			return slab;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		/** header, slab reference and size, plus the buffer object of the slab */
+		@Override
+		public long heapBytes() {
+			return 24 + 64;
+		}
+
+		@Override
+		public long offHeapBytes() {
+			return slab.capacity();
+		}
+	}
+
+	static final class OffHeapDoubleColumn extends OffHeapColumn implements DoubleColumn {
+		OffHeapDoubleColumn(ByteBuffer slab, int size) {
+			super(slab, size);
+		}
+
+		@Override
+		public double get(int index) {
+			Columns.checkIndex(index, size);
+			return slab.getDouble(index * Double.BYTES);
+		}
+
+		@Override
+		public double[] copyTo(int from, double[] dest, int destPos, int length) {
+			Columns.checkRange(from, length, size);
+			for (int i = 0; i < length; i++) {
+				dest[destPos + i] = slab.getDouble((from + i) * Double.BYTES);
+			}
+			return dest;
+		}
+	}
+
+	static final class OffHeapIntColumn extends OffHeapColumn implements IntColumn {
+		OffHeapIntColumn(ByteBuffer slab, int size) {
+			super(slab, size);
+		}
+
+		@Override
+		public int get(int index) {
+			Columns.checkIndex(index, size);
+			return slab.getInt(index * Integer.BYTES);
+		}
+
+		@Override
+		public int[] copyTo(int from, int[] dest, int destPos, int length) {
+			Columns.checkRange(from, length, size);
+			for (int i = 0; i < length; i++) {
+				dest[destPos + i] = slab.getInt((from + i) * Integer.BYTES);
+			}
+			return dest;
+		}
+	}
+
+	static final class OffHeapLongColumn extends OffHeapColumn implements LongColumn {
+		OffHeapLongColumn(ByteBuffer slab, int size) {
+			super(slab, size);
+		}
+
+		@Override
+		public long get(int index) {
+			Columns.checkIndex(index, size);
+			return slab.getLong(index * Long.BYTES);
+		}
+
+		@Override
+		public long[] copyTo(int from, long[] dest, int destPos, int length) {
+			Columns.checkRange(from, length, size);
+			for (int i = 0; i < length; i++) {
+				dest[destPos + i] = slab.getLong((from + i) * Long.BYTES);
+			}
+			return dest;
+		}
+	}
+
+}
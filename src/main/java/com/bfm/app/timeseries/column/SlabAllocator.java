@@ -0,0 +1,221 @@
+package com.bfm.app.timeseries.column;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * <pre>
+ * Allocates the memory of off heap columns in slabs carved out of direct {@link ByteBuffer} arenas.
+ *
+ * Slab sizes are rounded up to a power of two (at least {@link #MIN_SLAB_BYTES}) and recycled
+ * through one free list per size, slabs larger than an arena get a direct buffer of their own.
+ *
+ * A slab goes back to its free list once the column owning it is unreachable, rather than when the
+ * column is evicted: a reader may still hold the evicted series or a view over it, and must not see
+ * its memory reused. Unreachable columns are collected on each allocation, and again before failing
+ * an allocation when direct memory is exhausted.
+ * </pre>
+ */
+public class SlabAllocator implements ColumnFactory {
+	public static final int MIN_SLAB_BYTES = 64;
+	public static final int DEFAULT_ARENA_BYTES = 16 << 20;
+	/** largest slab, the largest power of two an int holds */
+	public static final int MAX_SLAB_BYTES = 1 << 30;
+
+	private final int arenaBytes;
+	@SuppressWarnings("unchecked")
+	private final Queue<ByteBuffer>[] freeLists = (Queue<ByteBuffer>[]) new Queue<?>[Integer.SIZE];
+	private final ReferenceQueue<Column> collected = new ReferenceQueue<>();
+	/** keeps the phantom references reachable until their column is collected */
+	private final Set<SlabReference> live = ConcurrentHashMap.newKeySet();
+	private final AtomicLong reservedBytes = new AtomicLong();
+	private final AtomicLong usedBytes = new AtomicLong();
+	private ByteBuffer arena;
+
+	public SlabAllocator() {
+		this(DEFAULT_ARENA_BYTES);
+	}
+
+	/**
+	 * @param arenaBytes size of the direct buffers slabs are carved from
+	 */
+	public SlabAllocator(int arenaBytes) {
+		if(arenaBytes<MIN_SLAB_BYTES) {
+			throw new IllegalArgumentException("arenaBytes must be at least " + MIN_SLAB_BYTES + ", was " + arenaBytes);
+		}
+		this.arenaBytes = arenaBytes;
+		for(int i=0;i<freeLists.length;i++) {
+			freeLists[i] = new ConcurrentLinkedQueue<>();
+		}
+	}
+
+	/**
+	 * @return an off heap copy of <code>list</code>
+	 */
+	@Override
+	public DoubleColumn copyOf(TDoubleArrayList list) {
+		int size = list.size();
+		ByteBuffer slab = allocate(bytes(size, Double.BYTES));
+		for(int i=0;i<size;i++) {
+			slab.putDouble(i * Double.BYTES, list.getQuick(i));
+		}
+		return track(new OffHeapColumns.OffHeapDoubleColumn(slab, size));
+	}
+
+	/**
+	 * @return an off heap copy of <code>list</code>
+	 */
+	@Override
+	public IntColumn copyOf(TIntArrayList list) {
+		int size = list.size();
+		ByteBuffer slab = allocate(bytes(size, Integer.BYTES));
+		for(int i=0;i<size;i++) {
+			slab.putInt(i * Integer.BYTES, list.getQuick(i));
+		}
+		return track(new OffHeapColumns.OffHeapIntColumn(slab, size));
+	}
+
+	/**
+	 * @return an off heap copy of <code>list</code>
+	 */
+	@Override
+	public LongColumn copyOf(TLongArrayList list) {
+		int size = list.size();
+		ByteBuffer slab = allocate(bytes(size, Long.BYTES));
+		for(int i=0;i<size;i++) {
+			slab.putLong(i * Long.BYTES, list.getQuick(i));
+		}
+		return track(new OffHeapColumns.OffHeapLongColumn(slab, size));
+	}
+
+	/**
+	 * @return direct memory reserved from the system, free slabs included
+	 */
+	public long reservedBytes() {
+		return reservedBytes.get();
+	}
+
+	/**
+	 * @return bytes of the slabs owned by reachable columns
+	 */
+	public long usedBytes() {
+		reclaim();
+		return usedBytes.get();
+	}
+
+	/**
+	 * @return bytes taken by <code>size</code> values of <code>width</code> bytes
+	 * @throws IllegalArgumentException if they do not fit in a slab
+	 */
+	private static int bytes(int size, int width) {
+		int bytes;
+		try {
+			bytes = Math.multiplyExact(size, width);
+		}catch (ArithmeticException e) {
+			bytes = Integer.MAX_VALUE;
+		}
+		if(bytes>MAX_SLAB_BYTES) {
+			throw new IllegalArgumentException("A column of " + size + " values of " + width + " bytes does not fit in a slab of "
+					+ MAX_SLAB_BYTES + " bytes");
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return a slab of at least <code>bytes</code> bytes, in native byte order
+	 * @throws OutOfMemoryError if direct memory is exhausted and no slab of that size was freed
+	 */
+	ByteBuffer allocate(int bytes) {
+		if(bytes>MAX_SLAB_BYTES) {
+			throw new IllegalArgumentException("Slabs hold at most " + MAX_SLAB_BYTES + " bytes, " + bytes + " requested");
+		}
+		reclaim();
+		int sizeClass = sizeClass(bytes);
+		int slabBytes = 1 << sizeClass;
+		ByteBuffer slab = freeLists[sizeClass].poll();
+		if(slab==null) {
+			try {
+				slab = slabBytes>arenaBytes ? reserve(slabBytes).order(ByteOrder.nativeOrder()) : carve(slabBytes);
+			}catch (OutOfMemoryError e) {
+				// the columns collected since the reclaim above may have freed a slab of this size
+				reclaim();
+				slab = freeLists[sizeClass].poll();
+				if(slab==null)
+					throw e;
+			}
+		}
+		usedBytes.addAndGet(slabBytes);
+		return slab;
+	}
+
+	private synchronized ByteBuffer carve(int slabBytes) {
+		if(arena==null || arena.remaining()<slabBytes) {
+			// the tail of the previous arena is split into free slabs rather than wasted
+			if(arena!=null) {
+				while(arena.remaining()>=MIN_SLAB_BYTES) {
+					int tail = Integer.highestOneBit(arena.remaining());
+					freeLists[sizeClass(tail)].offer(slice(arena, tail));
+				}
+			}
+			arena = reserve(arenaBytes);
+		}
+		return slice(arena, slabBytes);
+	}
+
+	/**
+	 * @throws OutOfMemoryError if direct memory is exhausted
+	 */
+	private ByteBuffer reserve(int bytes) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes);
+		reservedBytes.addAndGet(bytes);
+		return buffer;
+	}
+
+	private static ByteBuffer slice(ByteBuffer arena, int bytes) {
+		ByteBuffer slab = arena.slice();
+		slab.limit(bytes);
+		arena.position(arena.position() + bytes);
+		return slab.slice().order(ByteOrder.nativeOrder());
+	}
+
+	private static int sizeClass(int bytes) {
+		int slabBytes = Math.max(MIN_SLAB_BYTES, bytes);
+		return Integer.SIZE - Integer.numberOfLeadingZeros(slabBytes - 1);
+	}
+
+	private <C extends OffHeapColumns.OffHeapColumn> C track(C column) {
+		live.add(new SlabReference(column, collected));
+		return column;
+	}
+
+	private void reclaim() {
+		SlabReference reference;
+		while((reference = (SlabReference) collected.poll())!=null) {
+			live.remove(reference);
+			int sizeClass = sizeClass(reference.slab.capacity());
+			usedBytes.addAndGet(-(1 << sizeClass));
+			freeLists[sizeClass].offer(reference.slab);
+		}
+	}
+
+	private static final class SlabReference extends PhantomReference<Column> {
+		private final ByteBuffer slab;
+
+		SlabReference(OffHeapColumns.OffHeapColumn column, ReferenceQueue<Column> queue) {
+			super(column, queue);
+			this.slab = column.slab();
+		}
+	}
+
+}
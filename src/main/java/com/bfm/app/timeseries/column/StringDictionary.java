@@ -0,0 +1,70 @@
+package com.bfm.app.timeseries.column;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <pre>
+ * Append only dictionary giving every distinct string a dense <code>int</code> code, shared by the
+ * {@link DictionaryStringColumn}s of a cache or of a field so that each distinct value is held once.
+ *
+ * Lookups by code are lock free, new values are added under the dictionary lock. Codes are never
+ * reused, a dictionary grows with the number of distinct values it ever saw.
+ * </pre>
+ */
+public final class StringDictionary {
+	/** code of <code>null</code> */
+	public static final int NULL_CODE = -1;
+
+	private final ConcurrentMap<String, Integer> codes = new ConcurrentHashMap<>();
+	private volatile String[] values = new String[16];
+	private int size;
+
+	/**
+	 * @return the code of <code>value</code>, added to the dictionary if it is new
+	 */
+	public int encode(String value) {
+		if(value==null) {
+			return NULL_CODE;
+		}
+		Integer code = codes.get(value);
+		return code!=null ? code : add(value);
+	}
+
+	/**
+	 * @return the code of <code>value</code>, {@link #NULL_CODE} if the dictionary does not hold it
+	 */
+	public int codeOf(String value) {
+		Integer code = value==null ? null : codes.get(value);
+		return code==null ? NULL_CODE : code;
+	}
+
+	public String decode(int code) {
+		return code==NULL_CODE ? null : values[code];
+	}
+
+	/**
+	 * @return number of distinct values
+	 */
+	public int size() {
+		return codes.size();
+	}
+
+	private synchronized int add(String value) {
+		Integer code = codes.get(value);
+		if(code!=null) {
+			return code;
+		}
+		String[] current = values;
+		if(size==current.length) {
+			current = Arrays.copyOf(current, size * 2);
+		}
+		current[size] = value;
+		// the array is published before the code so that a reader of the code sees the value
+		values = current;
+		codes.put(value, size);
+		return size++;
+	}
+
+}
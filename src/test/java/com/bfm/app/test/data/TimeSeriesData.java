@@ -0,0 +1,36 @@
+package com.bfm.app.test.data;
+
+import java.time.LocalDateTime;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntUnaryOperator;
+
+import com.bfm.app.timeseries.TimeSeriesEntry;
+import com.bfm.app.timeseries.TimeSeriesEntryBuilder;
+import com.bfm.app.timeseries.classifiers.IntervalType;
+
+/**
+ * Daily series of the key "ABC" with a double "prices", an int "volumes" and a string "ratings" field
+ */
+public class TimeSeriesData {
+
+	private TimeSeriesData() {
+	}
+
+	/**
+	 * @param size number of business days stored from <code>start</code>, the fields of day <code>i</code> are
+	 * 			computed in the order prices, volumes, ratings
+	 */
+	public static TimeSeriesEntry prices(LocalDateTime start, LocalDateTime end, int size, IntToDoubleFunction prices,
+			IntUnaryOperator volumes, IntFunction<String> ratings) {
+		TimeSeriesEntry ts = new TimeSeriesEntryBuilder<>().key("ABC").interval(IntervalType.DAILY)
+				.addField("prices", Double.class).addField("volumes", Integer.class).addField("ratings", String.class)
+				.startTime(start).endTime(end).storedStartTime(start).storedEndTime(end).build();
+		for(int i=0;i<size;i++) {
+			ts.getDoubleField("prices").add(prices.applyAsDouble(i));
+			ts.getIntField("volumes").add(volumes.applyAsInt(i));
+			ts.getStringField("ratings").add(ratings.apply(i));
+		}
+		return ts;
+	}
+}
@@ -0,0 +1,75 @@
+package com.bfm.app.test.timeseries;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoField;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.bfm.app.test.data.TimeSeriesData;
+import com.bfm.app.timeseries.TimeSeriesEntry;
+import com.bfm.app.timeseries.classifiers.IntervalType;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+public class TimeSeriesApplyTest {
+
+	/** Monday */
+	private static final LocalDateTime START = LocalDate.of(2019, 1, 7).atStartOfDay();
+	/** Friday, 20 business days from START */
+	private static final LocalDateTime END = LocalDate.of(2019, 2, 1).atStartOfDay();
+
+	/**
+	 * the price of day <code>i</code> is <code>i</code>, its volume <code>10 * i</code>
+	 */
+	private static TimeSeriesEntry getData() {
+		return TimeSeriesData.prices(START, END, 20, i -> i, i -> 10 * i, i -> "R" + i);
+	}
+
+	@Test
+	public void testApply() {
+		Map<String, Object> functions = new HashMap<>();
+		functions.put("prices", (DoubleUnaryOperator) price -> price * 2);
+		functions.put("volumes", (Function<Integer, Integer>) volume -> volume + 1);
+		LocalDateTime from = LocalDate.of(2019, 1, 12).atStartOfDay();
+		TimeSeriesEntry applied = getData().apply(from, LocalDate.of(2019, 1, 18).atStartOfDay(), IntervalType.DAILY, functions);
+		Assert.assertEquals(LocalDate.of(2019, 1, 14).atStartOfDay(), applied.getStoredStartTime());
+		Assert.assertEquals(LocalDate.of(2019, 1, 18).atStartOfDay(), applied.getStoredEndTime());
+		Assert.assertEquals(new TDoubleArrayList(new double[] {10, 12, 14, 16, 18}), applied.getDoubleField("prices"));
+		Assert.assertEquals(new TIntArrayList(new int[] {51, 61, 71, 81, 91}), applied.getIntField("volumes"));
+		Assert.assertEquals("R5", applied.getStringField("ratings").get(0));
+	}
+
+	@Test
+	public void testApplyWithFilterAndStep() {
+		Map<String, Object> predicates = new HashMap<>();
+		predicates.put("prices", (DoublePredicate) price -> price % 2 == 0);
+		TimeSeriesEntry filtered = getData().applyWithFilter(START, END, IntervalType.DAILY, new HashMap<>(), predicates);
+		TDoubleArrayList prices = filtered.getDoubleField("prices");
+		Assert.assertEquals(20, prices.size());
+		Assert.assertEquals(4d, prices.get(4), 0d);
+		Assert.assertTrue(Double.isNaN(prices.get(5)));
+		Assert.assertEquals(50, filtered.getIntField("volumes").get(5));
+
+		// every 7 days from the first business day on or after the Sunday
+		TimeSeriesEntry weekly = getData().apply(LocalDate.of(2019, 1, 13).atStartOfDay(), END, IntervalType.DAILY,
+				new HashMap<>(), 7, ChronoField.DAY_OF_MONTH);
+		Assert.assertEquals(new TDoubleArrayList(new double[] {5, 10, 15}), weekly.getDoubleField("prices"));
+		Assert.assertEquals(LocalDate.of(2019, 1, 14).atStartOfDay(), weekly.getStoredStartTime());
+		Assert.assertEquals(LocalDate.of(2019, 1, 28).atStartOfDay(), weekly.getStoredEndTime());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsWrongOperatorType() {
+		Map<String, Object> functions = new HashMap<>();
+		functions.put("prices", "not a function");
+		getData().apply(START, END, IntervalType.DAILY, functions);
+	}
+}
@@ -14,6 +14,7 @@ import org.junit.Test;
 import com.bfm.app.test.data.TestConstants;
 import com.bfm.app.timeseries.TimeSeriesEntry;
 import com.bfm.app.timeseries.TimeSeriesEntryBuilder;
+import com.bfm.app.timeseries.TimeSeriesEntryUtils;
 import com.bfm.app.timeseries.classifiers.IntervalType;
 import com.bfm.app.timeseries.parametric.ParametricTimeSeries;
 
@@ -68,5 +69,63 @@ public class TimeSeriesEntryTest {
 		double[] actual = sampledEntry.getDoubleField("deltas").toArray();
 		Assert.assertTrue(Arrays.equals(ll.toArray(), actual));
 	}
+	
+	@Test
+	public void testSampleSkipsHolidaysOfTheTargetCalendar() {
+		ParametricTimeSeries ts = getData();
+		IntervalType regional = new IntervalType.DailyInterval(Arrays.asList(LocalDate.of(2018, 1, 26).atStartOfDay(), 
+				LocalDate.of(2018, 2, 1).atStartOfDay()), null);
+		TDoubleArrayList expected = new TDoubleArrayList();
+		for(int i=2240;i<2262;i++) {
+			if(i==2259) continue; //skipping 26th Jan
+			expected.add(ts.getDeltas().get(i));
+		}
+		TimeSeriesEntry sampledEntry = ts.sample(LocalDate.of(2018, 1, 1).atStartOfDay(), LocalDate.of(2018, 1, 31).atStartOfDay(), regional);
+		Assert.assertEquals(expected, sampledEntry.getDoubleField("deltas"));
+		Assert.assertEquals(expected.size(), sampledEntry.getDoubleField("values").size());
+	}
+	
+	private static ParametricTimeSeries series(LocalDate storedStart, LocalDate storedEnd, double... deltas) {
+		TimeSeriesEntryBuilder<ParametricTimeSeries> builder = new TimeSeriesEntryBuilder<>();
+		ParametricTimeSeries ts = builder.key("ABC").interval(IntervalType.DAILY).objectBuilder(ParametricTimeSeries::new)
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.startTime(LocalDate.of(2019, 1, 7).atStartOfDay()).endTime(storedEnd.atStartOfDay())
+				.storedStartTime(storedStart.atStartOfDay()).storedEndTime(storedEnd.atStartOfDay()).build();
+		for(double delta : deltas) {
+			ts.addDelta(delta);
+			ts.addValue(delta);
+		}
+		return ts;
+	}
+	
+	@Test
+	public void testAppendAlignsTheTailOnItsStoredStart() {
+		ParametricTimeSeries original = series(LocalDate.of(2019, 1, 7), LocalDate.of(2019, 1, 11), 1, 2, 3, 4, 5);
+		// the 14th and 15th were not published, the tail starts on the 16th
+		ParametricTimeSeries tail = series(LocalDate.of(2019, 1, 16), LocalDate.of(2019, 1, 17), 8, 9);
+		ParametricTimeSeries appended = TimeSeriesEntryUtils.append(original, tail, LocalDate.of(2019, 1, 14).atStartOfDay(), 
+				IntervalType.DAILY, new TimeSeriesEntryBuilder<>(), ParametricTimeSeries::new);
+		TDoubleArrayList deltas = appended.getDeltas();
+		Assert.assertEquals(9, deltas.size());
+		Assert.assertEquals(5d, deltas.get(4), 0d);
+		Assert.assertEquals(deltas.getNoEntryValue(), deltas.get(5), 0d);
+		Assert.assertEquals(deltas.getNoEntryValue(), deltas.get(6), 0d);
+		int index = IntervalType.DAILY.getIndex(LocalDate.of(2019, 1, 16).atStartOfDay(), appended.getStoredStartTime());
+		Assert.assertEquals(8d, deltas.get(index), 0d);
+		Assert.assertEquals(9d, deltas.get(8), 0d);
+		Assert.assertEquals(LocalDate.of(2019, 1, 17).atStartOfDay(), appended.getStoredEndTime());
+		// restated points after since are replaced
+		ParametricTimeSeries restated = TimeSeriesEntryUtils.append(original, series(LocalDate.of(2019, 1, 10), 
+				LocalDate.of(2019, 1, 11), 40, 50), LocalDate.of(2019, 1, 9).atStartOfDay(), IntervalType.DAILY, 
+				new TimeSeriesEntryBuilder<>(), ParametricTimeSeries::new);
+		Assert.assertEquals(TDoubleArrayList.wrap(new double[] {1, 2, 3, 40, 50}), restated.getDeltas());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testAppendRejectsATailStartingBeforeTheSeries() {
+		ParametricTimeSeries original = series(LocalDate.of(2019, 1, 8), LocalDate.of(2019, 1, 11), 2, 3, 4, 5);
+		TimeSeriesEntryUtils.append(original, series(LocalDate.of(2019, 1, 7), LocalDate.of(2019, 1, 14), 1, 2, 3, 4, 5, 6), 
+				LocalDate.of(2019, 1, 7).atStartOfDay(), IntervalType.DAILY, new TimeSeriesEntryBuilder<>(), ParametricTimeSeries::new);
+	}
 
 }
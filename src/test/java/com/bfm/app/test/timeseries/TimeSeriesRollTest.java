@@ -0,0 +1,122 @@
+package com.bfm.app.test.timeseries;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BinaryOperator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.bfm.app.test.data.TimeSeriesData;
+import com.bfm.app.timeseries.RollingStatistic;
+import com.bfm.app.timeseries.TimeSeriesEntry;
+import com.bfm.app.timeseries.classifiers.IntervalType;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+public class TimeSeriesRollTest {
+
+	private static final int SIZE = 300;
+	private static final int WINDOW = 20;
+	private static final LocalDateTime START = LocalDate.of(2019, 1, 7).atStartOfDay();
+	/** on or after the last of the SIZE business days from START */
+	private static final LocalDateTime END = LocalDate.of(2020, 3, 1).atStartOfDay();
+
+	private static TimeSeriesEntry getData() {
+		Random random = new Random(3);
+		return TimeSeriesData.prices(START, END, SIZE, i -> i==150 ? Double.NaN : 100 + random.nextGaussian(),
+				i -> random.nextInt(1000), i -> String.valueOf((char) ('A' + random.nextInt(3))));
+	}
+
+	/**
+	 * Statistic of the values at <code>[max(0, i - WINDOW + 1), i]</code>
+	 */
+	private static double naive(RollingStatistic statistic, TDoubleArrayList values, int i) {
+		int from = Math.max(0, i-WINDOW+1), n = i-from+1;
+		double sum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for(int j=from;j<=i;j++) {
+			sum += values.get(j);
+			min = Math.min(min, values.get(j));
+			max = Math.max(max, values.get(j));
+		}
+		double mean = sum/n, squares = 0;
+		for(int j=from;j<=i;j++) {
+			squares += (values.get(j)-mean)*(values.get(j)-mean);
+		}
+		switch(statistic) {
+		case SUM: return sum;
+		case MEAN: return mean;
+		case VARIANCE: return n<2 ? Double.NaN : squares/(n-1);
+		case STDDEV: return n<2 ? Double.NaN : Math.sqrt(squares/(n-1));
+		case MIN: return Double.isNaN(sum) ? Double.NaN : min;
+		default: return Double.isNaN(sum) ? Double.NaN : max;
+		}
+	}
+
+	@Test
+	public void testStatisticsMatchNaiveWindows() {
+		TimeSeriesEntry ts = getData();
+		TDoubleArrayList prices = ts.getDoubleField("prices");
+		for(RollingStatistic statistic : RollingStatistic.values()) {
+			@SuppressWarnings("rawtypes")
+			Map<String, BinaryOperator> accumulators = new HashMap<>();
+			accumulators.put("prices", statistic);
+			TimeSeriesEntry rolled = ts.roll(START, END, IntervalType.DAILY, accumulators, WINDOW);
+			TDoubleArrayList result = rolled.getDoubleField("prices");
+			Assert.assertEquals(SIZE, result.size());
+			for(int i=0;i<SIZE;i++) {
+				Assert.assertEquals(statistic + " at " + i, naive(statistic, prices, i), result.get(i), 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void testGenericOperatorsAndRange() {
+		TimeSeriesEntry ts = getData();
+		@SuppressWarnings("rawtypes")
+		Map<String, BinaryOperator> accumulators = new HashMap<>();
+		accumulators.put("volumes", (BinaryOperator<Integer>) Math::max);
+		accumulators.put("ratings", (BinaryOperator<String>) String::concat);
+		LocalDateTime from = LocalDate.of(2019, 6, 3).atStartOfDay();
+		TimeSeriesEntry rolled = ts.roll(from, END, IntervalType.DAILY, accumulators, WINDOW);
+		Assert.assertEquals(from, rolled.getStoredStartTime());
+		TIntArrayList volumes = ts.getIntField("volumes");
+		TIntArrayList maxima = rolled.getIntField("volumes");
+		List<String> ratings = ts.getStringField("ratings");
+		List<String> concatenated = rolled.getStringField("ratings");
+		int first = SIZE - maxima.size();
+		Assert.assertEquals(105, first);
+		for(int i=first;i<SIZE;i++) {
+			int max = Integer.MIN_VALUE;
+			StringBuilder window = new StringBuilder();
+			for(int j=i-WINDOW+1;j<=i;j++) {
+				max = Math.max(max, volumes.get(j));
+				window.append(ratings.get(j));
+			}
+			Assert.assertEquals(max, maxima.get(i-first));
+			Assert.assertEquals(window.toString(), concatenated.get(i-first));
+		}
+	}
+
+	@Test
+	public void testUnboundedWindow() {
+		TimeSeriesEntry ts = getData();
+		@SuppressWarnings("rawtypes")
+		Map<String, BinaryOperator> accumulators = new HashMap<>();
+		accumulators.put("volumes", (BinaryOperator<Integer>) Integer::sum);
+		TimeSeriesEntry rolled = ts.roll(START, END, IntervalType.DAILY, accumulators, Long.MAX_VALUE);
+		TIntArrayList volumes = ts.getIntField("volumes");
+		TIntArrayList sums = rolled.getIntField("volumes");
+		Assert.assertEquals(SIZE, sums.size());
+		int sum = 0;
+		for(int i=0;i<SIZE;i++) {
+			sum += volumes.get(i);
+			Assert.assertEquals(sum, sums.get(i));
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.bfm.app.test.timeseries;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.bfm.app.timeseries.TimeSeriesEntryBuilder;
+import com.bfm.app.timeseries.TimeSeriesView;
+import com.bfm.app.timeseries.classifiers.IntervalType;
+import com.bfm.app.timeseries.parametric.ParametricTimeSeries;
+
+import gnu.trove.iterator.TDoubleIterator;
+
+public class TimeSeriesViewTest {
+	
+	/**
+	 * 30 business days from Monday 2019-01-07, the delta of day <code>i</code> is <code>i</code>
+	 */
+	private static ParametricTimeSeries getData() {
+		LocalDateTime start = LocalDate.of(2019, 1, 7).atStartOfDay();
+		LocalDateTime end = LocalDate.of(2019, 2, 15).atStartOfDay();
+		TimeSeriesEntryBuilder<ParametricTimeSeries> builder = new TimeSeriesEntryBuilder<>();
+		ParametricTimeSeries ts = builder.key("ABC").interval(IntervalType.DAILY).objectBuilder(ParametricTimeSeries::new)
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.startTime(start).endTime(end).storedStartTime(start).storedEndTime(end).build();
+		for(int i=0;i<30;i++) {
+			ts.addDelta(i);
+			ts.addValue(-i);
+		}
+		return ts;
+	}
+	
+	@Test
+	public void testViewOverRange() {
+		ParametricTimeSeries ts = getData();
+		TimeSeriesView view = TimeSeriesView.of(ts, LocalDate.of(2019, 1, 12).atStartOfDay(), 
+				LocalDate.of(2019, 1, 18).atStartOfDay(), IntervalType.DAILY);
+		Assert.assertEquals(5, view.size());
+		Assert.assertEquals(LocalDate.of(2019, 1, 14).atStartOfDay(), view.getStartTime());
+		Assert.assertEquals(LocalDate.of(2019, 1, 18).atStartOfDay(), view.getEndTime());
+		Assert.assertEquals(5d, view.getDouble("deltas", 0), 0d);
+		Assert.assertEquals(-9d, view.getDouble("values", 4), 0d);
+		Assert.assertArrayEquals(new double[] {0, 5, 6, 7, 8, 9}, view.getDoubleField("deltas").copyTo(new double[6], 1), 0d);
+		TDoubleIterator iterator = view.getDoubleField("deltas").iterator();
+		double expected = 5;
+		while(iterator.hasNext()) {
+			Assert.assertEquals(expected++, iterator.next(), 0d);
+		}
+		Assert.assertEquals(10d, expected, 0d);
+	}
+	
+	@Test
+	public void testViewIsClippedToStoredRange() {
+		ParametricTimeSeries ts = getData();
+		TimeSeriesView view = TimeSeriesView.of(ts, LocalDate.of(2018, 12, 1).atStartOfDay(), 
+				LocalDate.of(2019, 1, 8).atStartOfDay(), IntervalType.DAILY);
+		Assert.assertEquals(2, view.size());
+		Assert.assertEquals(0d, view.getDouble("deltas", 0), 0d);
+		TimeSeriesView empty = TimeSeriesView.of(ts, LocalDate.of(2019, 3, 1).atStartOfDay(), 
+				LocalDate.of(2019, 3, 8).atStartOfDay(), IntervalType.DAILY);
+		Assert.assertEquals(0, empty.size());
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testReadPastViewFails() {
+		ParametricTimeSeries ts = getData();
+		TimeSeriesView view = TimeSeriesView.of(ts, LocalDate.of(2019, 1, 14).atStartOfDay(), 
+				LocalDate.of(2019, 1, 18).atStartOfDay(), IntervalType.DAILY);
+		view.getDouble("deltas", 5);
+	}
+
+}
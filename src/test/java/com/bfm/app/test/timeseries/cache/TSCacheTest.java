@@ -1,29 +1,68 @@
 package com.bfm.app.test.timeseries.cache;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import com.bfm.app.timeseries.TimeSeriesEntryBuilder;
+import com.bfm.app.timeseries.TimeSeriesEntryCodec;
+import com.bfm.app.timeseries.TimeSeriesEntryUtils;
 import com.bfm.app.timeseries.cache.EvictionStrategy;
 import com.bfm.app.timeseries.cache.TSCache;
+import com.bfm.app.timeseries.cache.TSCacheBuilder;
+import com.bfm.app.timeseries.cache.Weigher;
+import com.bfm.app.timeseries.cache.stats.CacheStatsSnapshot;
+import com.bfm.app.timeseries.cache.stats.CacheTracer.Phase;
+import com.bfm.app.timeseries.cache.stats.LatencyHistogram;
+import com.bfm.app.timeseries.cache.stats.SampledCacheTracer;
 import com.bfm.app.timeseries.classifiers.IntervalType;
+import com.bfm.app.timeseries.column.DoubleColumn;
+import com.bfm.app.timeseries.column.SlabAllocator;
 import com.bfm.app.timeseries.parametric.ParametricTimeSeries;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import gnu.trove.list.array.TDoubleArrayList;
 
 import test.Data;
 
 public class TSCacheTest {
 	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
 	@Test
 	public void testLRU() {
 		Data dataProvider = new Data();
@@ -139,4 +178,691 @@ public class TSCacheTest {
 			count.incrementAndGet();
 		}
 	}
+
+	@Test
+	public void testConcurrentMissesShareOneLoad() throws Exception {
+		Data dataProvider = new Data();
+		AtomicInteger loads = new AtomicInteger(0);
+		CountDownLatch arrived = new CountDownLatch(8);
+		Function<String, ParametricTimeSeries> single = s -> {
+			loads.incrementAndGet();
+			try {
+				// released only once every caller is about to miss
+				arrived.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return dataProvider.getTimeSeries(s);
+		};
+		Map<String, Class<?>> fieldTypeMap = new HashMap<>();
+		fieldTypeMap.put("deltas", Double.class);
+		fieldTypeMap.put("values", Double.class);
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = 
+				new TSCache<>("parametric", IntervalType.DAILY, single, null, null, 
+						d -> d, 10, new EvictionStrategy.LRUEvictionStrategy<>(), (key, value) -> {}, 
+						LocalDate.now().minusYears(1).atStartOfDay(), LocalDate.now().atStartOfDay(), fieldTypeMap,
+						ParametricTimeSeries::new);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<ParametricTimeSeries>> results = new ArrayList<>();
+			for(int i=0;i<8;i++) {
+				results.add(executor.submit(() -> {
+					arrived.countDown();
+					return cache.get("10000");
+				}));
+			}
+			for(Future<ParametricTimeSeries> result : results) {
+				Assert.assertEquals("10000", result.get(5, TimeUnit.SECONDS).getFactor());
+			}
+			Assert.assertEquals(1, loads.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testConcurrentRangeReadsWhileEvicting() throws Exception {
+		List<Supplier<EvictionStrategy<String, ParametricTimeSeries>>> strategies = Arrays.asList(
+				EvictionStrategy.LRUEvictionStrategy::new, EvictionStrategy.LFUEvictionStrategy::new,
+				() -> new EvictionStrategy.WindowTinyLFUEvictionStrategy<>(4));
+		for(Supplier<EvictionStrategy<String, ParametricTimeSeries>> strategy : strategies) {
+			readRangesWhileEvicting(strategy.get());
+		}
+	}
+
+	private void readRangesWhileEvicting(EvictionStrategy<String, ParametricTimeSeries> strategy) throws Exception {
+		Data dataProvider = new Data();
+		AtomicInteger loads = new AtomicInteger();
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.singleEntryLoader(s -> {
+					loads.incrementAndGet();
+					return dataProvider.getTimeSeries(s);
+				})
+				.transformer(d -> d)
+				.allowedCacheSize(4)
+				.evictionStrategy(strategy)
+				.startDate(LocalDate.of(1990, 1, 1).atStartOfDay()).endDate(LocalDate.now().plusYears(1).atStartOfDay())
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.build();
+		LocalDateTime start = LocalDate.now().minusMonths(1).atStartOfDay(), end = LocalDate.now().atStartOfDay();
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		try {
+			List<Future<?>> readers = new ArrayList<>();
+			for(int i=0;i<16;i++) {
+				int offset = i;
+				readers.add(executor.submit(() -> {
+					for(int j=0;j<200;j++) {
+						Assert.assertNotNull(cache.get(String.valueOf(10000 + (offset + j) % 8), start, end));
+					}
+				}));
+			}
+			for(Future<?> reader : readers) {
+				reader.get(30, TimeUnit.SECONDS);
+			}
+			Assert.assertTrue(cache.size()<=4);
+			Assert.assertEquals(cache.size(), cache.weightedSize());
+			// every cached entry is still linked in the policy, so new keys can evict them and get cached
+			for(int i=10008;i<10016;i++) {
+				int before = loads.get();
+				cache.get(String.valueOf(i));
+				cache.get(String.valueOf(i));
+				Assert.assertEquals(strategy.getClass().getSimpleName(), before + 1, loads.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testAsyncGet() throws Exception {
+		Data dataProvider = new Data();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+					.cacheName("parametric")
+					.asyncSingleEntryLoader(s -> CompletableFuture.supplyAsync(() -> dataProvider.getTimeSeries(s), executor))
+					.asyncMultipleEntryLoader(s -> CompletableFuture.supplyAsync(() -> dataProvider.getTimeSeries(s), executor))
+					.executor(executor)
+					.transformer(d -> d)
+					.allowedCacheSize(10)
+					.evictionStrategy(new EvictionStrategy.LRUEvictionStrategy<>())
+					.startDate(LocalDate.now().minusYears(1).atStartOfDay()).endDate(LocalDate.now().atStartOfDay())
+					.addField("deltas", Double.class).addField("values", Double.class)
+					.objectSupplier(ParametricTimeSeries::new)
+					.build();
+			Assert.assertEquals("10000", cache.getAsync("10000").get(5, TimeUnit.SECONDS).getFactor());
+			Set<String> keys = new LinkedHashSet<>(Arrays.asList("10000", "10001", "10002"));
+			Map<String, ParametricTimeSeries> values = cache.getAllAsync(keys).get(5, TimeUnit.SECONDS);
+			Assert.assertEquals(keys, values.keySet());
+			for(String key : keys) {
+				Assert.assertEquals(key, values.get(key).getFactor());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testBatchedMisses() throws Exception {
+		Data dataProvider = new Data();
+		AtomicInteger batches = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		try {
+			TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+					.cacheName("parametric")
+					.singleEntryLoader(s -> dataProvider.getTimeSeries(s))
+					.multipleEntryLoader(s -> {
+						batches.incrementAndGet();
+						return dataProvider.getTimeSeries(s);
+					})
+					.batchSingleEntryLoads(50, TimeUnit.MILLISECONDS, 8)
+					.executor(executor)
+					.transformer(d -> d)
+					.allowedCacheSize(100)
+					.evictionStrategy(new EvictionStrategy.LRUEvictionStrategy<>())
+					.addField("deltas", Double.class).addField("values", Double.class)
+					.objectSupplier(ParametricTimeSeries::new)
+					.build();
+			List<Future<ParametricTimeSeries>> results = new ArrayList<>();
+			for(int i=0;i<16;i++) {
+				String key = String.valueOf(10000+i);
+				results.add(executor.submit(() -> cache.get(key)));
+			}
+			for(int i=0;i<16;i++) {
+				Assert.assertEquals(String.valueOf(10000+i), results.get(i).get(5, TimeUnit.SECONDS).getFactor());
+			}
+			Assert.assertTrue("Expected misses to be batched but got " + batches.get() + " loads", batches.get() < 16);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testBatchedMissesOnTheLoadExecutor() throws Exception {
+		Data dataProvider = new Data();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+					.cacheName("parametric")
+					.singleEntryLoader(s -> dataProvider.getTimeSeries(s))
+					.multipleEntryLoader(s -> dataProvider.getTimeSeries(s))
+					.batchSingleEntryLoads(50, TimeUnit.MILLISECONDS, 8)
+					.executor(executor)
+					.transformer(d -> d)
+					.addField("deltas", Double.class).addField("values", Double.class)
+					.objectSupplier(ParametricTimeSeries::new)
+					.build();
+			// every thread of the executor waits on a batch closed by the window
+			List<Future<ParametricTimeSeries>> results = new ArrayList<>();
+			for(int i=0;i<2;i++) {
+				String key = String.valueOf(10000+i);
+				results.add(executor.submit(() -> cache.get(key)));
+			}
+			for(int i=0;i<2;i++) {
+				Assert.assertEquals(String.valueOf(10000+i), results.get(i).get(5, TimeUnit.SECONDS).getFactor());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testFullBatchIsNotLoadedBySubmitter() throws Exception {
+		Data dataProvider = new Data();
+		CountDownLatch release = new CountDownLatch(1);
+		Set<Thread> loaders = ConcurrentHashMap.newKeySet();
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.multipleEntryLoader(s -> {
+					loaders.add(Thread.currentThread());
+					Uninterruptibles.awaitUninterruptibly(release, 5, TimeUnit.SECONDS);
+					return dataProvider.getTimeSeries(s);
+				})
+				.batchSingleEntryLoads(10, TimeUnit.SECONDS, 2)
+				.transformer(d -> d)
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.build();
+		// the second key fills the batch, its submitter must not wait for the load
+		CompletableFuture<ParametricTimeSeries> first = cache.getAsync("10000"), second = cache.getAsync("10001");
+		Assert.assertFalse(second.isDone());
+		release.countDown();
+		Assert.assertEquals("10000", first.get(5, TimeUnit.SECONDS).getFactor());
+		Assert.assertEquals("10001", second.get(5, TimeUnit.SECONDS).getFactor());
+		Assert.assertFalse(loaders.contains(Thread.currentThread()));
+	}
+
+	@Test
+	public void testWindowTinyLFUResistsScan() {
+		Data dataProvider = new Data();
+		AtomicInteger loads = new AtomicInteger(0);
+		Function<String, ParametricTimeSeries> single = s -> {
+			loads.incrementAndGet();
+			return dataProvider.getTimeSeries(s);
+		};
+		Map<String, Class<?>> fieldTypeMap = new HashMap<>();
+		fieldTypeMap.put("deltas", Double.class);
+		fieldTypeMap.put("values", Double.class);
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = 
+				new TSCache<>("parametric", IntervalType.DAILY, single, null, null, 
+						d -> d, 100, new EvictionStrategy.WindowTinyLFUEvictionStrategy<>(100), (key, value) -> {}, 
+						LocalDate.now().minusYears(1).atStartOfDay(), LocalDate.now().atStartOfDay(), fieldTypeMap,
+						ParametricTimeSeries::new);
+		for(int round=0;round<5;round++) {
+			for(int i=10000;i<10020;i++) {
+				cache.get(String.valueOf(i));
+			}
+		}
+		for(int i=11000;i<11500;i++) {
+			cache.get(String.valueOf(i));
+		}
+		int loadsAfterScan = loads.get();
+		for(int i=10000;i<10020;i++) {
+			cache.get(String.valueOf(i));
+		}
+		Assert.assertEquals("hot keys were evicted by the scan", loadsAfterScan, loads.get());
+	}
+
+	@Test
+	public void testWeightedWindowTinyLFUResistsScan() {
+		Data dataProvider = new Data();
+		long entryBytes = TimeSeriesEntryUtils.estimateRetainedBytes(dataProvider.getTimeSeries("10000"));
+		AtomicInteger loads = new AtomicInteger(0);
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.singleEntryLoader(s -> {
+					loads.incrementAndGet();
+					return dataProvider.getTimeSeries(s);
+				})
+				.transformer(d -> d)
+				.maximumWeight(100 * entryBytes, Weigher.retainedBytes())
+				.evictionStrategy(new EvictionStrategy.WindowTinyLFUEvictionStrategy<>(100 * entryBytes))
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.build();
+		for(int round=0;round<5;round++) {
+			for(int i=10000;i<10020;i++) {
+				cache.get(String.valueOf(i));
+			}
+		}
+		for(int i=11000;i<11500;i++) {
+			cache.get(String.valueOf(i));
+		}
+		int loadsAfterScan = loads.get();
+		for(int i=10000;i<10020;i++) {
+			cache.get(String.valueOf(i));
+		}
+		Assert.assertEquals("hot keys were evicted by the scan", loadsAfterScan, loads.get());
+	}
+
+	@Test
+	public void testMaximumWeight() {
+		Data dataProvider = new Data();
+		long entryBytes = TimeSeriesEntryUtils.estimateRetainedBytes(dataProvider.getTimeSeries("10000"));
+		List<String> evicted = new ArrayList<>();
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.singleEntryLoader(s -> dataProvider.getTimeSeries(s))
+				.transformer(d -> d)
+				.maximumWeight(3 * entryBytes, Weigher.retainedBytes())
+				.evictionStrategy(new EvictionStrategy.LRUEvictionStrategy<>())
+				.listener((key, value) -> evicted.add(key))
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.build();
+		for(int i=10000;i<10005;i++) {
+			cache.get(String.valueOf(i));
+		}
+		Assert.assertEquals(3, cache.size());
+		Assert.assertEquals(3 * entryBytes, cache.weightedSize());
+		Assert.assertEquals(Arrays.asList("10000", "10001"), evicted);
+	}
+
+	@Test
+	public void testExpireAfterWrite() throws Exception {
+		Data dataProvider = new Data();
+		List<String> evicted = new ArrayList<>();
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.singleEntryLoader(s -> dataProvider.getTimeSeries(s))
+				.transformer(d -> d)
+				.expireAfterWrite(50, TimeUnit.MILLISECONDS)
+				.listener((key, value) -> evicted.add(key))
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.build();
+		try {
+			cache.get("10000");
+			Assert.assertEquals(1, cache.size());
+			long deadline = System.currentTimeMillis() + 5000;
+			while(cache.size()>0 && System.currentTimeMillis()<deadline) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(0, cache.size());
+			Assert.assertEquals(0, cache.weightedSize());
+			Assert.assertEquals(Arrays.asList("10000"), evicted);
+		}finally {
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testRefreshAfterWriteServesStaleValue() throws Exception {
+		Data dataProvider = new Data();
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch refreshing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.singleEntryLoader(s -> {
+					if(loads.incrementAndGet()>1) {
+						refreshing.countDown();
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+					return dataProvider.getTimeSeries(s);
+				})
+				.transformer(d -> d)
+				.refreshAfterWrite(50, TimeUnit.MILLISECONDS)
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.build();
+		try {
+			ParametricTimeSeries first = cache.get("10000");
+			Assert.assertTrue(refreshing.await(5, TimeUnit.SECONDS));
+			Assert.assertSame(first, cache.get("10000"));
+			Assert.assertEquals(2, loads.get());
+			release.countDown();
+			// a completed refresh schedules the next one
+			long deadline = System.currentTimeMillis() + 5000;
+			while(loads.get()<3 && System.currentTimeMillis()<deadline) {
+				Thread.sleep(10);
+			}
+			Assert.assertTrue(loads.get()>=3);
+			Assert.assertEquals(1, cache.size());
+		}finally {
+			release.countDown();
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testAppendSince() {
+		Data dataProvider = new Data();
+		ParametricTimeSeries original = dataProvider.getTimeSeries("10000");
+		int originalSize = original.getDeltas().size();
+		// business day of the index right after the last stored observation
+		LocalDateTime nextDay = IntervalType.DAILY.getTimeAt(originalSize, 
+				IntervalType.DAILY.getClosestTimeNextTo(original.getStoredStartTime()));
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.singleEntryLoader(s -> dataProvider.getTimeSeries(s))
+				.tailLoader((s, since) -> {
+					TimeSeriesEntryBuilder<ParametricTimeSeries> builder = new TimeSeriesEntryBuilder<>();
+					ParametricTimeSeries tail = builder.key(s).objectBuilder(ParametricTimeSeries::new)
+							.addField("deltas", Double.class).addField("values", Double.class)
+							.startTime(original.getStartTime()).endTime(nextDay)
+							.storedStartTime(nextDay).storedEndTime(nextDay).build();
+					tail.addDelta(42d);
+					tail.addValue(43d);
+					return tail;
+				})
+				.transformer(d -> d)
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.build();
+		Assert.assertNull(cache.appendSince("10000", original.getStoredEndTime()));
+		cache.get("10000");
+		ParametricTimeSeries appended = cache.appendSince("10000", original.getStoredEndTime());
+		Assert.assertSame(appended, cache.get("10000"));
+		Assert.assertEquals(originalSize + 1, appended.getDeltas().size());
+		Assert.assertEquals(42d, appended.getDeltas().get(appended.getDeltas().size() - 1), 0d);
+		Assert.assertEquals(43d, appended.getValues().get(appended.getValues().size() - 1), 0d);
+		Assert.assertEquals(nextDay, appended.getStoredEndTime());
+		// the published series is copied, not mutated under concurrent readers
+		Assert.assertEquals(originalSize, original.getDeltas().size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOffHeapRejectsColumnsBiggerThanASlab() {
+		TDoubleArrayList huge = new TDoubleArrayList() {
+			@Override
+			public int size() {
+				return 1 << 28;
+			}
+		};
+		new SlabAllocator(1 << 16).copyOf(huge);
+	}
+
+	@Test
+	public void testOffHeap() {
+		Data dataProvider = new Data();
+		ParametricTimeSeries original = dataProvider.getTimeSeries("10000");
+		SlabAllocator allocator = new SlabAllocator(1 << 16);
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.singleEntryLoader(s -> dataProvider.getTimeSeries(s))
+				.transformer(d -> d)
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.offHeap(allocator)
+				.build();
+		ParametricTimeSeries cached = cache.get("10000");
+		Assert.assertNotSame(original, cached);
+		Assert.assertTrue(cached.isColumnar());
+		Assert.assertFalse(original.isColumnar());
+		DoubleColumn deltas = cached.getDoubleColumn("deltas");
+		Assert.assertEquals(original.getDeltas().size(), deltas.size());
+		Assert.assertArrayEquals(original.getDeltas().toArray(), deltas.copyTo(0, new double[deltas.size()], 0, deltas.size()), 0d);
+		Assert.assertEquals(original.getValues(), cached.getValues());
+		Assert.assertTrue(allocator.usedBytes()>=2L * Double.BYTES * deltas.size());
+	}
+
+	@Test
+	public void testStreamingLoadAll() {
+		Data dataProvider = new Data();
+		AtomicInteger read = new AtomicInteger();
+		Iterator<Map.Entry<String, ParametricTimeSeries>> source = IntStream.range(10000, 10100)
+				.<Map.Entry<String, ParametricTimeSeries>>mapToObj(i -> {
+					read.incrementAndGet();
+					return new AbstractMap.SimpleEntry<>(String.valueOf(i), dataProvider.getTimeSeries(String.valueOf(i)));
+				}).iterator();
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.singleEntryLoader(s -> { throw new AssertionError("loaded " + s); })
+				.transformer(d -> d)
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.build();
+		AtomicLong progress = new AtomicLong();
+		long loaded = cache.loadAll(source, 4, 16, done -> progress.accumulateAndGet(done, Math::max));
+		Assert.assertEquals(100, loaded);
+		Assert.assertEquals(100, read.get());
+		Assert.assertEquals(100, progress.get());
+		Assert.assertEquals(100, cache.size());
+		Assert.assertNotNull(cache.get("10042"));
+	}
+
+	@Test
+	public void testStats() {
+		Data dataProvider = new Data();
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.singleEntryLoader(s -> dataProvider.getTimeSeries(s))
+				.transformer(d -> d)
+				.allowedCacheSize(2)
+				.evictionStrategy(new EvictionStrategy.LRUEvictionStrategy<>())
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.build();
+		for(String key : Arrays.asList("10000", "10001", "10000", "10002")) {
+			cache.get(key);
+		}
+		CacheStatsSnapshot stats = cache.getCacheStats().intervalSnapshot();
+		Assert.assertEquals(1, stats.getHitCount());
+		Assert.assertEquals(3, stats.getMissCount());
+		Assert.assertEquals(0.25, stats.getHitRate(), 0d);
+		Assert.assertEquals(2, stats.getEntryCount());
+		Assert.assertEquals(3, stats.getLoadCount());
+		Assert.assertEquals(1, stats.getEvictionCount());
+		Assert.assertEquals(1, stats.getHitLatencies().getCount());
+		Assert.assertEquals(3, stats.getMissLatencies().getCount());
+		Assert.assertTrue(stats.getLoadLatencies().getP50()>0);
+		Assert.assertTrue(stats.getMissLatencies().getP999()<=stats.getMissLatencies().getMax());
+
+		cache.get("10002");
+		CacheStatsSnapshot interval = cache.getCacheStats().intervalSnapshot();
+		Assert.assertEquals(0, interval.getMissCount());
+		Assert.assertEquals(1, interval.getHitLatencies().getCount());
+		Assert.assertEquals(2, cache.getCacheStats().snapshot().getHitLatencies().getCount());
+
+		// latencies are known within 1/32 of their value
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(long nanos=1;nanos<=100000;nanos++) {
+			histogram.record(nanos * 1000);
+		}
+		LatencyHistogram.Snapshot latencies = histogram.snapshot();
+		Assert.assertEquals(50000000d, latencies.getP50(), 50000000d/32);
+		Assert.assertEquals(99000000d, latencies.getP99(), 99000000d/32);
+		Assert.assertEquals(99900000d, latencies.getP999(), 99900000d/32);
+		Assert.assertEquals(100000000d, latencies.getMax(), 100000000d/32);
+	}
+
+	@Test
+	public void testMBeanAndExporter() throws Exception {
+		Data dataProvider = new Data();
+		AtomicReference<CacheStatsSnapshot> exported = new AtomicReference<>();
+		CountDownLatch exports = new CountDownLatch(2);
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("monitored")
+				.singleEntryLoader(s -> dataProvider.getTimeSeries(s))
+				.transformer(d -> d)
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.registerMBean()
+				.statsExporter((name, interval) -> {
+					if(interval.getMissCount()>0)
+						exported.set(interval);
+					exports.countDown();
+				}, 10, TimeUnit.MILLISECONDS)
+				.build();
+		cache.get("10000");
+		cache.get("10000");
+		ObjectName name = new ObjectName("com.bfm.app.timeseries:type=TSCache,name=\"monitored\"");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		Assert.assertEquals(1L, server.getAttribute(name, "HitCount"));
+		Assert.assertEquals(1L, server.getAttribute(name, "EntryCount"));
+		Assert.assertEquals(0.5, (Double) server.getAttribute(name, "HitRate"), 0d);
+		Assert.assertTrue(exports.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(1, exported.get().getMissCount());
+		cache.close();
+		Assert.assertFalse(server.isRegistered(name));
+	}
+
+	@Test
+	public void testSampledTracer() {
+		Data dataProvider = new Data();
+		SampledCacheTracer tracer = new SampledCacheTracer(1);
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("traced")
+				.singleEntryLoader(s -> dataProvider.getTimeSeries(s))
+				.transformer(d -> d)
+				.allowedCacheSize(1)
+				.evictionStrategy(new EvictionStrategy.LRUEvictionStrategy<>())
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.tracer(tracer)
+				.build();
+		cache.get("10000");
+		cache.get("10001");
+		cache.get("10001");
+		Map<Phase, LatencyHistogram.Snapshot> phases = tracer.snapshot("traced");
+		Assert.assertEquals(2, phases.get(Phase.LOAD).getCount());
+		Assert.assertEquals(2, phases.get(Phase.TRANSFORM).getCount());
+		Assert.assertEquals(2, phases.get(Phase.ACQUIRE).getCount());
+		Assert.assertEquals(1, phases.get(Phase.EVICTION_LISTENER).getCount());
+		Assert.assertFalse(phases.containsKey(Phase.SLICE));
+		Assert.assertEquals(phases.keySet(), tracer.snapshot().get("traced").keySet());
+	}
+
+	@Test
+	public void testUnclosedCacheIsCollected() throws Exception {
+		Data dataProvider = new Data();
+		WeakReference<TSCache<String, ParametricTimeSeries, ParametricTimeSeries>> cache = new WeakReference<>(
+				new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("unclosed")
+				.singleEntryLoader(s -> dataProvider.getTimeSeries(s))
+				.transformer(d -> d)
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.expireAfterWrite(1, TimeUnit.SECONDS)
+				.statsExporter((name, interval) -> {}, 1, TimeUnit.MILLISECONDS)
+				.registerMBean()
+				.build());
+		for(int i=0;i<100 && cache.get()!=null;i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		Assert.assertNull(cache.get());
+	}
+
+	@Test
+	public void testSnapshotAndRestore() throws Exception {
+		Data dataProvider = new Data();
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.singleEntryLoader(s -> dataProvider.getTimeSeries(s))
+				.transformer(d -> d)
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.offHeap(new SlabAllocator(1 << 16))
+				.build();
+		for(int i=10000;i<10020;i++) {
+			cache.get(String.valueOf(i));
+		}
+		Assert.assertEquals(20, cache.snapshot(folder.getRoot().toPath(), Function.identity()));
+		Assert.assertEquals(20, cache.snapshot(folder.getRoot().toPath(), Function.identity()));
+		Assert.assertEquals(1, folder.getRoot().listFiles(File::isDirectory).length);
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> restarted = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.singleEntryLoader(s -> { throw new AssertionError("loaded " + s); })
+				.transformer(d -> { throw new AssertionError("transformed " + d.getKey()); })
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.build();
+		Assert.assertEquals(20, restarted.restore(folder.getRoot().toPath(), Function.identity()));
+		Assert.assertEquals(20, restarted.size());
+		ParametricTimeSeries original = dataProvider.getTimeSeries("10007");
+		ParametricTimeSeries restored = restarted.get("10007");
+		Assert.assertEquals(original.getKey(), restored.getKey());
+		Assert.assertEquals(original.getStoredStartTime(), restored.getStoredStartTime());
+		Assert.assertEquals(original.getDeltas(), restored.getDeltas());
+		Assert.assertEquals(original.getValues(), restored.getValues());
+	}
+
+	@Test
+	public void testRestoreKeepsWriteAge() throws Exception {
+		Data dataProvider = new Data();
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.singleEntryLoader(s -> dataProvider.getTimeSeries(s))
+				.transformer(d -> d)
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.expireAfterWrite(1, TimeUnit.HOURS)
+				.build();
+		cache.get("10000");
+		Thread.sleep(50);
+		Assert.assertEquals(1, cache.snapshot(folder.getRoot().toPath(), Function.identity()));
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> restarted = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.singleEntryLoader(s -> dataProvider.getTimeSeries(s))
+				.transformer(d -> d)
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.expireAfterWrite(20, TimeUnit.MILLISECONDS)
+				.build();
+		Assert.assertEquals(0, restarted.restore(folder.getRoot().toPath(), Function.identity()));
+		Assert.assertEquals(1, cache.restore(folder.getRoot().toPath(), Function.identity()));
+	}
+
+	@Test
+	public void testDiskTier() throws Exception {
+		Data dataProvider = new Data();
+		AtomicInteger loads = new AtomicInteger();
+		int entryBytes = TimeSeriesEntryCodec.encodedSize(dataProvider.getTimeSeries("10000"));
+		TSCache<String, ParametricTimeSeries, ParametricTimeSeries> cache = new TSCacheBuilder<String, ParametricTimeSeries, ParametricTimeSeries>()
+				.cacheName("parametric")
+				.singleEntryLoader(s -> {
+					loads.incrementAndGet();
+					return dataProvider.getTimeSeries(s);
+				})
+				.transformer(d -> d)
+				.allowedCacheSize(5)
+				.evictionStrategy(new EvictionStrategy.LRUEvictionStrategy<>())
+				.addField("deltas", Double.class).addField("values", Double.class)
+				.objectSupplier(ParametricTimeSeries::new)
+				.diskTier(folder.newFile().toPath(), 5 * entryBytes / 2)
+				.build();
+		for(int i=10000;i<10010;i++) {
+			cache.get(String.valueOf(i));
+		}
+		// 10000 to 10004 were spilled, the tier only has room for the last two
+		Assert.assertEquals(10, loads.get());
+		Assert.assertEquals(2, cache.diskTierSize());
+		ParametricTimeSeries promoted = cache.get("10004");
+		Assert.assertEquals(10, loads.get());
+		Assert.assertEquals(dataProvider.getTimeSeries("10004").getDeltas(), promoted.getDeltas());
+		Assert.assertEquals(1, cache.diskTierSize());
+		cache.get("10000");
+		Assert.assertEquals(11, loads.get());
+		cache.close();
+		Assert.assertEquals(0, cache.diskTierSize());
+	}
 }
@@ -0,0 +1,75 @@
+package com.bfm.app.test.timeseries.classifiers;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.bfm.app.timeseries.classifiers.IntervalType;
+
+public class IntervalTypeTest {
+	
+	private static final List<LocalDateTime> HOLIDAYS = Arrays.asList(LocalDate.of(2018, 1, 26).atStartOfDay(), 
+			LocalDate.of(2018, 12, 25).atStartOfDay(), LocalDate.of(2019, 1, 1).atStartOfDay());
+	
+	/**
+	 * Calendar built the way the index used to be, a sorted map of every business day
+	 */
+	private static TreeMap<LocalDateTime, Integer> referenceCalendar(List<LocalDateTime> holidays) {
+		TreeMap<LocalDateTime, Integer> calendar = new TreeMap<>();
+		LocalDateTime start = LocalDateTime.of(1950, 1, 1, 0, 0);
+		LocalDateTime end = LocalDateTime.of(2222, 12, 31, 0, 0);
+		int index = 0;
+		while(!start.isEqual(end)) {
+			if(start.getDayOfWeek()!=DayOfWeek.SATURDAY && start.getDayOfWeek()!=DayOfWeek.SUNDAY && !holidays.contains(start)) {
+				calendar.put(start, index++);
+			}
+			start = start.plusDays(1);
+		}
+		return calendar;
+	}
+	
+	@Test
+	public void testLookupsMatchSortedCalendar() {
+		IntervalType interval = new IntervalType.DailyInterval(HOLIDAYS, null);
+		TreeMap<LocalDateTime, Integer> reference = referenceCalendar(HOLIDAYS);
+		LocalDateTime offset = LocalDate.of(2000, 1, 3).atStartOfDay();
+		Random random = new Random(7);
+		for(int i=0;i<20000;i++) {
+			LocalDateTime time = LocalDate.of(2010, 1, 1).plusDays(random.nextInt(5000)).atStartOfDay()
+					.plusHours(random.nextInt(4)==0 ? 12 : 0);
+			Integer index = reference.get(time);
+			Assert.assertEquals(time.toString(), index==null ? -1 : index-reference.get(offset), interval.getIndex(time, offset));
+			Map.Entry<LocalDateTime, Integer> floor = reference.floorEntry(time), ceiling = reference.ceilingEntry(time);
+			Assert.assertEquals(floor.getKey(), interval.getClosestTimePrevTo(time));
+			Assert.assertEquals(ceiling.getKey(), interval.getClosestTimeNextTo(time));
+			Assert.assertEquals(floor.getValue()-reference.get(offset), interval.getClosetPreviousIndex(time, offset));
+			Assert.assertEquals(ceiling.getValue()-reference.get(offset), interval.getClosetNextIndex(time, offset));
+		}
+	}
+	
+	@Test
+	public void testEveryDecadeMatchesSortedCalendar() {
+		IntervalType interval = new IntervalType.DailyInterval(HOLIDAYS, null);
+		Assert.assertEquals(referenceCalendar(HOLIDAYS), interval.getIntervalRange());
+		Assert.assertEquals(referenceCalendar(Arrays.asList()), IntervalType.DAILY.getIntervalRange());
+	}
+	
+	@Test
+	public void testHolidaysAreSkipped() {
+		IntervalType interval = new IntervalType.DailyInterval(HOLIDAYS, null);
+		LocalDateTime thursday = LocalDate.of(2018, 1, 25).atStartOfDay();
+		Assert.assertEquals(-1, interval.getIndex(LocalDate.of(2018, 1, 26).atStartOfDay(), thursday));
+		Assert.assertEquals(1, interval.getIndex(LocalDate.of(2018, 1, 29).atStartOfDay(), thursday));
+		Assert.assertEquals(LocalDate.of(2018, 1, 29).atStartOfDay(), interval.getClosestTimeNextTo(LocalDate.of(2018, 1, 26).atStartOfDay()));
+		Assert.assertEquals(thursday, interval.getClosestTimePrevTo(LocalDate.of(2018, 1, 28).atStartOfDay()));
+	}
+
+}
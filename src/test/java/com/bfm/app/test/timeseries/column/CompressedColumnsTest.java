@@ -0,0 +1,81 @@
+package com.bfm.app.test.timeseries.column;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.bfm.app.timeseries.column.CompressedColumns;
+import com.bfm.app.timeseries.column.DoubleColumn;
+import com.bfm.app.timeseries.column.IntColumn;
+import com.bfm.app.timeseries.column.LongColumn;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+public class CompressedColumnsTest {
+
+	private static final int SIZE = 1000;
+
+	@Test
+	public void testDoubleRoundTrip() {
+		Random random = new Random(7);
+		TDoubleArrayList list = new TDoubleArrayList();
+		double walk = 100;
+		for(int i=0;i<SIZE;i++) {
+			if(i<300) {
+				list.add(-0.0);
+			}else if(i<600) {
+				walk += random.nextInt(5) * 0.25;
+				list.add(walk);
+			}else if(i%97==0) {
+				list.add(i%2==0 ? Double.NaN : Double.NEGATIVE_INFINITY);
+			}else {
+				list.add(random.nextDouble());
+			}
+		}
+		DoubleColumn column = CompressedColumns.INSTANCE.copyOf(list);
+		Assert.assertEquals(SIZE, column.size());
+		for(int i=SIZE-1;i>=0;i--) {
+			Assert.assertEquals(Double.doubleToRawLongBits(list.get(i)), Double.doubleToRawLongBits(column.get(i)));
+		}
+		double[] range = column.copyTo(250, new double[400], 0, 400);
+		Assert.assertArrayEquals(list.toArray(250, 400), range, 0d);
+		Assert.assertTrue(column.heapBytes() < 8L * SIZE);
+	}
+
+	@Test
+	public void testLongAndIntRoundTrip() {
+		Random random = new Random(11);
+		TLongArrayList longs = new TLongArrayList();
+		TIntArrayList ints = new TIntArrayList();
+		for(int i=0;i<SIZE;i++) {
+			if(i<400) {
+				longs.add(1_500_000_000_000L + i * 86_400_000L);
+				ints.add(42);
+			}else if(i%100==0) {
+				longs.add(i%200==0 ? Long.MIN_VALUE : Long.MAX_VALUE);
+				ints.add(i%200==0 ? Integer.MIN_VALUE : Integer.MAX_VALUE);
+			}else {
+				longs.add(random.nextLong());
+				ints.add(random.nextInt());
+			}
+		}
+		LongColumn longColumn = CompressedColumns.INSTANCE.copyOf(longs);
+		IntColumn intColumn = CompressedColumns.INSTANCE.copyOf(ints);
+		Assert.assertArrayEquals(longs.toArray(), longColumn.copyTo(0, new long[SIZE], 0, SIZE));
+		Assert.assertArrayEquals(ints.toArray(), intColumn.copyTo(0, new int[SIZE], 0, SIZE));
+		for(int i=0;i<SIZE;i+=37) {
+			Assert.assertEquals(longs.get(i), longColumn.get(i));
+			Assert.assertEquals(ints.get(i), intColumn.get(i));
+		}
+		Assert.assertArrayEquals(longs.toArray(120, 140), longColumn.copyTo(120, new long[140], 0, 140));
+	}
+
+	@Test
+	public void testEmpty() {
+		Assert.assertEquals(0, CompressedColumns.INSTANCE.copyOf(new TDoubleArrayList()).size());
+		Assert.assertEquals(0, CompressedColumns.INSTANCE.copyOf(new TLongArrayList()).copyTo(0, new long[0], 0, 0).length);
+	}
+}
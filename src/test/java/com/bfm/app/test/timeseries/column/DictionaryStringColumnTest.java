@@ -0,0 +1,68 @@
+package com.bfm.app.test.timeseries.column;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.bfm.app.timeseries.TimeSeriesEntry;
+import com.bfm.app.timeseries.TimeSeriesEntryBuilder;
+import com.bfm.app.timeseries.TimeSeriesEntryUtils;
+import com.bfm.app.timeseries.cache.TSCache;
+import com.bfm.app.timeseries.cache.TSCacheBuilder;
+import com.bfm.app.timeseries.classifiers.IntervalType;
+import com.bfm.app.timeseries.column.DictionaryStringColumn;
+import com.bfm.app.timeseries.column.StringDictionary;
+
+public class DictionaryStringColumnTest {
+
+	private static final LocalDateTime START = LocalDate.of(2018, 12, 3).atStartOfDay();
+	private static final LocalDateTime END = LocalDate.of(2018, 12, 7).atStartOfDay();
+	private static final List<String> RATINGS = Arrays.asList("AA", "AA", null, "BBB", "AA");
+
+	private static TimeSeriesEntry series(String key, TimeSeriesEntryBuilder<TimeSeriesEntry> builder) {
+		TimeSeriesEntry series = builder.key(key).interval(IntervalType.DAILY).addField("rating", String.class)
+				.startTime(START).endTime(END).storedStartTime(START).storedEndTime(END).build();
+		series.getStringField("rating").addAll(RATINGS);
+		return series;
+	}
+
+	@Test
+	public void testBuilderSharesDictionary() {
+		StringDictionary dictionary = new StringDictionary();
+		TimeSeriesEntry first = series("A", new TimeSeriesEntryBuilder<>().stringDictionary(dictionary));
+		TimeSeriesEntry second = series("B", new TimeSeriesEntryBuilder<>().stringDictionary("rating", dictionary));
+		DictionaryStringColumn ratings = (DictionaryStringColumn) first.getStringField("rating");
+		Assert.assertEquals(RATINGS, ratings);
+		Assert.assertEquals(RATINGS, second.getStringField("rating"));
+		Assert.assertEquals(2, dictionary.size());
+		Assert.assertSame(ratings.get(0), second.getStringField("rating").get(4));
+		Assert.assertEquals(StringDictionary.NULL_CODE, ratings.getCode(2));
+		Assert.assertTrue(ratings.is(3, "BBB"));
+		Assert.assertFalse(ratings.is(3, "AA"));
+		Assert.assertArrayEquals(new int[] {0, 0, -1, 1, 0}, ratings.copyCodesTo(0, new int[5], 0, 5));
+		List<String> copy = TimeSeriesEntryUtils.subList(ratings, 0, 3);
+		Assert.assertTrue(copy instanceof DictionaryStringColumn);
+		Assert.assertEquals(RATINGS.subList(0, 3), copy);
+	}
+
+	@Test
+	public void testCacheEncodesStrings() {
+		StringDictionary dictionary = new StringDictionary();
+		TSCache<String, TimeSeriesEntry, TimeSeriesEntry> cache = new TSCacheBuilder<String, TimeSeriesEntry, TimeSeriesEntry>()
+				.cacheName("ratings")
+				.singleEntryLoader(key -> series(key, new TimeSeriesEntryBuilder<>()))
+				.transformer(d -> d)
+				.objectSupplier(TimeSeriesEntry::new)
+				.stringDictionary(dictionary)
+				.build();
+		TimeSeriesEntry cached = cache.get("A");
+		Assert.assertTrue(cached.getStringField("rating") instanceof DictionaryStringColumn);
+		Assert.assertEquals(RATINGS, cached.getStringField("rating"));
+		cache.get("B");
+		Assert.assertEquals(2, dictionary.size());
+	}
+}